@@ -0,0 +1,112 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datagrafting.sql2sparql.calcite.SparqlArrowReader;
+
+/**
+ * Compares reading all the columns of a class table row by row through the JDBC result set with reading them as
+ * Arrow batches, which are written straight from the SPARQL results since the query is pushed down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Arrow needs access to the address of direct buffers
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.nio=ALL-UNNAMED")
+public class ArrowBenchmark {
+  @Param({"10000", "100000"})
+  public int subjects;
+
+  @Param({"1024"})
+  public int batchSize;
+
+  private Connection connection;
+  private BufferAllocator allocator;
+  private String query;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Path dataset = BenchmarkSupport.generateDataset(1, subjects);
+    connection = BenchmarkSupport.connect(dataset, "class");
+    allocator = new RootAllocator();
+    query = "SELECT s, "
+        + IntStream.range(0, BenchmarkSupport.PROPERTIES_PER_CLASS)
+                   .mapToObj(prop -> BenchmarkSupport.column("class", prop))
+                   .collect(Collectors.joining(", "))
+        + " FROM " + DatasetGenerator.className(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    connection.close();
+    allocator.close();
+  }
+
+  @Benchmark
+  public void resultSet(Blackhole blackhole) throws Exception {
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(query)) {
+      int numCol = resultSet.getMetaData().getColumnCount();
+
+      while (resultSet.next()) {
+        for (int col = 1; col <= numCol; col++) {
+          blackhole.consume(resultSet.getObject(col));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void arrow(Blackhole blackhole) throws Exception {
+    try (SparqlArrowReader reader = SparqlArrowReader.query(connection, query, allocator, batchSize)) {
+      while (reader.loadNextBatch()) {
+        VectorSchemaRoot root = reader.getVectorSchemaRoot();
+        for (FieldVector vector : root.getFieldVectors()) {
+          blackhole.consume(vector.getValueCount());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.datagrafting.sql2sparql.calcite.SparqlDriver;
+
+/**
+ * Datasets, connections and queries shared by the benchmarks. All the benchmarks run against a generated dataset
+ * loaded in a Jena in-memory endpoint, so they can be reproduced offline.
+ */
+final class BenchmarkSupport {
+  static final int PROPERTIES_PER_CLASS = 6;
+  static final long SEED = 42;
+
+  private BenchmarkSupport() {
+  }
+
+  static Path generateDataset(int classes, int subjectsPerClass) throws IOException {
+    Path dataset = Files.createTempFile("calcite-sparql-benchmark-", ".nq");
+    dataset.toFile().deleteOnExit();
+    DatasetGenerator.builder()
+                    .classes(classes)
+                    .propertiesPerClass(PROPERTIES_PER_CLASS)
+                    .subjectsPerClass(subjectsPerClass)
+                    .seed(SEED)
+                    .build()
+                    .write(dataset);
+
+    return dataset;
+  }
+
+  static String endpoint(Path dataset) {
+    return "jdbc:jena:mem:dataset=" + dataset.toAbsolutePath().toString().replace("\\", "/");
+  }
+
+  static Connection connect(Path dataset, String tableMode) throws SQLException {
+    return connect(dataset, tableMode, false);
+  }
+
+  /**
+   * Connects with the driver that caches the plans of repeated queries if {@code planCache} is true, or with the
+   * Calcite driver otherwise.
+   */
+  static Connection connect(Path dataset, String tableMode, boolean planCache) throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: '" + endpoint(dataset) + "',"
+        + "      tableMode: '" + tableMode + "'"
+        + ("mapping".equals(tableMode) ? ", tableMappings: [" + tableMapping(0) + "]" : "")
+        + "    }"
+        + "  }]"
+        + "}";
+
+    if (planCache) {
+      return new SparqlDriver().connect(SparqlDriver.CONNECT_STRING_PREFIX + "model=" + model, info);
+    }
+
+    return DriverManager.getConnection("jdbc:calcite:model=" + model, info);
+  }
+
+  private static String tableMapping(int classIndex) {
+    return "{"
+        + "  name: '" + DatasetGenerator.className(classIndex) + "',"
+        + "  columns: ["
+        + IntStream.range(0, PROPERTIES_PER_CLASS)
+                   .mapToObj(prop -> String.format("{name: '%s', property: '%s'}",
+                       DatasetGenerator.propertyName(classIndex, prop),
+                       DatasetGenerator.NAMESPACE + DatasetGenerator.propertyName(classIndex, prop)))
+                   .collect(Collectors.joining(", "))
+        + "  ]"
+        + "}";
+  }
+
+  /**
+   * Returns the name of the column for a property of the first class.
+   */
+  static String column(String tableMode, int propertyIndex) {
+    String name = DatasetGenerator.propertyName(0, propertyIndex);
+
+    // In class mode the column names are prefixed by the domain of the property
+    return "class".equals(tableMode) ? "example_" + name : name;
+  }
+
+  /**
+   * Returns a query that projects and filters some columns of the first class, or the integer property of the
+   * first class in property mode.
+   */
+  static String filterQuery(String tableMode) {
+    if ("property".equals(tableMode)) {
+      return "SELECT * FROM " + DatasetGenerator.propertyName(0, 1) + " WHERE o > 50";
+    }
+
+    return String.format("SELECT s, %s, %s FROM %s WHERE %s > 50",
+        column(tableMode, 0), column(tableMode, 1), DatasetGenerator.className(0), column(tableMode, 1));
+  }
+
+  /**
+   * Same as {@link #filterQuery(String)}, with sorting and a limit.
+   */
+  static String topQuery(String tableMode) {
+    String orderBy = "property".equals(tableMode) ? "o" : column(tableMode, 1);
+    return filterQuery(tableMode) + " ORDER BY " + orderBy + " LIMIT 10";
+  }
+}
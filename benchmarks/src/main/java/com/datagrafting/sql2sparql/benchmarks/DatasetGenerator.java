@@ -0,0 +1,367 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a synthetic N-Quads dataset, so that the benchmarks and scale tests do not depend on any external
+ * data. The same options and seed always generate the same dataset, and quads are written as they are generated,
+ * so the size of the dataset is only bounded by the disk.
+ *
+ * <p>Each class {@code ClassN} has {@code subjectsPerClass} subjects and {@code propertiesPerClass} properties
+ * named {@code cN_pM}. The objects of property {@code M} all have datatype {@code M} (modulo the number of
+ * datatypes) of the datatype mix, so that each property maps to a column with a single type; with the default
+ * mix {@code cN_p0} is a string, {@code cN_p1} an integer and {@code cN_p2} a double. Subjects are spread
+ * across the named graphs in turn.
+ *
+ * <p>It can also be run from the command line, e.g. to generate about 10^8 triples:
+ * <pre>
+ * java -cp target/benchmarks.jar com.datagrafting.sql2sparql.benchmarks.DatasetGenerator \
+ *     --classes 10 --properties 10 --subjects 1000000 --graphs 4 \
+ *     --datatypes string,integer,double,boolean,date,dateTime,iri \
+ *     --multiValued 0.1 --missing 0.2 --output data.nq.gz
+ * </pre>
+ */
+public class DatasetGenerator {
+  public static final String NAMESPACE = "http://www.example.com/ontology/";
+  public static final String ID_NAMESPACE = "http://www.example.com/id/";
+  public static final String GRAPH_NAMESPACE = "http://www.example.com/graph/";
+
+  public static final List<Datatype> DEFAULT_DATATYPES =
+      Collections.unmodifiableList(Arrays.asList(Datatype.STRING, Datatype.INTEGER, Datatype.DOUBLE));
+
+  private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+  private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+  private static final LocalDate EPOCH = LocalDate.of(2000, 1, 1);
+  // Multi-valued properties get between 2 and this number of values
+  private static final int MAX_VALUES = 3;
+
+  /**
+   * Kinds of objects of the generated properties.
+   */
+  public enum Datatype {
+    STRING, INTEGER, DOUBLE, BOOLEAN, DATE, DATETIME, IRI;
+
+    public static Datatype of(String name) {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private final int classes;
+  private final int propertiesPerClass;
+  private final long subjectsPerClass;
+  private final int graphs;
+  private final List<Datatype> datatypes;
+  private final double multiValuedRatio;
+  private final double missingRatio;
+  private final long seed;
+
+  private DatasetGenerator(Builder builder) {
+    this.classes = builder.classes;
+    this.propertiesPerClass = builder.propertiesPerClass;
+    this.subjectsPerClass = builder.subjectsPerClass;
+    this.graphs = builder.graphs;
+    this.datatypes = builder.datatypes;
+    this.multiValuedRatio = builder.multiValuedRatio;
+    this.missingRatio = builder.missingRatio;
+    this.seed = builder.seed;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static String className(int classIndex) {
+    return "Class" + classIndex;
+  }
+
+  public static String propertyName(int classIndex, int propertyIndex) {
+    return "c" + classIndex + "_p" + propertyIndex;
+  }
+
+  public static String graphName(int graphIndex) {
+    return GRAPH_NAMESPACE + graphIndex;
+  }
+
+  public Datatype getDatatype(int propertyIndex) {
+    return datatypes.get(propertyIndex % datatypes.size());
+  }
+
+  /**
+   * Returns the expected number of quads, one per type statement plus the expected number of values per property.
+   */
+  public long estimateQuads() {
+    double extraValues = (2 + MAX_VALUES) / 2.0 - 1;
+    double valuesPerProperty = (1 - missingRatio) * (1 + multiValuedRatio * extraValues);
+    return Math.round(classes * subjectsPerClass * (1 + propertiesPerClass * valuesPerProperty));
+  }
+
+  /**
+   * Writes the dataset to a file, compressed with gzip if the file name ends with ".gz". Returns the number of
+   * quads written.
+   */
+  public long write(Path path) throws IOException {
+    OutputStream stream = Files.newOutputStream(path);
+    if (path.getFileName().toString().endsWith(".gz")) {
+      stream = new GZIPOutputStream(stream, 1 << 16);
+    }
+
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16)) {
+      return write(writer);
+    }
+  }
+
+  /**
+   * Writes the dataset. Returns the number of quads written.
+   */
+  public long write(Writer writer) throws IOException {
+    Random random = new Random(seed);
+    BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    StringBuilder quad = new StringBuilder(256);
+    long quads = 0;
+
+    for (int cl = 0; cl < classes; cl++) {
+      String classUri = "<" + NAMESPACE + className(cl) + ">";
+      String subjectPrefix = "<" + ID_NAMESPACE + className(cl).toLowerCase(Locale.ROOT) + "_";
+      String[] properties = new String[propertiesPerClass];
+      for (int prop = 0; prop < propertiesPerClass; prop++) {
+        properties[prop] = "<" + NAMESPACE + propertyName(cl, prop) + ">";
+      }
+
+      for (long subj = 0; subj < subjectsPerClass; subj++) {
+        String subject = subjectPrefix + subj + ">";
+        String graph = "<" + graphName((int) (subj % graphs)) + ">";
+        writeQuad(out, quad, subject, "<" + RDF_TYPE + ">", classUri, graph);
+        quads++;
+
+        for (int prop = 0; prop < propertiesPerClass; prop++) {
+          boolean missing = random.nextDouble() < missingRatio;
+          boolean multiValued = random.nextDouble() < multiValuedRatio;
+          if (missing) {
+            continue;
+          }
+
+          int values = multiValued ? 2 + random.nextInt(MAX_VALUES - 1) : 1;
+          for (int value = 0; value < values; value++) {
+            writeQuad(out, quad, subject, properties[prop], object(getDatatype(prop), subjectPrefix, random), graph);
+            quads++;
+          }
+        }
+      }
+    }
+
+    out.flush();
+    return quads;
+  }
+
+  private String object(Datatype datatype, String subjectPrefix, Random random) {
+    switch (datatype) {
+      case STRING:
+        return "\"value " + random.nextInt(1000) + "\"";
+
+      case INTEGER:
+        return "\"" + random.nextInt(100) + "\"^^<" + XSD + "integer>";
+
+      case DOUBLE:
+        return "\"" + random.nextInt(100_000) / 100.0 + "\"^^<" + XSD + "double>";
+
+      case BOOLEAN:
+        return "\"" + random.nextBoolean() + "\"^^<" + XSD + "boolean>";
+
+      case DATE:
+        return "\"" + EPOCH.plusDays(random.nextInt(10_000)) + "\"^^<" + XSD + "date>";
+
+      case DATETIME:
+        LocalDateTime dateTime = EPOCH.atStartOfDay().plusSeconds(random.nextInt(Integer.MAX_VALUE));
+        return "\"" + dateTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\"^^<" + XSD + "dateTime>";
+
+      case IRI:
+        // A link to another subject of the same class
+        return subjectPrefix + (long) (random.nextDouble() * subjectsPerClass) + ">";
+
+      default:
+        throw new RuntimeException("Unsupported datatype " + datatype);
+    }
+  }
+
+  private static void writeQuad(BufferedWriter out, StringBuilder quad, String subject, String predicate,
+                                String object, String graph) throws IOException {
+    quad.setLength(0);
+    quad.append(subject).append(' ')
+        .append(predicate).append(' ')
+        .append(object).append(' ')
+        .append(graph).append(" .\n");
+    out.append(quad);
+  }
+
+  public static void main(String[] args) throws IOException {
+    Builder builder = builder();
+    Path output = null;
+
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--classes":
+          builder.classes(Integer.parseInt(value));
+          break;
+
+        case "--properties":
+          builder.propertiesPerClass(Integer.parseInt(value));
+          break;
+
+        case "--subjects":
+          builder.subjectsPerClass(Long.parseLong(value));
+          break;
+
+        case "--graphs":
+          builder.graphs(Integer.parseInt(value));
+          break;
+
+        case "--datatypes":
+          builder.datatypes(value.split(","));
+          break;
+
+        case "--multiValued":
+          builder.multiValuedRatio(Double.parseDouble(value));
+          break;
+
+        case "--missing":
+          builder.missingRatio(Double.parseDouble(value));
+          break;
+
+        case "--seed":
+          builder.seed(Long.parseLong(value));
+          break;
+
+        case "--output":
+          output = Paths.get(value);
+          break;
+
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    if (output == null) {
+      throw new IllegalArgumentException("Missing --output");
+    }
+
+    DatasetGenerator generator = builder.build();
+    System.out.printf("Generating about %d quads to %s%n", generator.estimateQuads(), output);
+    System.out.printf("Generated %d quads%n", generator.write(output));
+  }
+
+  public static class Builder {
+    private int classes = 1;
+    private int propertiesPerClass = 6;
+    private long subjectsPerClass = 1000;
+    private int graphs = 1;
+    private List<Datatype> datatypes = DEFAULT_DATATYPES;
+    private double multiValuedRatio;
+    private double missingRatio;
+    private long seed = 42;
+
+    private Builder() {
+    }
+
+    public Builder classes(int classes) {
+      this.classes = classes;
+      return this;
+    }
+
+    public Builder propertiesPerClass(int propertiesPerClass) {
+      this.propertiesPerClass = propertiesPerClass;
+      return this;
+    }
+
+    public Builder subjectsPerClass(long subjectsPerClass) {
+      this.subjectsPerClass = subjectsPerClass;
+      return this;
+    }
+
+    public Builder graphs(int graphs) {
+      this.graphs = graphs;
+      return this;
+    }
+
+    /**
+     * Sets the datatypes assigned to the properties in turn. A datatype can be repeated to make it more frequent.
+     */
+    public Builder datatypes(Datatype... datatypes) {
+      this.datatypes = Arrays.asList(datatypes);
+      return this;
+    }
+
+    public Builder datatypes(String... datatypes) {
+      return datatypes(Arrays.stream(datatypes).map(Datatype::of).toArray(Datatype[]::new));
+    }
+
+    /**
+     * Sets the fraction of property values that are repeated with more values for the same subject.
+     */
+    public Builder multiValuedRatio(double multiValuedRatio) {
+      this.multiValuedRatio = multiValuedRatio;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of property values that are left out.
+     */
+    public Builder missingRatio(double missingRatio) {
+      this.missingRatio = missingRatio;
+      return this;
+    }
+
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public DatasetGenerator build() {
+      if (classes < 1 || propertiesPerClass < 0 || subjectsPerClass < 1 || graphs < 1 || datatypes.isEmpty()) {
+        throw new IllegalArgumentException("Invalid dataset size");
+      }
+
+      if (multiValuedRatio < 0 || multiValuedRatio > 1 || missingRatio < 0 || missingRatio > 1) {
+        throw new IllegalArgumentException("Ratios must be between 0 and 1");
+      }
+
+      return new DatasetGenerator(this);
+    }
+  }
+}
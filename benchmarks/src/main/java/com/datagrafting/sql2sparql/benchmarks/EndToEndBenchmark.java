@@ -0,0 +1,95 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures planning, running and reading a query against a generated in-memory dataset. The size of the dataset
+ * can be changed with e.g. {@code -p subjects=100000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+  @Param({"property", "class", "mapping"})
+  public String tableMode;
+
+  @Param({"1000", "10000"})
+  public int subjects;
+
+  private Connection connection;
+  private String filterQuery;
+  private String topQuery;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Path dataset = BenchmarkSupport.generateDataset(2, subjects);
+    connection = BenchmarkSupport.connect(dataset, tableMode);
+    filterQuery = BenchmarkSupport.filterQuery(tableMode);
+    topQuery = BenchmarkSupport.topQuery(tableMode);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Benchmark
+  public void filter(Blackhole blackhole) throws Exception {
+    run(filterQuery, blackhole);
+  }
+
+  @Benchmark
+  public void top(Blackhole blackhole) throws Exception {
+    run(topQuery, blackhole);
+  }
+
+  private void run(String query, Blackhole blackhole) throws Exception {
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(query)) {
+      int numCol = resultSet.getMetaData().getColumnCount();
+
+      while (resultSet.next()) {
+        for (int col = 1; col <= numCol; col++) {
+          blackhole.consume(resultSet.getObject(col));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datagrafting.sql2sparql.calcite.SparqlEnumerator;
+import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+
+/**
+ * Measures reading the whole result of a SPARQL query through {@link SparqlEnumerator}, with the column types
+ * known upfront (as in the generated code) or not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnumeratorBenchmark {
+  private static final List<SqlTypeName> COLUMN_TYPES = Arrays.asList(
+      SqlTypeName.VARCHAR, SqlTypeName.VARCHAR, SqlTypeName.BIGINT, SqlTypeName.DOUBLE);
+
+  @Param({"10000"})
+  public int subjects;
+
+  private SparqlEndpoint endpoint;
+  private String query;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Path dataset = BenchmarkSupport.generateDataset(1, subjects);
+    endpoint = new SparqlEndpoint(BenchmarkSupport.endpoint(dataset));
+    query = String.format(""
+            + "SELECT ?s ?p0 ?p1 ?p2\n"
+            + "WHERE {\n"
+            + "  GRAPH ?g {\n"
+            + "    ?s <%1$s%2$s> ?p0 .\n"
+            + "    ?s <%1$s%3$s> ?p1 .\n"
+            + "    ?s <%1$s%4$s> ?p2 .\n"
+            + "  }\n"
+            + "}",
+        DatasetGenerator.NAMESPACE, DatasetGenerator.propertyName(0, 0),
+        DatasetGenerator.propertyName(0, 1), DatasetGenerator.propertyName(0, 2));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    endpoint.close();
+  }
+
+  @Benchmark
+  public void typedColumns(Blackhole blackhole) throws Exception {
+    drain(COLUMN_TYPES, blackhole);
+  }
+
+  @Benchmark
+  public void untypedColumns(Blackhole blackhole) throws Exception {
+    drain(null, blackhole);
+  }
+
+  private void drain(List<SqlTypeName> columnTypes, Blackhole blackhole) throws Exception {
+    ResultSet results = endpoint.query(query);
+    SparqlEnumerator enumerator = new SparqlEnumerator(endpoint, results, columnTypes);
+
+    try {
+      while (enumerator.moveNext()) {
+        blackhole.consume(enumerator.current());
+      }
+    } finally {
+      enumerator.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time needed to parse, validate and plan a query (including the generation of the SPARQL query)
+ * without running it, for each table mode, with and without the plan cache. Tables and row types are discovered
+ * before measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanningBenchmark {
+  @Param({"property", "class", "mapping"})
+  public String tableMode;
+
+  @Param({"false", "true"})
+  public boolean planCache;
+
+  private Connection connection;
+  private String filterQuery;
+  private String topQuery;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Path dataset = BenchmarkSupport.generateDataset(2, 100);
+    connection = BenchmarkSupport.connect(dataset, tableMode, planCache);
+    filterQuery = BenchmarkSupport.filterQuery(tableMode);
+    topQuery = BenchmarkSupport.topQuery(tableMode);
+
+    // Discovers the tables and their row types
+    connection.prepareStatement(filterQuery).close();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Benchmark
+  public PreparedStatement planFilter() throws Exception {
+    try (PreparedStatement statement = connection.prepareStatement(filterQuery)) {
+      return statement;
+    }
+  }
+
+  @Benchmark
+  public PreparedStatement planTop() throws Exception {
+    try (PreparedStatement statement = connection.prepareStatement(topQuery)) {
+      return statement;
+    }
+  }
+}
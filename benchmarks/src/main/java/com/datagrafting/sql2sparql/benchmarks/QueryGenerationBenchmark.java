@@ -0,0 +1,77 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.calcite.util.Pair;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.expr.E_GreaterThan;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
+import com.datagrafting.sql2sparql.calcite.rel.SparqlClassRel;
+
+/**
+ * Measures the generation and serialization of the SPARQL query of a class table from the state collected by the implementor, with
+ * a projection, a filter, a sort and a limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryGenerationBenchmark {
+  @Param({"10", "50"})
+  public int columns;
+
+  @Benchmark
+  public String classQuery() {
+    // The implementor is filled in as the rel nodes would do, since generating the query changes its state
+    SparqlClassRel.Implementor implementor = new SparqlClassRel.Implementor();
+    List<Pair<String, String>> props = new ArrayList<>();
+
+    for (int prop = 0; prop < columns; prop++) {
+      props.add(new Pair<>("example_" + DatasetGenerator.propertyName(0, prop),
+          DatasetGenerator.NAMESPACE + DatasetGenerator.propertyName(0, prop)));
+    }
+
+    // Indices include the "s" column
+    implementor.addScan(DatasetGenerator.NAMESPACE + DatasetGenerator.className(0), props,
+        Collections.nCopies(columns, MultiValued.SINGLE));
+    implementor.addFilter(new E_GreaterThan(implementor.getExpression(2), NodeValue.makeInteger(50)));
+    implementor.addSort(2, Query.ORDER_DESCENDING);
+    implementor.limit = 10;
+    implementor.project(Arrays.asList(0, 1, 2));
+
+    return implementor.getQuery().serialize();
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Node_Literal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.datagrafting.sql2sparql.calcite.SparqlRowDecoder;
+
+/**
+ * Measures how many rows per second are decoded from the values returned by the Jena JDBC driver, comparing the
+ * typed per-column decoders with the previous decoding based on the datatype of each literal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowDecodingBenchmark {
+  private static final int ROWS = 1_000_000;
+
+  private static final List<SqlTypeName> COLUMN_TYPES = Arrays.asList(
+      SqlTypeName.VARCHAR, SqlTypeName.VARCHAR, SqlTypeName.BIGINT, SqlTypeName.DOUBLE, SqlTypeName.BOOLEAN);
+
+  @Param({"42"})
+  public long seed;
+
+  private Object[][] rows;
+  private SparqlRowDecoder decoder;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(seed);
+    rows = new Object[ROWS][];
+
+    for (int i = 0; i < ROWS; i++) {
+      rows[i] = new Object[] {
+          NodeFactory.createURI("http://www.example.com/id/" + i),
+          NodeFactory.createLiteral("Name " + random.nextInt(10_000)),
+          NodeFactory.createLiteral(Integer.toString(random.nextInt(100)), XSDDatatype.XSDinteger),
+          NodeFactory.createLiteral(Double.toString(random.nextDouble() * 1000), XSDDatatype.XSDdouble),
+          NodeFactory.createLiteral(Boolean.toString(random.nextBoolean()), XSDDatatype.XSDboolean)
+      };
+    }
+
+    decoder = SparqlRowDecoder.of(COLUMN_TYPES);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void typedDecode(Blackhole blackhole) {
+    for (Object[] values : rows) {
+      blackhole.consume(decoder.decodeRow(values));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void legacyDecode(Blackhole blackhole) {
+    for (Object[] values : rows) {
+      Object[] row = new Object[values.length];
+      for (int col = 0; col < values.length; col++) {
+        row[col] = legacyParseObject(values[col]);
+      }
+
+      blackhole.consume(row);
+    }
+  }
+
+  // The decoding used before the typed decoders, kept here as a baseline
+  private static Object legacyParseObject(Object obj) {
+    if (obj instanceof Node_Literal) {
+      Object value = ((Node_Literal) obj).getLiteralValue();
+      RDFDatatype datatype = ((Node_Literal) obj).getLiteralDatatype();
+      Object parsedValue = datatype.parse(value.toString());
+
+      if (datatype.getURI().equals("http://www.w3.org/2001/XMLSchema#integer") &&
+          !(parsedValue instanceof Long)) {
+        parsedValue = parsedValue instanceof BigInteger ?
+            ((BigInteger) parsedValue).longValue() :
+            ((Integer) parsedValue).longValue();
+      }
+
+      return parsedValue;
+    } else {
+      return obj;
+    }
+  }
+}
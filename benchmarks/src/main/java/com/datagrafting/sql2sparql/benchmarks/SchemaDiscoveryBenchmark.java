@@ -0,0 +1,90 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the discovery of the tables, columns and column types of a new schema, on a dataset with all the
+ * datatypes and with multi-valued and missing values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SchemaDiscoveryBenchmark {
+  @Param({"property", "class"})
+  public String tableMode;
+
+  @Param({"10"})
+  public int classes;
+
+  @Param({"10"})
+  public int properties;
+
+  @Param({"1000"})
+  public int subjects;
+
+  private Path dataset;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    dataset = Files.createTempFile("calcite-sparql-benchmark-", ".nq");
+    dataset.toFile().deleteOnExit();
+
+    DatasetGenerator.builder()
+                    .classes(classes)
+                    .propertiesPerClass(properties)
+                    .subjectsPerClass(subjects)
+                    .datatypes(DatasetGenerator.Datatype.values())
+                    .multiValuedRatio(0.1)
+                    .missingRatio(0.2)
+                    .seed(BenchmarkSupport.SEED)
+                    .build()
+                    .write(dataset);
+  }
+
+  @Benchmark
+  public void discover(Blackhole blackhole) throws Exception {
+    // Each connection creates its own schema, so all the tables are discovered again
+    try (Connection connection = BenchmarkSupport.connect(dataset, tableMode);
+         ResultSet columns = connection.getMetaData().getColumns(null, "sparql", null, null)) {
+      while (columns.next()) {
+        blackhole.consume(columns.getString("TYPE_NAME"));
+      }
+    }
+  }
+}
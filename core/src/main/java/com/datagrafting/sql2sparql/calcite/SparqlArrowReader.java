@@ -0,0 +1,450 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.arrow.adapter.jdbc.ArrowVectorIterator;
+import org.apache.arrow.adapter.jdbc.JdbcToArrow;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowConfigBuilder;
+import org.apache.arrow.adapter.jdbc.JdbcToArrowUtils;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelRoot;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.jena.graph.Node_Literal;
+
+import com.datagrafting.sql2sparql.calcite.rel.SparqlToEnumerableConverter;
+import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+
+/**
+ * Runs a SQL query and reads its results as batches of Arrow vectors, like an Arrow {@code ArrowReader}. When the
+ * whole query is pushed down to the endpoint, the values of the SPARQL results are written straight into typed
+ * vectors, parsing each literal into a primitive value without boxing it. Otherwise, the rows returned by Calcite
+ * are converted by the Arrow JDBC adapter.
+ */
+public abstract class SparqlArrowReader implements AutoCloseable {
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  /**
+   * Runs a query on a Calcite connection, returning batches of at most {@code batchSize} rows allocated by the
+   * given allocator.
+   */
+  public static SparqlArrowReader query(Connection connection, String sql, BufferAllocator allocator,
+                                        int batchSize) throws SQLException {
+    List<RelRoot> plans = new ArrayList<>();
+    PreparedStatement statement;
+
+    try (Hook.Closeable ignored = Hook.PLAN_BEFORE_IMPLEMENTATION.addThread((Consumer<RelRoot>) plans::add)) {
+      statement = connection.prepareStatement(sql);
+    }
+
+    // A cached plan is not planned again, and is read through JDBC
+    if (plans.size() == 1 && plans.get(0).isRefTrivial() && isPushedDown(plans.get(0).rel)) {
+      SparqlArrowReader direct = Direct.open(plans.get(0), allocator, batchSize);
+      if (direct != null) {
+        statement.close();
+        return direct;
+      }
+    }
+
+    return new Jdbc(statement, allocator, batchSize);
+  }
+
+  private static boolean isPushedDown(RelNode rel) {
+    return rel instanceof SparqlToEnumerableConverter;
+  }
+
+  /**
+   * Returns the vectors of the current batch, once {@link #loadNextBatch()} has returned true. The vectors are
+   * reused by the next batch.
+   */
+  public abstract VectorSchemaRoot getVectorSchemaRoot();
+
+  /**
+   * Reads the next batch, returning false if there are no more rows.
+   */
+  public abstract boolean loadNextBatch() throws SQLException;
+
+  /**
+   * Returns whether the batches are written straight from the SPARQL results.
+   */
+  public abstract boolean isDirect();
+
+  @Override
+  public abstract void close() throws SQLException;
+
+  public static Schema toArrowSchema(List<String> names, List<SqlTypeName> types) {
+    List<Field> fields = new ArrayList<>();
+    for (int i = 0; i < names.size(); i++) {
+      fields.add(new Field(names.get(i), FieldType.nullable(toArrowType(types.get(i))), null));
+    }
+
+    return new Schema(fields);
+  }
+
+  private static ArrowType toArrowType(SqlTypeName type) {
+    switch (type) {
+      case BOOLEAN:
+        return ArrowType.Bool.INSTANCE;
+
+      case TINYINT:
+        return new ArrowType.Int(8, true);
+
+      case SMALLINT:
+        return new ArrowType.Int(16, true);
+
+      case INTEGER:
+        return new ArrowType.Int(32, true);
+
+      case BIGINT:
+        return new ArrowType.Int(64, true);
+
+      case REAL:
+        return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+
+      case FLOAT:
+      case DOUBLE:
+        return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+
+      case DATE:
+        return new ArrowType.Date(DateUnit.DAY);
+
+      case TIMESTAMP:
+        return new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+
+      default:
+        return ArrowType.Utf8.INSTANCE;
+    }
+  }
+
+  /**
+   * Writes a value returned by the Jena JDBC driver at a position of a vector.
+   */
+  @FunctionalInterface
+  private interface ColumnWriter {
+    void write(Object value, int index);
+  }
+
+  @FunctionalInterface
+  private interface LiteralWriter {
+    void write(String lexical, int index);
+  }
+
+  private static ColumnWriter writerFor(SqlTypeName type, FieldVector vector) {
+    switch (type) {
+      case CHAR:
+      case VARCHAR:
+        return (value, index) -> {
+          Object string = SparqlRowDecoder.decodeString(value);
+          if (string != null) {
+            ((VarCharVector) vector).setSafe(index, string.toString().getBytes(StandardCharsets.UTF_8));
+          }
+        };
+
+      case BOOLEAN:
+        return literalWriter((lexical, index) ->
+            ((BitVector) vector).setSafe(index, SparqlRowDecoder.parseBoolean(lexical) ? 1 : 0));
+
+      case TINYINT:
+        return literalWriter((lexical, index) -> ((TinyIntVector) vector).setSafe(index, Byte.parseByte(lexical)));
+
+      case SMALLINT:
+        return literalWriter((lexical, index) ->
+            ((SmallIntVector) vector).setSafe(index, Short.parseShort(lexical)));
+
+      case INTEGER:
+        return literalWriter((lexical, index) -> ((IntVector) vector).setSafe(index, Integer.parseInt(lexical)));
+
+      case BIGINT:
+        return literalWriter((lexical, index) -> ((BigIntVector) vector).setSafe(index, Long.parseLong(lexical)));
+
+      case REAL:
+        return literalWriter((lexical, index) ->
+            ((Float4Vector) vector).setSafe(index, (float) SparqlRowDecoder.parseDouble(lexical)));
+
+      case FLOAT:
+      case DOUBLE:
+        return literalWriter((lexical, index) ->
+            ((Float8Vector) vector).setSafe(index, SparqlRowDecoder.parseDouble(lexical)));
+
+      case DATE:
+        return literalWriter((lexical, index) ->
+            ((DateDayVector) vector).setSafe(index, SparqlRowDecoder.parseDate(lexical)));
+
+      case TIMESTAMP:
+        return literalWriter((lexical, index) ->
+            ((TimeStampMilliVector) vector).setSafe(index, SparqlRowDecoder.parseTimestamp(lexical)));
+
+      // Arrays are written as strings, like the other types without a vector
+      case ARRAY:
+        return (value, index) -> {
+          Object decoded = SparqlRowDecoder.decodeArray(value);
+          if (decoded != null) {
+            ((VarCharVector) vector).setSafe(index, decoded.toString().getBytes(StandardCharsets.UTF_8));
+          }
+        };
+
+      default:
+        return (value, index) -> {
+          Object decoded = SparqlRowDecoder.decodeGeneric(value);
+          if (decoded != null) {
+            ((VarCharVector) vector).setSafe(index, decoded.toString().getBytes(StandardCharsets.UTF_8));
+          }
+        };
+    }
+  }
+
+  private static ColumnWriter literalWriter(LiteralWriter writer) {
+    return (value, index) -> {
+      // As with SparqlRowDecoder, the values that do not have the type of the column are null
+      if (value instanceof Node_Literal) {
+        try {
+          writer.write(((Node_Literal) value).getLiteralLexicalForm().trim(), index);
+        } catch (NumberFormatException | DateTimeParseException e) {
+          // Left null
+        }
+      }
+    };
+  }
+
+  /**
+   * Reads the results of the SPARQL query of a pushed-down plan.
+   */
+  private static class Direct extends SparqlArrowReader {
+    private final Enumerator<Object> results;
+    private final VectorSchemaRoot root;
+    private final ColumnWriter[] writers;
+    private final int batchSize;
+
+    /**
+     * Returns a reader of the SPARQL query of a pushed-down plan, or null if the query is not sent as it is by
+     * {@link SparqlTable#query(String, List)}, i.e. if it has parameters to bind, or it is paged, partitioned or
+     * cached.
+     */
+    static Direct open(RelRoot plan, BufferAllocator allocator, int batchSize) throws SQLException {
+      SparqlToEnumerableConverter.PushedQuery query = ((SparqlToEnumerableConverter) plan.rel).implementQuery();
+      if (!query.parameters.isEmpty()) {
+        return null;
+      }
+
+      SparqlTable table = query.getSparqlTable();
+      if (table == null || !table.isSentAsIs(query.query)) {
+        return null;
+      }
+
+      return new Direct(plan, table, query.query, allocator, batchSize);
+    }
+
+    private Direct(RelRoot plan, SparqlTable table, String sparqlQuery, BufferAllocator allocator,
+                   int batchSize) throws SQLException {
+      List<String> names = new ArrayList<>();
+      List<SqlTypeName> types = new ArrayList<>();
+      for (RelDataTypeField field : plan.validatedRowType.getFieldList()) {
+        names.add(field.getName());
+        types.add(plan.rel.getRowType().getFieldList().get(field.getIndex()).getType().getSqlTypeName());
+      }
+
+      // Timed as the results of SparqlTable#query are, from the moment the query is sent
+      this.results = SparqlMeteredEnumerator.open(() -> {
+        try {
+          return new ResultSetValues(table.endpoint, table.endpoint.query(sparqlQuery, table.getTableName()),
+              types.size());
+        } catch (SQLException e) {
+          throw new RuntimeException("SQL Exception", e);
+        }
+      }, table.getMetrics(), table.getTableName());
+      this.root = VectorSchemaRoot.create(toArrowSchema(names, types), allocator);
+      this.writers = new ColumnWriter[types.size()];
+      for (int i = 0; i < writers.length; i++) {
+        writers[i] = writerFor(types.get(i), root.getVector(i));
+      }
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public VectorSchemaRoot getVectorSchemaRoot() {
+      return root;
+    }
+
+    @Override
+    public boolean loadNextBatch() throws SQLException {
+      root.allocateNew();
+      int rows = 0;
+
+      while (rows < batchSize && results.moveNext()) {
+        Object[] values = (Object[]) results.current();
+        for (int col = 0; col < writers.length; col++) {
+          Object value = values[col];
+          if (value != null) {
+            writers[col].write(value, rows);
+          }
+        }
+
+        rows++;
+      }
+
+      root.setRowCount(rows);
+      return rows > 0;
+    }
+
+    @Override
+    public boolean isDirect() {
+      return true;
+    }
+
+    @Override
+    public void close() throws SQLException {
+      root.close();
+      results.close();
+    }
+  }
+
+  /**
+   * Enumerates the values of SPARQL results as returned by the Jena JDBC driver, without decoding them, in an
+   * array that is reused by each row.
+   */
+  private static class ResultSetValues implements Enumerator<Object> {
+    private final SparqlEndpoint endpoint;
+    private final ResultSet results;
+    private final Object[] values;
+
+    ResultSetValues(SparqlEndpoint endpoint, ResultSet results, int columnCount) {
+      this.endpoint = endpoint;
+      this.results = results;
+      this.values = new Object[columnCount];
+    }
+
+    @Override
+    public Object current() {
+      return values;
+    }
+
+    @Override
+    public boolean moveNext() {
+      try {
+        if (!results.next()) {
+          return false;
+        }
+
+        for (int col = 0; col < values.length; col++) {
+          values[col] = results.getObject(col + 1);
+        }
+
+        return true;
+      } catch (SQLException e) {
+        throw new RuntimeException("SQL Exception", e);
+      }
+    }
+
+    @Override
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      try {
+        endpoint.release(results);
+      } catch (SQLException e) {
+        throw new RuntimeException("SQL Exception", e);
+      }
+    }
+  }
+
+  /**
+   * Converts the rows of a query that is not entirely pushed down.
+   */
+  private static class Jdbc extends SparqlArrowReader {
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final ArrowVectorIterator iterator;
+    private VectorSchemaRoot root;
+
+    Jdbc(PreparedStatement statement, BufferAllocator allocator, int batchSize) throws SQLException {
+      this.statement = statement;
+      this.resultSet = statement.executeQuery();
+
+      try {
+        this.iterator = JdbcToArrow.sqlToArrowVectorIterator(resultSet,
+            new JdbcToArrowConfigBuilder(allocator, JdbcToArrowUtils.getUtcCalendar())
+                .setTargetBatchSize(batchSize)
+                .setReuseVectorSchemaRoot(true)
+                .build());
+      } catch (IOException e) {
+        throw new SQLException("Cannot convert the results to Arrow", e);
+      }
+    }
+
+    @Override
+    public VectorSchemaRoot getVectorSchemaRoot() {
+      return root;
+    }
+
+    @Override
+    public boolean loadNextBatch() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+
+      root = iterator.next();
+      return root.getRowCount() > 0;
+    }
+
+    @Override
+    public boolean isDirect() {
+      return false;
+    }
+
+    @Override
+    public void close() throws SQLException {
+      iterator.close();
+      resultSet.close();
+      statement.close();
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
+
+import com.datagrafting.sql2sparql.calcite.config.TableMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A snapshot of the tables discovered on an endpoint, with their columns and inferred SQL types, that can be
+ * saved to and loaded from a local file to avoid running the discovery queries at every startup.
+ */
+public class SparqlCatalog {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private String endpoint;
+  private TableMode tableMode;
+  private long createdAt;
+  private List<TableEntry> tables = new ArrayList<>();
+
+  // Needed by Jackson
+  private SparqlCatalog() {
+  }
+
+  public SparqlCatalog(String endpoint, TableMode tableMode) {
+    this.endpoint = endpoint;
+    this.tableMode = tableMode;
+    this.createdAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Returns the path of the catalog file for an endpoint and a table mode within a directory.
+   */
+  public static Path getPath(String directory, String endpoint, TableMode tableMode) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] hash = digest.digest((endpoint + "|" + tableMode).getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder name = new StringBuilder("catalog-");
+      for (int i = 0; i < 8; i++) {
+        name.append(String.format("%02x", hash[i]));
+      }
+
+      return Paths.get(directory, name.append(".json").toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Cannot compute catalog file name", e);
+    }
+  }
+
+  /**
+   * Loads a catalog, or returns null if there is no catalog at the given path.
+   */
+  public static SparqlCatalog load(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+
+    return MAPPER.readValue(path.toFile(), SparqlCatalog.class);
+  }
+
+  public void save(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+
+    // Write to a temporary file first, so that a concurrent reader never sees a partial catalog
+    Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+    MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), this);
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public boolean matches(String endpoint, TableMode tableMode) {
+    return this.endpoint.equals(endpoint) && this.tableMode == tableMode;
+  }
+
+  public boolean isExpired(long ttlMillis) {
+    return System.currentTimeMillis() - createdAt > ttlMillis;
+  }
+
+  public void addTable(String name, String uri, List<Pair<String, String>> columns, List<SqlTypeName> types) {
+    List<ColumnEntry> columnEntries = new ArrayList<>();
+    for (int i = 0; i < columns.size(); i++) {
+      columnEntries.add(new ColumnEntry(columns.get(i).getKey(), columns.get(i).getValue(), types.get(i)));
+    }
+
+    tables.add(new TableEntry(name, uri, columnEntries));
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public TableMode getTableMode() {
+    return tableMode;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public List<TableEntry> getTables() {
+    return tables;
+  }
+
+  public static class TableEntry {
+    private String name;
+    private String uri;
+    private List<ColumnEntry> columns;
+
+    // Needed by Jackson
+    private TableEntry() {
+    }
+
+    public TableEntry(String name, String uri, List<ColumnEntry> columns) {
+      this.name = name;
+      this.uri = uri;
+      this.columns = columns;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getUri() {
+      return uri;
+    }
+
+    public List<ColumnEntry> getColumns() {
+      return columns;
+    }
+  }
+
+  public static class ColumnEntry {
+    private String name;
+    private String property;
+    private SqlTypeName type;
+
+    // Needed by Jackson
+    private ColumnEntry() {
+    }
+
+    public ColumnEntry(String name, String property, SqlTypeName type) {
+      this.name = name;
+      this.property = property;
+      this.type = type;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getProperty() {
+      return property;
+    }
+
+    public SqlTypeName getType() {
+      return type;
+    }
+  }
+}
@@ -17,17 +17,17 @@ package com.datagrafting.sql2sparql.calcite;
 
 import java.net.URISyntaxException;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.type.RelDataType;
-import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.Pair;
 
+import com.datagrafting.sql2sparql.calcite.config.Config;
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
 import com.datagrafting.sql2sparql.calcite.rel.SparqlClassRel;
 import com.datagrafting.sql2sparql.calcite.rel.SparqlClassTableScan;
 import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
@@ -39,53 +39,36 @@ public class SparqlClassTable extends SparqlTable {
 
   private List<Pair<String, String>> columns;
 
-  public SparqlClassTable(String tableName, String prop, SparqlEndpoint endpoint) {
-    super(tableName, prop, endpoint);
+  public SparqlClassTable(String tableName, String prop, SparqlEndpoint endpoint, Config config,
+      SparqlResultCache resultCache) {
+    super(tableName, prop, endpoint, config, resultCache);
   }
 
   @Override
-  public RelDataType getRowType(RelDataTypeFactory typeFactory) {
-    RelDataTypeFactory.Builder builder = typeFactory.builder();
-    Set<String> probeObjects;
-
-    try {
-      builder.add("s", typeFactory.createSqlType(SqlTypeName.VARCHAR));
-
-      for (Pair<String, String> col : getColumns()) {
-        probeObjects = endpoint.getObjectTypesForProperty(col.getValue(), MAX_PROBE_OBJECTS);
-
-        RelDataType type;
-        if (probeObjects.size() > 1) {
-          // Too many potential types, stick to string type
-          type = typeFactory.createSqlType(SqlTypeName.VARCHAR);
-        } else {
-          String potentialType = probeObjects.toArray(new String[0])[0];
-
-          if (potentialType == null) {
-            type = typeFactory.createSqlType(SqlTypeName.VARCHAR);
-          } else {
-            type = typeFactory.createSqlType(datatypeToSqlType(potentialType, true));
-          }
-        }
+  protected List<SqlTypeName> probeColumnTypes() throws SQLException {
+    return probeColumnTypesBatched(MAX_PROBE_OBJECTS);
+  }
 
-        builder.add(col.getKey(), type);
-      }
-    } catch (SQLException e) {
-      throw new RuntimeException("SQL Exception", e);
-    }
+  @Override
+  synchronized void restore(List<Pair<String, String>> columns, List<SqlTypeName> columnTypes) {
+    super.restore(columns, columnTypes);
+    this.columns = columns;
+  }
 
-    return builder.build();
+  @Override
+  public List<MultiValued> getMultiValued() {
+    return Collections.nCopies(getColumns().size(), config.getMultiValued());
   }
 
   @Override
   public RelNode toRel(RelOptTable.ToRelContext context, RelOptTable relOptTable) {
     final RelOptCluster cluster = context.getCluster();
     return new SparqlClassTableScan(cluster, cluster.traitSetOf(SparqlClassRel.CONVENTION), relOptTable, tableName,
-        prop, getColumns());
+        prop, getColumns(), getMultiValued());
   }
 
-  private List<Pair<String, String>> getColumns() {
-    // TODO: move this cache elsewhere?
+  @Override
+  public synchronized List<Pair<String, String>> getColumns() {
     if (columns == null) {
       try {
         columns = endpoint.getPropertiesPerClass(prop, MAX_PROPS_PER_TABLE);
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.sql.SQLException;
+
+import org.apache.calcite.avatica.AvaticaConnection;
+import org.apache.calcite.avatica.AvaticaStatement;
+import org.apache.calcite.avatica.Handler;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.CalcitePrepare;
+import org.apache.calcite.jdbc.Driver;
+import org.apache.calcite.linq4j.function.Function0;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JDBC driver that works like the Calcite one, with the {@code jdbc:calcite-sparql:} prefix, caches the plans
+ * of the queries over SPARQL schemas and closes these schemas together with their connection.
+ */
+public class SparqlDriver extends Driver {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SparqlDriver.class);
+
+  public static final String CONNECT_STRING_PREFIX = "jdbc:calcite-sparql:";
+
+  static {
+    new SparqlDriver().register();
+  }
+
+  @Override
+  protected String getConnectStringPrefix() {
+    return CONNECT_STRING_PREFIX;
+  }
+
+  @Override
+  protected Function0<CalcitePrepare> createPrepareFactory() {
+    return SparqlPrepare::new;
+  }
+
+  @Override
+  protected Handler createHandler() {
+    Handler handler = super.createHandler();
+
+    return new Handler() {
+      @Override
+      public void onConnectionInit(AvaticaConnection connection) throws SQLException {
+        handler.onConnectionInit(connection);
+      }
+
+      @Override
+      public void onConnectionClose(AvaticaConnection connection) {
+        try {
+          SparqlSchema.closeAll(connection.unwrap(CalciteConnection.class).getRootSchema());
+        } catch (SQLException e) {
+          LOGGER.warn("Cannot close the SPARQL schemas of a connection", e);
+        }
+
+        handler.onConnectionClose(connection);
+      }
+
+      @Override
+      public void onStatementExecute(AvaticaStatement statement, ResultSink resultSink) {
+        handler.onStatementExecute(statement, resultSink);
+      }
+
+      @Override
+      public void onStatementClose(AvaticaStatement statement) {
+        handler.onStatementClose(statement);
+      }
+    };
+  }
+}
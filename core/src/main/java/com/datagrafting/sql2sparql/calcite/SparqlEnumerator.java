@@ -15,72 +15,100 @@
  */
 package com.datagrafting.sql2sparql.calcite;
 
-import java.math.BigInteger;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.apache.calcite.linq4j.Enumerator;
-import org.apache.jena.datatypes.RDFDatatype;
-import org.apache.jena.graph.Node_Literal;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+import com.datagrafting.sql2sparql.sparql.SparqlEvents;
 
 public class SparqlEnumerator implements Enumerator<Object> {
+  private final SparqlEndpoint endpoint;
   private final ResultSet results;
+  private final SparqlRowDecoder decoder;
+  private final String tableName;
+  private final String queryString;
+  // Only set while a recording is running, until they are committed
+  private SparqlEvents.FirstRowEvent firstRowEvent;
+  private SparqlEvents.ExhaustedEvent exhaustedEvent;
+  private long rows;
 
-  public SparqlEnumerator(ResultSet results) {
-    this.results = results;
+  public SparqlEnumerator(SparqlEndpoint endpoint, ResultSet results, List<SqlTypeName> columnTypes) {
+    this(endpoint, results, columnTypes, null, null);
   }
 
-  @Override
-  public Object current() {
+  /**
+   * Enumerates the results of a query that reads a table, whose name and query are recorded by the JFR events
+   * of its results.
+   */
+  public SparqlEnumerator(SparqlEndpoint endpoint, ResultSet results, List<SqlTypeName> columnTypes,
+                          String tableName, String queryString) {
+    this.endpoint = endpoint;
+    this.results = results;
+    this.tableName = tableName;
+    this.queryString = queryString;
+
+    SparqlEvents.FirstRowEvent firstRowEvent = new SparqlEvents.FirstRowEvent();
+    if (firstRowEvent.isEnabled()) {
+      firstRowEvent.begin();
+      this.firstRowEvent = firstRowEvent;
+    }
+
+    SparqlEvents.ExhaustedEvent exhaustedEvent = new SparqlEvents.ExhaustedEvent();
+    if (exhaustedEvent.isEnabled()) {
+      exhaustedEvent.begin();
+      this.exhaustedEvent = exhaustedEvent;
+    }
+
     try {
       int numFields = results.getMetaData().getColumnCount();
-      Object[] row = new Object[numFields];
-
-      for (int col = 1; col <= numFields; col++) {
-        row[col - 1] = parseObject(results.getObject(col));
-      }
-
-      // When only one field is projected
-      if (numFields == 1) {
-        return row[0];
-      } else {
-        return row;
-      }
+
+      // Without the column types (or if they do not match the query), each value keeps the type of its literal
+      this.decoder = columnTypes != null && columnTypes.size() == numFields ?
+          SparqlRowDecoder.of(columnTypes) :
+          SparqlRowDecoder.generic(numFields);
     } catch (SQLException e) {
       throw new RuntimeException("SQL Exception", e);
     }
   }
 
-  private Object parseObject(Object obj) {
-    if (obj instanceof Node_Literal) {
-      Object value = ((Node_Literal) obj).getLiteralValue();
-      RDFDatatype datatype = ((Node_Literal) obj).getLiteralDatatype();
-      Object parsedValue = datatype.parse(value.toString());
-
-      if (datatype.getURI().equals("http://www.w3.org/2001/XMLSchema#integer") &&
-          !(parsedValue instanceof Long)) {
-        // An xsd:integer can be converted to an Integer, a Long or a BigInteger (see
-        // https://jena.apache.org/documentation/notes/typed-literals.html#xsd-data-types),
-        // but Calcite uses long for the BIGINT type
-        parsedValue = parsedValue instanceof BigInteger ?
-            ((BigInteger) parsedValue).longValue() :
-            // Value is neither Long nor BigInteger, so it must be Integer
-            ((Integer) parsedValue).longValue();
-      }
-
-      return parsedValue;
-    } else {
-      return obj;
+  @Override
+  public Object current() {
+    try {
+      return decoder.decodeRow(results);
+    } catch (SQLException e) {
+      throw new RuntimeException("SQL Exception", e);
     }
   }
 
   @Override
   public boolean moveNext() {
+    boolean next;
+
     try {
-      return results.next();
+      next = results.next();
     } catch (SQLException e) {
       throw new RuntimeException("SQL Exception", e);
     }
+
+    if (next) {
+      rows++;
+    }
+
+    if (firstRowEvent != null) {
+      firstRowEvent.commit(endpoint.getUrl(), tableName, queryString);
+      firstRowEvent = null;
+    }
+
+    if (!next && exhaustedEvent != null) {
+      exhaustedEvent.commit(endpoint.getUrl(), tableName, queryString, rows);
+      exhaustedEvent = null;
+    }
+
+    return next;
   }
 
   @Override
@@ -91,7 +119,8 @@ public class SparqlEnumerator implements Enumerator<Object> {
   @Override
   public void close() {
     try {
-      results.close();
+      // Also closes the statement and returns the connection to the pool
+      endpoint.release(results);
     } catch (SQLException e) {
       throw new RuntimeException("SQL Exception", e);
     }
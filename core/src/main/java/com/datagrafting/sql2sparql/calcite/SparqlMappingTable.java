@@ -16,16 +16,17 @@
 package com.datagrafting.sql2sparql.calcite;
 
 import java.sql.SQLException;
-import java.util.Set;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.type.RelDataType;
-import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
 
-import com.datagrafting.sql2sparql.calcite.config.ColumnSpec;
+import com.datagrafting.sql2sparql.calcite.config.Config;
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
 import com.datagrafting.sql2sparql.calcite.config.TableMapping;
 import com.datagrafting.sql2sparql.calcite.rel.SparqlClassRel;
 import com.datagrafting.sql2sparql.calcite.rel.SparqlMappingTableScan;
@@ -37,44 +38,28 @@ public class SparqlMappingTable extends SparqlTable {
 
   private final TableMapping tableMapping;
 
-  public SparqlMappingTable(String tableName, String prop, TableMapping tableMapping, SparqlEndpoint endpoint) {
+  public SparqlMappingTable(String tableName, String prop, TableMapping tableMapping, SparqlEndpoint endpoint,
+                            Config config, SparqlResultCache resultCache) {
     // TODO: review this as tableName and prop not needed but SparqlTable constructor uses both
-    super(tableName, prop, endpoint);
+    super(tableName, prop, endpoint, config, resultCache);
     this.tableMapping = tableMapping;
   }
 
   @Override
-  public RelDataType getRowType(RelDataTypeFactory typeFactory) {
-    RelDataTypeFactory.Builder builder = typeFactory.builder();
-    Set<String> probeObjects;
-
-    try {
-      builder.add("s", typeFactory.createSqlType(SqlTypeName.VARCHAR));
-
-      for (ColumnSpec col : tableMapping.getColumns()) {
-        probeObjects = endpoint.getObjectTypesForProperty(col.getProperty(), MAX_PROBE_OBJECTS);
-
-        RelDataType type;
-        if (probeObjects.size() > 1) {
-          // Too many potential types, stick to string type
-          type = typeFactory.createSqlType(SqlTypeName.VARCHAR);
-        } else {
-          String potentialType = probeObjects.toArray(new String[0])[0];
-
-          if (potentialType == null) {
-            type = typeFactory.createSqlType(SqlTypeName.VARCHAR);
-          } else {
-            type = typeFactory.createSqlType(datatypeToSqlType(potentialType, true));
-          }
-        }
+  public List<Pair<String, String>> getColumns() {
+    return tableMapping.getColumns().stream()
+                       .map(col -> new Pair<>(col.getName(), col.getProperty()))
+                       .collect(Collectors.toList());
+  }
 
-        builder.add(col.getName(), type);
-      }
-    } catch (SQLException e) {
-      throw new RuntimeException("SQL Exception", e);
-    }
+  @Override
+  public List<MultiValued> getMultiValued() {
+    return tableMapping.getColumnsMultiValued();
+  }
 
-    return builder.build();
+  @Override
+  protected List<SqlTypeName> probeColumnTypes() throws SQLException {
+    return probeColumnTypesBatched(MAX_PROBE_OBJECTS);
   }
 
   @Override
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.util.function.Supplier;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datagrafting.sql2sparql.sparql.SparqlMetrics;
+
+/**
+ * Times the results of a query to the endpoint, from the moment it is opened until its first and last rows are
+ * read, and counts its rows. The timings are recorded by the metrics of the schema when the enumerator is
+ * closed, and logged at debug level.
+ */
+public class SparqlMeteredEnumerator implements Enumerator<Object> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SparqlMeteredEnumerator.class);
+
+  private final Enumerator<Object> enumerator;
+  private final SparqlMetrics metrics;
+  private final String tableName;
+  private final long start;
+  private long firstRowNanos = -1;
+  private long fetchNanos = -1;
+  private long rows;
+  private boolean failed;
+  private boolean recorded;
+
+  private SparqlMeteredEnumerator(Enumerator<Object> enumerator, SparqlMetrics metrics, String tableName,
+                                  long start) {
+    this.enumerator = enumerator;
+    this.metrics = metrics;
+    this.tableName = tableName;
+    this.start = start;
+  }
+
+  /**
+   * Opens the results of a query, timing them unless neither the metrics nor the debug log would record them.
+   */
+  public static Enumerator<Object> open(Supplier<Enumerator<Object>> opener, SparqlMetrics metrics,
+                                        String tableName) {
+    if (!isEnabled(metrics)) {
+      return opener.get();
+    }
+
+    long start = System.nanoTime();
+
+    try {
+      return new SparqlMeteredEnumerator(opener.get(), metrics, tableName, start);
+    } catch (RuntimeException e) {
+      metrics.failed(tableName);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns whether the results would be timed, i.e. whether the metrics or the debug log would record them.
+   */
+  public static boolean isEnabled(SparqlMetrics metrics) {
+    return metrics != SparqlMetrics.DISABLED || LOGGER.isDebugEnabled();
+  }
+
+  @Override
+  public Object current() {
+    return enumerator.current();
+  }
+
+  @Override
+  public boolean moveNext() {
+    boolean next;
+
+    try {
+      next = enumerator.moveNext();
+    } catch (RuntimeException e) {
+      failed = true;
+      throw e;
+    }
+
+    if (firstRowNanos < 0) {
+      firstRowNanos = System.nanoTime() - start;
+    }
+
+    if (next) {
+      rows++;
+    } else if (fetchNanos < 0) {
+      fetchNanos = System.nanoTime() - start;
+    }
+
+    return next;
+  }
+
+  @Override
+  public void reset() {
+    enumerator.reset();
+  }
+
+  @Override
+  public void close() {
+    try {
+      enumerator.close();
+    } finally {
+      record();
+    }
+  }
+
+  private void record() {
+    if (recorded) {
+      return;
+    }
+
+    recorded = true;
+
+    if (failed) {
+      metrics.failed(tableName);
+      return;
+    }
+
+    // The results may be closed before being read to the end, e.g. because of a LIMIT evaluated by Calcite
+    long fetch = fetchNanos < 0 ? System.nanoTime() - start : fetchNanos;
+    long firstRow = firstRowNanos < 0 ? fetch : firstRowNanos;
+
+    metrics.queried(tableName, firstRow, fetch, rows);
+    LOGGER.debug("Read {} rows of table {} in {} ms, first row after {} ms", rows, tableName, fetch / 1_000_000,
+        firstRow / 1_000_000);
+  }
+}
@@ -16,11 +16,13 @@
 package com.datagrafting.sql2sparql.calcite;
 
 import java.lang.reflect.Method;
+import java.util.List;
 
 import org.apache.calcite.linq4j.tree.Types;
 
 public enum SparqlMethod {
-  SPARQL_QUERY(SparqlQueryable.class, "query", String.class);
+  SPARQL_QUERY(SparqlQueryable.class, "query", String.class, List.class),
+  SPARQL_QUERY_TEMPLATE(SparqlQueryable.class, "query", String.class, List.class, Object[].class);
 
   @SuppressWarnings("ImmutableEnumChecker")
   public final Method method;
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+
+/**
+ * Enumerates the rows of all the pages of a query as a single sequence. With prefetching, the next page is
+ * requested as soon as a page turns out to be full, while its rows are read, so that the endpoint produces it in the
+ * meantime. A page with fewer rows is the last one, so nothing is requested after it.
+ */
+public class SparqlPagedEnumerator implements Enumerator<Object> {
+  private final SparqlEndpoint endpoint;
+  private final String tableName;
+  private final SparqlPages pages;
+  private final List<SqlTypeName> columnTypes;
+  private final boolean prefetch;
+  private int index;
+  private SparqlEnumerator page;
+  private long rows;
+  private CompletableFuture<ResultSet> next;
+  private boolean done;
+
+  public SparqlPagedEnumerator(SparqlEndpoint endpoint, String tableName, SparqlPages pages,
+                               List<SqlTypeName> columnTypes, boolean prefetch) {
+    this.endpoint = endpoint;
+    this.tableName = tableName;
+    this.pages = pages;
+    this.columnTypes = columnTypes;
+    this.prefetch = prefetch;
+    this.next = prefetch ? endpoint.queryAsync(pages.getPage(0), tableName) : null;
+  }
+
+  @Override
+  public Object current() {
+    return page.current();
+  }
+
+  @Override
+  public boolean moveNext() {
+    while (!done) {
+      if (page == null) {
+        openNextPage();
+      } else if (page.moveNext()) {
+        rows++;
+        if (prefetch && rows == pages.getPageSize()) {
+          prefetchNextPage();
+        }
+
+        return true;
+      } else {
+        page.close();
+        page = null;
+        done = pages.isLast(index, rows);
+        index++;
+      }
+    }
+
+    return false;
+  }
+
+  private void openNextPage() {
+    ResultSet results;
+
+    try {
+      results = next != null ? next.join() : endpoint.query(pages.getPage(index), tableName);
+    } catch (CompletionException e) {
+      throw new RuntimeException("SQL Exception", e.getCause());
+    } catch (SQLException e) {
+      throw new RuntimeException("SQL Exception", e);
+    } finally {
+      next = null;
+    }
+
+    page = new SparqlEnumerator(endpoint, results, columnTypes, tableName, pages.getPage(index));
+    rows = 0;
+  }
+
+  private void prefetchNextPage() {
+    String nextPage = pages.getPage(index + 1);
+    if (nextPage != null) {
+      next = endpoint.queryAsync(nextPage, tableName);
+    }
+  }
+
+  @Override
+  public void reset() {
+
+  }
+
+  @Override
+  public void close() {
+    if (page != null) {
+      page.close();
+      page = null;
+    }
+
+    // The next page may still be on its way
+    if (next != null) {
+      endpoint.release(next);
+      next = null;
+    }
+
+    done = true;
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.core.Var;
+
+/**
+ * The pages of a SPARQL query, each of them being the same query with its own LIMIT and OFFSET, so that large
+ * results are read with a sequence of bounded requests. The query is sorted by all its result variables (after
+ * its own sort keys, if any), so that the pages split the same sequence of rows: rows that are still tied are
+ * identical, and it makes no difference which page each of them ends up in.
+ */
+public final class SparqlPages {
+  private final Query query;
+  private final long pageSize;
+  private final long offset;
+  private final long limit;
+
+  private SparqlPages(Query query, long pageSize) {
+    this.query = query;
+    this.pageSize = pageSize;
+    this.offset = query.hasOffset() ? query.getOffset() : 0;
+    this.limit = query.hasLimit() ? query.getLimit() : Query.NOLIMIT;
+  }
+
+  /**
+   * Returns the pages of a query, or null if the query does not need to be paged or cannot be paged. Queries
+   * with aggregates are not paged, since their results are usually small and their sort keys would have to be
+   * the aggregate expressions.
+   */
+  public static SparqlPages of(String queryString, long pageSize) {
+    if (pageSize <= 0) {
+      return null;
+    }
+
+    Query query = QueryFactory.create(queryString);
+    if (!query.isSelectType() || query.hasAggregators() || query.hasGroupBy() || query.hasHaving()
+        || (query.hasLimit() && query.getLimit() <= pageSize)) {
+      return null;
+    }
+
+    for (Var var : query.getProjectVars()) {
+      // Variables selected again under a new name are already sorted by their original name
+      if (!query.getProject().hasExpr(var)) {
+        query.addOrderBy(var, Query.ORDER_DEFAULT);
+      }
+    }
+
+    return new SparqlPages(query, pageSize);
+  }
+
+  public long getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Returns the query of the page with the given index, or null if the rows of the query end before it.
+   */
+  public String getPage(int index) {
+    long start = index * pageSize;
+    if (limit != Query.NOLIMIT && start >= limit) {
+      return null;
+    }
+
+    Query page = query.cloneQuery();
+    page.setOffset(offset + start > 0 ? offset + start : Query.NOLIMIT);
+    page.setLimit(limit == Query.NOLIMIT ? pageSize : Math.min(pageSize, limit - start));
+    return page.serialize();
+  }
+
+  /**
+   * Checks whether the page with the given index is the last one, given the number of rows it returned.
+   */
+  public boolean isLast(int index, long rows) {
+    return rows < pageSize || getPage(index + 1) == null;
+  }
+}
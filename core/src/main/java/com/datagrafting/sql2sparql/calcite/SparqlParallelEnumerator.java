@@ -0,0 +1,130 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.calcite.linq4j.Enumerator;
+
+/**
+ * Enumerates the rows of several partitions of a query as a single sequence, in no particular order. Each
+ * partition is read and decoded by its own task, which hands its rows over through a bounded queue, so that a
+ * slow consumer holds the partitions back instead of running out of memory.
+ */
+public class SparqlParallelEnumerator implements Enumerator<Object> {
+  // Marks the end of a partition, and stands for a null row (a null value of a single column) in the queue
+  private static final Object END = new Object();
+  private static final Object NULL = new Object();
+
+  private final BlockingQueue<Object> rows;
+  private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+  private volatile boolean closed;
+  private volatile RuntimeException failure;
+  private int running;
+  private Object current;
+
+  public SparqlParallelEnumerator(List<Supplier<Enumerator<Object>>> partitions, Executor executor, int capacity) {
+    this.rows = new LinkedBlockingQueue<>(capacity);
+    this.running = partitions.size();
+
+    for (Supplier<Enumerator<Object>> partition : partitions) {
+      tasks.add(CompletableFuture.runAsync(() -> produce(partition), executor));
+    }
+  }
+
+  private void produce(Supplier<Enumerator<Object>> partition) {
+    // A partition that starts once the rows are no longer read is not even sent
+    if (closed) {
+      return;
+    }
+
+    try (Enumerator<Object> enumerator = partition.get()) {
+      while (!closed && enumerator.moveNext()) {
+        Object row = enumerator.current();
+        put(row == null ? NULL : row);
+      }
+    } catch (RuntimeException e) {
+      failure = e;
+    } finally {
+      put(END);
+    }
+  }
+
+  private void put(Object row) {
+    try {
+      while (!closed) {
+        if (rows.offer(row, 100, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      closed = true;
+    }
+  }
+
+  @Override
+  public Object current() {
+    return current;
+  }
+
+  @Override
+  public boolean moveNext() {
+    while (running > 0) {
+      Object row;
+
+      try {
+        row = rows.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while reading the partitions", e);
+      }
+
+      if (row == END) {
+        running--;
+        if (failure != null) {
+          throw failure;
+        }
+      } else {
+        current = row == NULL ? null : row;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public void reset() {
+
+  }
+
+  @Override
+  public void close() {
+    // The tasks that have not started are skipped, and the others stop at their next row and close their
+    // partitions
+    closed = true;
+    tasks.forEach(task -> task.cancel(false));
+    rows.clear();
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_Bound;
+import org.apache.jena.sparql.expr.E_IsIRI;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.E_LogicalNot;
+import org.apache.jena.sparql.expr.E_LogicalOr;
+import org.apache.jena.sparql.expr.E_MD5;
+import org.apache.jena.sparql.expr.E_OneOf;
+import org.apache.jena.sparql.expr.E_Str;
+import org.apache.jena.sparql.expr.E_StrSubstring;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.PatternVars;
+
+/**
+ * Splits a SPARQL query into partitions that can run concurrently, each of them returning the rows of a disjoint
+ * subset of the subjects of the first scanned table. SPARQL has no integer hash function, so the subjects are
+ * assigned to the partitions by the first hexadecimal digits of the MD5 hash of their IRI. Blank nodes have no
+ * string form, and their labels may change between requests, so they are all assigned to the first partition.
+ */
+public final class SparqlPartitions {
+  // The variable of the subjects of the first scanned table, in every table mode
+  private static final Var SUBJECT = Var.alloc("s");
+  private static final int MAX_PARTITIONS = 256;
+
+  private SparqlPartitions() {
+  }
+
+  /**
+   * Returns the queries of the given number of partitions of a query, or null if the query cannot be partitioned.
+   * Only the queries whose rows can be returned in any order, and whose rows are all distinct from the rows of
+   * the other partitions, are partitioned: queries with aggregates, sorting, limits, offsets or DISTINCT are not.
+   */
+  public static List<String> of(String queryString, int count) {
+    if (count <= 1) {
+      return null;
+    }
+
+    Query query = QueryFactory.create(queryString);
+    if (!query.isSelectType() || query.hasAggregators() || query.hasGroupBy() || query.hasHaving()
+        || query.hasOrderBy() || query.hasLimit() || query.hasOffset() || query.isDistinct() || query.isReduced()
+        || !(query.getQueryPattern() instanceof ElementGroup)
+        || !PatternVars.vars(query.getQueryPattern()).contains(SUBJECT)) {
+      return null;
+    }
+
+    int partitions = Math.min(count, MAX_PARTITIONS);
+    // Enough digits to have at least one hash prefix per partition
+    int digits = partitions <= 16 ? 1 : 2;
+    Expr prefix = new E_StrSubstring(new E_MD5(new E_Str(new ExprVar(SUBJECT))),
+        NodeValue.makeInteger(1), NodeValue.makeInteger(digits));
+
+    List<ExprList> prefixes = new ArrayList<>();
+    for (int i = 0; i < partitions; i++) {
+      prefixes.add(new ExprList());
+    }
+    for (int i = 0; i < 1 << (4 * digits); i++) {
+      String hex = String.format("%0" + digits + "x", i);
+      prefixes.get(i % partitions).add(NodeValue.makeString(hex));
+    }
+
+    Expr isIri = new E_IsIRI(new ExprVar(SUBJECT));
+    List<String> queries = new ArrayList<>();
+    for (int i = 0; i < partitions; i++) {
+      Expr condition;
+      if (i == 0) {
+        // Rows without a subject or with a blank node would not belong to any partition
+        condition = new E_LogicalOr(new E_LogicalOr(new E_LogicalNot(new E_Bound(new ExprVar(SUBJECT))),
+            new E_LogicalNot(isIri)), new E_OneOf(prefix, prefixes.get(i)));
+      } else {
+        condition = new E_LogicalAnd(isIri, new E_OneOf(prefix, prefixes.get(i)));
+      }
+
+      Query partition = query.cloneQuery();
+      ((ElementGroup) partition.getQueryPattern()).addElementFilter(new ElementFilter(condition));
+      queries.add(partition.serialize());
+    }
+
+    return queries;
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.calcite.jdbc.CalcitePrepare;
+
+/**
+ * A bounded cache of the prepared plans of a schema, keyed by the normalized SQL text, so that repeated queries
+ * skip parsing, planning and code generation (including the generation of their SPARQL query) and are sent
+ * straight to the endpoint. The least recently used plans are evicted first.
+ */
+public class SparqlPlanCache {
+  private final int maxSize;
+  private final Map<Key, CalcitePrepare.CalciteSignature<?>> plans;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public SparqlPlanCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.plans = new LinkedHashMap<Key, CalcitePrepare.CalciteSignature<?>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, CalcitePrepare.CalciteSignature<?>> eldest) {
+        return size() > SparqlPlanCache.this.maxSize;
+      }
+    };
+  }
+
+  public boolean isEnabled() {
+    return maxSize > 0;
+  }
+
+  public synchronized CalcitePrepare.CalciteSignature<?> get(Key key) {
+    CalcitePrepare.CalciteSignature<?> signature = plans.get(key);
+    (signature == null ? misses : hits).incrementAndGet();
+    return signature;
+  }
+
+  public synchronized void put(Key key, CalcitePrepare.CalciteSignature<?> signature) {
+    plans.put(key, signature);
+  }
+
+  /**
+   * Discards all the cached plans, e.g. because the tables they were planned against have changed.
+   */
+  public synchronized void invalidate() {
+    plans.clear();
+  }
+
+  public synchronized int size() {
+    return plans.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Normalizes a SQL query by collapsing the whitespace outside of literals and quoted identifiers, so that
+   * queries that only differ in their formatting share the same plan.
+   */
+  public static String normalize(String sql) {
+    StringBuilder normalized = new StringBuilder(sql.length());
+    char quote = 0;
+    boolean space = false;
+
+    for (char c : sql.trim().toCharArray()) {
+      if (quote == 0 && Character.isWhitespace(c)) {
+        space = true;
+        continue;
+      }
+
+      if (space) {
+        normalized.append(' ');
+        space = false;
+      }
+
+      if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+        quote = c;
+      } else if (c == quote) {
+        // A doubled quote is read as closing and opening the literal again
+        quote = 0;
+      }
+
+      normalized.append(c);
+    }
+
+    return normalized.toString();
+  }
+
+  /**
+   * The key of a plan: besides the SQL text, a plan depends on the default schema it is resolved against, the
+   * type of its rows, the maximum number of rows it returns and the version of the tables it was planned
+   * against.
+   */
+  public static class Key {
+    private final String sql;
+    private final List<String> schemaPath;
+    private final Type elementType;
+    private final long maxRowCount;
+    private final long schemaVersion;
+
+    public Key(String sql, List<String> schemaPath, Type elementType, long maxRowCount, long schemaVersion) {
+      this.sql = normalize(sql);
+      this.schemaPath = schemaPath;
+      this.elementType = elementType;
+      this.maxRowCount = maxRowCount;
+      this.schemaVersion = schemaVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key key = (Key) o;
+      return maxRowCount == key.maxRowCount && schemaVersion == key.schemaVersion && sql.equals(key.sql)
+          && Objects.equals(schemaPath, key.schemaPath) && Objects.equals(elementType, key.elementType);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, schemaPath, elementType, maxRowCount, schemaVersion);
+    }
+  }
+}
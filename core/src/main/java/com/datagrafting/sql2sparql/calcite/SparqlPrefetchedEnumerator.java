@@ -0,0 +1,90 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+
+/**
+ * Enumerates the results of a query sent asynchronously, waiting for them only when the first row is read.
+ */
+public class SparqlPrefetchedEnumerator implements Enumerator<Object> {
+  private final SparqlEndpoint endpoint;
+  private final List<SqlTypeName> columnTypes;
+  private final String tableName;
+  private final String queryString;
+  private CompletableFuture<ResultSet> pending;
+  private SparqlEnumerator results;
+
+  public SparqlPrefetchedEnumerator(SparqlEndpoint endpoint, CompletableFuture<ResultSet> pending,
+                                    List<SqlTypeName> columnTypes, String tableName, String queryString) {
+    this.endpoint = endpoint;
+    this.pending = pending;
+    this.columnTypes = columnTypes;
+    this.tableName = tableName;
+    this.queryString = queryString;
+  }
+
+  @Override
+  public Object current() {
+    return results.current();
+  }
+
+  @Override
+  public boolean moveNext() {
+    if (results == null) {
+      if (pending == null) {
+        return false;
+      }
+
+      try {
+        results = new SparqlEnumerator(endpoint, pending.join(), columnTypes, tableName, queryString);
+      } catch (CompletionException e) {
+        throw new RuntimeException("SQL Exception", e.getCause());
+      } finally {
+        pending = null;
+      }
+    }
+
+    return results.moveNext();
+  }
+
+  @Override
+  public void reset() {
+
+  }
+
+  @Override
+  public void close() {
+    if (results != null) {
+      results.close();
+      results = null;
+    }
+
+    // The results may still be on their way
+    if (pending != null) {
+      endpoint.release(pending);
+      pending = null;
+    }
+  }
+}
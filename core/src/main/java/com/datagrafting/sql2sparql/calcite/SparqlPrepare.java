@@ -0,0 +1,90 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.lang.reflect.Type;
+
+import org.apache.calcite.avatica.Meta;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares SQL queries like Calcite does, reusing the plans cached by the SPARQL schema of the connection when
+ * the same query is prepared again. The time spent planning is recorded by the metrics of the schema.
+ */
+public class SparqlPrepare extends CalcitePrepareImpl {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SparqlPrepare.class);
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> CalciteSignature<T> prepareSql(Context context, Query<T> query, Type elementType, long maxRowCount) {
+    SparqlSchema schema = query.sql == null ? null : findSchema(context.getRootSchema());
+    if (schema == null) {
+      return super.prepareSql(context, query, elementType, maxRowCount);
+    }
+    if (!schema.getPlanCache().isEnabled()) {
+      return plan(schema, context, query, elementType, maxRowCount);
+    }
+
+    SparqlPlanCache planCache = schema.getPlanCache();
+    // Read before planning, so that a plan made while the schema is refreshed is never found again
+    SparqlPlanCache.Key key = new SparqlPlanCache.Key(query.sql, context.getDefaultSchemaPath(), elementType,
+        maxRowCount, schema.getVersion());
+
+    CalciteSignature<T> signature = (CalciteSignature<T>) planCache.get(key);
+    if (signature == null) {
+      signature = plan(schema, context, query, elementType, maxRowCount);
+
+      // DDL statements are executed while they are prepared, so they are never cached
+      if (signature.statementType == Meta.StatementType.SELECT) {
+        planCache.put(key, signature);
+      }
+    }
+
+    return signature;
+  }
+
+  private <T> CalciteSignature<T> plan(SparqlSchema schema, Context context, Query<T> query, Type elementType,
+                                       long maxRowCount) {
+    long start = System.nanoTime();
+    CalciteSignature<T> signature = super.prepareSql(context, query, elementType, maxRowCount);
+    long nanos = System.nanoTime() - start;
+
+    schema.getEndpoint().getMetrics().planned(nanos);
+    LOGGER.debug("Planned query in {} ms: {}", nanos / 1_000_000, query.sql);
+
+    return signature;
+  }
+
+  // Plans are only cached for connections with a single SPARQL schema, which is the one they are planned against
+  private static SparqlSchema findSchema(CalciteSchema rootSchema) {
+    SparqlSchema found = null;
+
+    for (CalciteSchema subSchema : rootSchema.getSubSchemaMap().values()) {
+      if (subSchema.schema instanceof SparqlSchema) {
+        if (found != null) {
+          return null;
+        }
+
+        found = (SparqlSchema) subSchema.schema;
+      }
+    }
+
+    return found;
+  }
+}
@@ -16,55 +16,51 @@
 package com.datagrafting.sql2sparql.calcite;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.type.RelDataType;
-import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
 
+import com.datagrafting.sql2sparql.calcite.config.Config;
 import com.datagrafting.sql2sparql.calcite.rel.SparqlPropRel;
 import com.datagrafting.sql2sparql.calcite.rel.SparqlPropTableScan;
 import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
 
 public class SparqlPropTable extends SparqlTable {
-  public SparqlPropTable(String tableName, String prop, SparqlEndpoint endpoint) {
-    super(tableName, prop, endpoint);
+  public SparqlPropTable(String tableName, String prop, SparqlEndpoint endpoint, Config config,
+      SparqlResultCache resultCache) {
+    super(tableName, prop, endpoint, config, resultCache);
   }
 
   @Override
-  public RelDataType getRowType(RelDataTypeFactory typeFactory) {
-    RelDataTypeFactory.Builder builder = typeFactory.builder();
-    Set<String> probeObjects;
+  public List<Pair<String, String>> getColumns() {
+    return Collections.singletonList(new Pair<>("o", prop));
+  }
 
+  @Override
+  protected boolean hasOptionalColumns() {
+    // Each row is a triple, so its object is always bound
+    return false;
+  }
+
+  @Override
+  protected List<SqlTypeName> probeColumnTypes() throws SQLException {
     // TODO: init in config
     int limit = 10;
 
-    try {
-      probeObjects = endpoint.getObjectTypesForProperty(prop, limit);
-    } catch (SQLException e) {
-      throw new RuntimeException("SQL Exception", e);
-    }
-
-    builder.add("s", typeFactory.createSqlType(SqlTypeName.VARCHAR));
+    Set<String> probeObjects = endpoint.getObjectTypesForProperty(prop, limit);
 
     if (probeObjects.size() > 1) {
       throw new RuntimeException("Too many object types for property " + prop);
     }
 
-    String potentialType = probeObjects.toArray(new String[0])[0];
-
-    if (potentialType == null) {
-      // Object property or plain literal, treat as string
-      builder.add("o", typeFactory.createSqlType(SqlTypeName.VARCHAR));
-    } else {
-      builder.add("o", typeFactory.createSqlType(
-          datatypeToSqlType(potentialType, true)));
-    }
-
-    return builder.build();
+    // An object property or plain literal is treated as string
+    return Collections.singletonList(probeColumnType(probeObjects));
   }
 
   @Override
@@ -15,11 +15,14 @@
  */
 package com.datagrafting.sql2sparql.calcite;
 
+import java.util.List;
+
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.impl.AbstractTableQueryable;
+import org.apache.calcite.sql.type.SqlTypeName;
 
 public class SparqlQueryable<T> extends AbstractTableQueryable<T> {
   public SparqlQueryable(QueryProvider queryProvider, SchemaPlus schema, SparqlTable sparqlTable, String tableName) {
@@ -28,7 +31,7 @@ public class SparqlQueryable<T> extends AbstractTableQueryable<T> {
 
   @Override
   public Enumerator<T> enumerator() {
-    final Enumerable<T> enumerable = (Enumerable<T>) getTable().query(null);
+    final Enumerable<T> enumerable = (Enumerable<T>) getTable().query(null, null);
     return enumerable.enumerator();
   }
 
@@ -36,7 +39,11 @@ public class SparqlQueryable<T> extends AbstractTableQueryable<T> {
     return (SparqlTable) table;
   }
 
-  public Enumerable<T> query(String queryString) {
-    return (Enumerable<T>) getTable().query(queryString);
+  public Enumerable<T> query(String queryString, List<SqlTypeName> columnTypes) {
+    return (Enumerable<T>) getTable().query(queryString, columnTypes);
+  }
+
+  public Enumerable<T> query(String queryTemplate, List<SqlTypeName> columnTypes, Object[] parameters) {
+    return (Enumerable<T>) getTable().query(queryTemplate, columnTypes, parameters);
   }
 }
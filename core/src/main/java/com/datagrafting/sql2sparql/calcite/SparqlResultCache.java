@@ -0,0 +1,241 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
+
+/**
+ * A cache of the decoded rows of the queries sent to the endpoint by a schema, keyed by the SPARQL query and the
+ * types of its result columns, so that repeated queries over slowly changing data skip the round trip. The rows
+ * are kept as a single array per query, the cache is bounded by the estimated size of the rows in bytes, evicting
+ * the least recently used results first, and the results expire after a given time.
+ */
+public class SparqlResultCache {
+  // Rough sizes of a reference, an object header and an array header on a 64-bit JVM with compressed pointers
+  private static final int REFERENCE_BYTES = 4;
+  private static final int OBJECT_BYTES = 16;
+  private static final int ARRAY_BYTES = 16;
+
+  private final long maxBytes;
+  private final long ttlMillis;
+  private final Map<Pair<String, List<SqlTypeName>>, Entry> results;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long bytes;
+
+  public SparqlResultCache(long maxBytes, long ttlMillis) {
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+    this.results = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  public boolean isEnabled() {
+    return maxBytes > 0 && ttlMillis > 0;
+  }
+
+  /**
+   * Returns the cached rows of a query, or null if they are not cached or have expired.
+   */
+  public synchronized List<Object> get(String queryString, List<SqlTypeName> columnTypes) {
+    Pair<String, List<SqlTypeName>> key = Pair.of(queryString, columnTypes);
+    Entry entry = results.get(key);
+
+    if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+      remove(key);
+      entry = null;
+    }
+
+    (entry == null ? misses : hits).incrementAndGet();
+    return entry == null ? null : Arrays.asList(entry.rows);
+  }
+
+  /**
+   * Wraps the enumerator of the results of a query, so that its rows are cached once all of them have been read.
+   * The rows of a query that is not read to the end, or that would not fit in the cache, are not cached.
+   */
+  public Enumerator<Object> record(String queryString, List<SqlTypeName> columnTypes, Enumerator<Object> results) {
+    return new RecordingEnumerator(Pair.of(queryString, columnTypes), results);
+  }
+
+  private synchronized void put(Pair<String, List<SqlTypeName>> key, Object[] rows, long size) {
+    remove(key);
+    results.put(key, new Entry(rows, size, System.currentTimeMillis() + ttlMillis));
+    bytes += size;
+
+    Iterator<Map.Entry<Pair<String, List<SqlTypeName>>, Entry>> eldest = results.entrySet().iterator();
+    while (bytes > maxBytes && eldest.hasNext()) {
+      bytes -= eldest.next().getValue().size;
+      eldest.remove();
+    }
+  }
+
+  private void remove(Pair<String, List<SqlTypeName>> key) {
+    Entry entry = results.remove(key);
+    if (entry != null) {
+      bytes -= entry.size;
+    }
+  }
+
+  /**
+   * Discards all the cached results, e.g. because the tables they were read from have changed.
+   */
+  public synchronized void invalidate() {
+    results.clear();
+    bytes = 0;
+  }
+
+  public synchronized int size() {
+    return results.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Estimates the size in bytes of a decoded row, which is either a single value or an array of values.
+   */
+  static long sizeOf(Object row) {
+    if (!(row instanceof Object[])) {
+      return REFERENCE_BYTES + sizeOfValue(row);
+    }
+
+    Object[] values = (Object[]) row;
+    long size = REFERENCE_BYTES + ARRAY_BYTES + (long) REFERENCE_BYTES * values.length;
+    for (Object value : values) {
+      size += sizeOfValue(value);
+    }
+
+    return size;
+  }
+
+  private static long sizeOfValue(Object value) {
+    if (value == null || value instanceof Boolean) {
+      // Shared instances
+      return 0;
+    } else if (value instanceof String) {
+      return OBJECT_BYTES + ARRAY_BYTES + 2L * ((String) value).length();
+    } else if (value instanceof List) {
+      // The values of an array column
+      List<?> values = (List<?>) value;
+      long size = OBJECT_BYTES + ARRAY_BYTES + (long) REFERENCE_BYTES * values.size();
+      for (Object element : values) {
+        size += sizeOfValue(element);
+      }
+
+      return size;
+    } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+      return 2 * OBJECT_BYTES + ARRAY_BYTES + value.toString().length() / 2;
+    } else {
+      // Boxed numbers, dates and timestamps
+      return OBJECT_BYTES + 8;
+    }
+  }
+
+  private static class Entry {
+    private final Object[] rows;
+    private final long size;
+    private final long expiresAt;
+
+    Entry(Object[] rows, long size, long expiresAt) {
+      this.rows = rows;
+      this.size = size;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private class RecordingEnumerator implements Enumerator<Object> {
+    private final Pair<String, List<SqlTypeName>> key;
+    private final Enumerator<Object> results;
+    // Null once the rows are cached or cannot be cached
+    private List<Object> rows = new ArrayList<>();
+    private long size;
+    private Object current;
+
+    RecordingEnumerator(Pair<String, List<SqlTypeName>> key, Enumerator<Object> results) {
+      this.key = key;
+      this.results = results;
+      // The query is kept as well
+      this.size = sizeOfValue(key.left);
+    }
+
+    @Override
+    public Object current() {
+      return current;
+    }
+
+    @Override
+    public boolean moveNext() {
+      if (!results.moveNext()) {
+        if (rows != null) {
+          put(key, rows.toArray(), size);
+          rows = null;
+        }
+
+        return false;
+      }
+
+      current = results.current();
+
+      if (rows != null) {
+        rows.add(current);
+        size += sizeOf(current);
+
+        if (size > maxBytes) {
+          rows = null;
+        }
+      }
+
+      return true;
+    }
+
+    @Override
+    public void reset() {
+      results.reset();
+
+      // The rows are recorded again from the first one
+      if (rows != null) {
+        rows.clear();
+        size = sizeOfValue(key.left);
+      }
+    }
+
+    @Override
+    public void close() {
+      results.close();
+    }
+  }
+}
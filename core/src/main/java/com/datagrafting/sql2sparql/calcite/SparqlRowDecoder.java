@@ -0,0 +1,298 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Node_Literal;
+
+/**
+ * Converts the rows of a SPARQL result set to the Java values Calcite expects for each column type. The decoders
+ * are chosen once per result set from the row type, so that each value is converted straight from the lexical
+ * form of its literal.
+ */
+public class SparqlRowDecoder {
+  // Separates the values of an array column, each of them encoded as in a URI
+  public static final String ARRAY_SEPARATOR = " ";
+
+  private final ColumnDecoder[] decoders;
+
+  private SparqlRowDecoder(ColumnDecoder[] decoders) {
+    this.decoders = decoders;
+  }
+
+  /**
+   * Converts the value of a column, as returned by the Jena JDBC driver, to a Java value.
+   */
+  @FunctionalInterface
+  public interface ColumnDecoder {
+    Object decode(Object value);
+  }
+
+  public static SparqlRowDecoder of(List<SqlTypeName> columnTypes) {
+    ColumnDecoder[] decoders = new ColumnDecoder[columnTypes.size()];
+    for (int i = 0; i < decoders.length; i++) {
+      decoders[i] = decoderFor(columnTypes.get(i));
+    }
+
+    return new SparqlRowDecoder(decoders);
+  }
+
+  /**
+   * Returns a decoder that derives the Java type of each value from the datatype of its literal, for when the
+   * column types are not known.
+   */
+  public static SparqlRowDecoder generic(int columnCount) {
+    ColumnDecoder[] decoders = new ColumnDecoder[columnCount];
+    for (int i = 0; i < decoders.length; i++) {
+      decoders[i] = SparqlRowDecoder::decodeGeneric;
+    }
+
+    return new SparqlRowDecoder(decoders);
+  }
+
+  public int getColumnCount() {
+    return decoders.length;
+  }
+
+  public ColumnDecoder getDecoder(int column) {
+    return decoders[column];
+  }
+
+  /**
+   * Decodes the current row of a result set, returning the value itself rather than an array when there is only
+   * one column (as Calcite expects).
+   */
+  public Object decodeRow(ResultSet results) throws SQLException {
+    if (decoders.length == 1) {
+      return decoders[0].decode(results.getObject(1));
+    }
+
+    Object[] row = new Object[decoders.length];
+    for (int col = 0; col < decoders.length; col++) {
+      row[col] = decoders[col].decode(results.getObject(col + 1));
+    }
+
+    return row;
+  }
+
+  /**
+   * Same as {@link #decodeRow(ResultSet)}, for values that have already been read.
+   */
+  public Object decodeRow(Object[] values) {
+    if (decoders.length == 1) {
+      return decoders[0].decode(values[0]);
+    }
+
+    Object[] row = new Object[decoders.length];
+    for (int col = 0; col < decoders.length; col++) {
+      row[col] = decoders[col].decode(values[col]);
+    }
+
+    return row;
+  }
+
+  public static ColumnDecoder decoderFor(SqlTypeName type) {
+    switch (type) {
+      case CHAR:
+      case VARCHAR:
+        return SparqlRowDecoder::decodeString;
+
+      case BOOLEAN:
+        return literalDecoder(SparqlRowDecoder::parseBoolean);
+
+      case TINYINT:
+        return literalDecoder(Byte::valueOf);
+
+      case SMALLINT:
+        return literalDecoder(Short::valueOf);
+
+      case INTEGER:
+        return literalDecoder(Integer::valueOf);
+
+      case BIGINT:
+        return literalDecoder(Long::valueOf);
+
+      case REAL:
+        return literalDecoder(lexical -> (float) parseDouble(lexical));
+
+      // Calcite represents FLOAT as a double
+      case FLOAT:
+      case DOUBLE:
+        return literalDecoder(SparqlRowDecoder::parseDouble);
+
+      // Calcite represents dates as days and timestamps as milliseconds since the epoch
+      case DATE:
+        return literalDecoder(SparqlRowDecoder::parseDate);
+
+      case TIMESTAMP:
+        return literalDecoder(SparqlRowDecoder::parseTimestamp);
+
+      case ARRAY:
+        return SparqlRowDecoder::decodeArray;
+
+      default:
+        return SparqlRowDecoder::decodeGeneric;
+    }
+  }
+
+  static Object decodeString(Object value) {
+    if (!(value instanceof Node)) {
+      return value;
+    }
+
+    Node node = (Node) value;
+    if (node.isURI()) {
+      return node.getURI();
+    } else if (node.isLiteral()) {
+      return node.getLiteralLexicalForm();
+    } else {
+      return node.toString();
+    }
+  }
+
+  /**
+   * Decodes the values of an array column, which the endpoint joins with {@link #ARRAY_SEPARATOR} after encoding
+   * them with ENCODE_FOR_URI.
+   */
+  static Object decodeArray(Object value) {
+    Object string = decodeString(value);
+    if (string == null) {
+      return null;
+    }
+
+    List<String> values = new ArrayList<>();
+    try {
+      for (String encoded : string.toString().split(ARRAY_SEPARATOR, -1)) {
+        // ENCODE_FOR_URI encodes "+" as well, so none of them is decoded as a space
+        values.add(URLDecoder.decode(encoded, StandardCharsets.UTF_8.name()));
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+
+    return values;
+  }
+
+  @FunctionalInterface
+  private interface LexicalParser {
+    Object parse(String lexical);
+  }
+
+  private static ColumnDecoder literalDecoder(LexicalParser parser) {
+    return value -> {
+      // A value that does not have the type inferred for its column (e.g. an IRI or a literal of another datatype
+      // that the column types were not probed on) cannot be returned as a value of another Java type, so it is null
+      if (!(value instanceof Node_Literal)) {
+        return null;
+      }
+
+      try {
+        return parser.parse(((Node_Literal) value).getLiteralLexicalForm().trim());
+      } catch (NumberFormatException | DateTimeParseException e) {
+        return null;
+      }
+    };
+  }
+
+  static boolean parseBoolean(String lexical) {
+    switch (lexical) {
+      case "true":
+      case "1":
+        return true;
+
+      case "false":
+      case "0":
+        return false;
+
+      default:
+        throw new NumberFormatException("Invalid boolean " + lexical);
+    }
+  }
+
+  static double parseDouble(String lexical) {
+    // XSD spells infinity differently from Java
+    switch (lexical) {
+      case "INF":
+      case "+INF":
+        return Double.POSITIVE_INFINITY;
+
+      case "-INF":
+        return Double.NEGATIVE_INFINITY;
+
+      default:
+        return Double.parseDouble(lexical);
+    }
+  }
+
+  static int parseDate(String lexical) {
+    // Ignores the optional timezone of xsd:date
+    return (int) LocalDate.parse(lexical.substring(0, Math.min(lexical.length(), 10))).toEpochDay();
+  }
+
+  static long parseTimestamp(String lexical) {
+    LocalDateTime dateTime;
+
+    if (lexical.endsWith("Z") || lexical.lastIndexOf('+') > 0 || lexical.lastIndexOf('-') > 9) {
+      dateTime = OffsetDateTime.parse(lexical).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+    } else {
+      dateTime = LocalDateTime.parse(lexical);
+    }
+
+    return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  /**
+   * Decodes a value by parsing its literal with its own datatype.
+   */
+  public static Object decodeGeneric(Object value) {
+    if (!(value instanceof Node_Literal)) {
+      return value;
+    }
+
+    Node_Literal literal = (Node_Literal) value;
+    RDFDatatype datatype = literal.getLiteralDatatype();
+    Object parsedValue = datatype.parse(literal.getLiteralLexicalForm());
+
+    if (datatype.getURI().equals("http://www.w3.org/2001/XMLSchema#integer") &&
+        !(parsedValue instanceof Long)) {
+      // An xsd:integer can be converted to an Integer, a Long or a BigInteger (see
+      // https://jena.apache.org/documentation/notes/typed-literals.html#xsd-data-types),
+      // but Calcite uses long for the BIGINT type
+      parsedValue = parsedValue instanceof BigInteger ?
+          ((BigInteger) parsedValue).longValue() :
+          // Value is neither Long nor BigInteger, so it must be Integer
+          ((Integer) parsedValue).longValue();
+    }
+
+    return parsedValue;
+  }
+}
@@ -15,48 +15,146 @@
  */
 package com.datagrafting.sql2sparql.calcite;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
+import org.apache.jena.jdbc.JdbcCompatibility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.datagrafting.sql2sparql.calcite.config.Config;
 import com.datagrafting.sql2sparql.calcite.config.TableMapping;
 import com.datagrafting.sql2sparql.calcite.config.TableMode;
 import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+import com.datagrafting.sql2sparql.sparql.SparqlExecutors;
+import com.datagrafting.sql2sparql.sparql.SparqlMetrics;
+
+public class SparqlSchema extends AbstractSchema implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SparqlSchema.class);
 
-public class SparqlSchema extends AbstractSchema {
   private Map<String, Table> tableMap;
   private final SparqlEndpoint endpoint;
   private final TableMode tableMode;
   private final Config config;
   private final SchemaPlus parentSchema;
   private final String name;
+  private final Path catalogPath;
+  private final SparqlPlanCache planCache;
+  private final SparqlResultCache resultCache;
+  // Incremented at every refresh, so that the plans made against the previous tables are not used any longer
+  private volatile long version;
 
   public SparqlSchema(Config config, SchemaPlus parentSchema, String name) throws SQLException {
-    this.endpoint = new SparqlEndpoint(config.getEndpoint());
+    this.endpoint = new SparqlEndpoint(config.getEndpoint(), JdbcCompatibility.LOW,
+        config.getPoolMinSize(), config.getPoolMaxSize(),
+        config.getPoolIdleTimeoutMillis(), config.getPoolBorrowTimeoutMillis());
+    this.endpoint.setExecutor(SparqlExecutors.newExecutor(config.getExecutor(), config.getExecutorThreads()), true);
+    this.endpoint.setMetrics(SparqlMetrics.newMetrics(config.getMetrics(), name, endpoint));
     this.tableMode = config.getTableMode();
     this.config = config;
     this.parentSchema = parentSchema;
     this.name = name;
+    this.catalogPath = config.getCatalogDir() == null ? null :
+        SparqlCatalog.getPath(config.getCatalogDir(), config.getEndpoint(), tableMode);
+    this.planCache = new SparqlPlanCache(config.getPlanCacheSize());
+    this.resultCache = new SparqlResultCache(config.getResultCacheSize(), config.getResultCacheTtlMillis());
+
+    if (catalogPath != null && !config.isCatalogRefresh()) {
+      this.tableMap = loadCatalog();
+    }
   }
 
   @Override
-  protected Map<String, Table> getTableMap() {
+  protected synchronized Map<String, Table> getTableMap() {
     if (tableMap == null) {
       try {
         tableMap = createTableMap();
       } catch (SQLException e) {
         throw new RuntimeException("SQL exception", e);
       }
+
+      // The column types of all the tables are probed concurrently, rather than one table at a time as each of them
+      // is first used
+      Map<String, List<SqlTypeName>> columnTypes = probeColumnTypes(tableMap);
+
+      if (catalogPath != null) {
+        saveCatalog(tableMap, columnTypes);
+      }
     }
 
     return tableMap;
   }
 
+  /**
+   * Discards the tables discovered so far, together with their cached columns and row types, so that they are
+   * discovered again (and the catalog, if any, is rewritten) the next time they are needed. The cached plans and
+   * results are discarded as well.
+   */
+  public synchronized void refresh() {
+    tableMap = null;
+    version++;
+    planCache.invalidate();
+    resultCache.invalidate();
+  }
+
+  /**
+   * Releases the threads, connections and MBeans of the endpoint. The {@code jdbc:calcite-sparql:} driver closes
+   * the schemas of a connection when the connection is closed, while with the Calcite driver this is up to the
+   * caller (see {@link #closeAll(SchemaPlus)}).
+   */
+  @Override
+  public void close() throws SQLException {
+    endpoint.close();
+  }
+
+  /**
+   * Closes the SPARQL schemas found in a schema and its sub-schemas.
+   */
+  public static void closeAll(SchemaPlus schema) throws SQLException {
+    // Unwrapping a schema of another class fails rather than returning null
+    Schema underlying = schema.unwrap(CalciteSchema.class).schema;
+    if (underlying instanceof SparqlSchema) {
+      ((SparqlSchema) underlying).close();
+    }
+
+    for (String name : schema.getSubSchemaNames()) {
+      SchemaPlus subSchema = schema.getSubSchema(name);
+      if (subSchema != null) {
+        closeAll(subSchema);
+      }
+    }
+  }
+
+  public SparqlEndpoint getEndpoint() {
+    return endpoint;
+  }
+
+  public SparqlPlanCache getPlanCache() {
+    return planCache;
+  }
+
+  public SparqlResultCache getResultCache() {
+    return resultCache;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
   private Map<String, Table> createTableMap() throws SQLException {
     Map<String, Table> tableMap = new HashMap<>();
     Map<String, String> tableProps = new HashMap<>();
@@ -66,7 +164,8 @@ public class SparqlSchema extends AbstractSchema {
         tableProps.putAll(endpoint.getProperties());
 
         for (Map.Entry<String, String> tableProp : tableProps.entrySet()) {
-          tableMap.put(tableProp.getKey(), new SparqlPropTable(tableProp.getKey(), tableProp.getValue(), endpoint));
+          tableMap.put(tableProp.getKey(),
+              new SparqlPropTable(tableProp.getKey(), tableProp.getValue(), endpoint, config, resultCache));
         }
 
         break;
@@ -75,15 +174,15 @@ public class SparqlSchema extends AbstractSchema {
         tableProps.putAll(endpoint.getClasses());
 
         for (Map.Entry<String, String> tableProp : tableProps.entrySet()) {
-          tableMap.put(tableProp.getKey(), new SparqlClassTable(tableProp.getKey(), tableProp.getValue(), endpoint));
+          tableMap.put(tableProp.getKey(),
+              new SparqlClassTable(tableProp.getKey(), tableProp.getValue(), endpoint, config, resultCache));
         }
 
         break;
 
       case MAPPING:
         for (TableMapping tableMapping : config.getTableMappings()) {
-          // TODO: should remove "MAP" param
-          tableMap.put(tableMapping.getName(), new SparqlMappingTable(tableMapping.getName(), "MAP", tableMapping, endpoint));
+          tableMap.put(tableMapping.getName(), createMappingTable(tableMapping));
         }
 
         break;
@@ -94,4 +193,123 @@ public class SparqlSchema extends AbstractSchema {
 
     return tableMap;
   }
+
+  private SparqlMappingTable createMappingTable(TableMapping tableMapping) {
+    // TODO: should remove "MAP" param
+    return new SparqlMappingTable(tableMapping.getName(), "MAP", tableMapping, endpoint, config, resultCache);
+  }
+
+  private Map<String, Table> loadCatalog() {
+    SparqlCatalog catalog;
+
+    try {
+      catalog = SparqlCatalog.load(catalogPath);
+    } catch (IOException e) {
+      // An unreadable catalog is simply rebuilt from the endpoint
+      return null;
+    }
+
+    if (catalog == null || !catalog.matches(config.getEndpoint(), tableMode)
+        || catalog.isExpired(config.getCatalogTtlMillis())) {
+      return null;
+    }
+
+    Map<String, TableMapping> tableMappings = new HashMap<>();
+    if (tableMode == TableMode.MAPPING) {
+      for (TableMapping tableMapping : config.getTableMappings()) {
+        tableMappings.put(tableMapping.getName(), tableMapping);
+      }
+    }
+
+    Map<String, Table> tableMap = new HashMap<>();
+
+    for (SparqlCatalog.TableEntry entry : catalog.getTables()) {
+      List<Pair<String, String>> columns = entry.getColumns().stream()
+                                                .map(col -> new Pair<>(col.getName(), col.getProperty()))
+                                                .collect(Collectors.toList());
+      List<SqlTypeName> types = entry.getColumns().stream()
+                                     .map(SparqlCatalog.ColumnEntry::getType)
+                                     .collect(Collectors.toList());
+      SparqlTable table;
+
+      switch (tableMode) {
+        case PROPERTY:
+          table = new SparqlPropTable(entry.getName(), entry.getUri(), endpoint, config, resultCache);
+          break;
+
+        case CLASS:
+          table = new SparqlClassTable(entry.getName(), entry.getUri(), endpoint, config, resultCache);
+          break;
+
+        case MAPPING:
+          TableMapping tableMapping = tableMappings.get(entry.getName());
+
+          // The mappings have changed since the catalog was saved
+          if (tableMapping == null) {
+            return null;
+          }
+
+          table = createMappingTable(tableMapping);
+
+          if (!table.getColumns().equals(columns)) {
+            return null;
+          }
+
+          break;
+
+        default:
+          throw new RuntimeException("Unsupported table mode " + tableMode);
+      }
+
+      // The types that could not be probed are probed again when the table is used
+      table.restore(columns, types.contains(null) ? null : types);
+      tableMap.put(entry.getName(), table);
+    }
+
+    if (tableMode == TableMode.MAPPING && tableMap.size() != tableMappings.size()) {
+      return null;
+    }
+
+    return tableMap;
+  }
+
+  /**
+   * Probes the column types of several tables concurrently, one query per table. The tables whose types cannot be
+   * probed, such as the properties with objects of several types, are mapped to null and probed again when used.
+   */
+  private Map<String, List<SqlTypeName>> probeColumnTypes(Map<String, Table> tables) {
+    Map<String, CompletableFuture<List<SqlTypeName>>> probes = new HashMap<>();
+    for (Map.Entry<String, Table> entry : tables.entrySet()) {
+      probes.put(entry.getKey(), CompletableFuture
+          .supplyAsync(((SparqlTable) entry.getValue())::getColumnTypes, endpoint.getExecutor())
+          .exceptionally(e -> {
+            // The probe fails again, and the query with it, if the table is used
+            LOGGER.debug("Cannot probe the column types of table {}", entry.getKey(), e);
+            return null;
+          }));
+    }
+
+    Map<String, List<SqlTypeName>> columnTypes = new HashMap<>();
+    probes.forEach((tableName, probe) -> columnTypes.put(tableName, probe.join()));
+
+    return columnTypes;
+  }
+
+  private void saveCatalog(Map<String, Table> tableMap, Map<String, List<SqlTypeName>> columnTypes) {
+    SparqlCatalog catalog = new SparqlCatalog(config.getEndpoint(), tableMode);
+
+    for (Map.Entry<String, Table> entry : tableMap.entrySet()) {
+      SparqlTable table = (SparqlTable) entry.getValue();
+      List<Pair<String, String>> columns = table.getColumns();
+      List<SqlTypeName> types = columnTypes.get(entry.getKey());
+      catalog.addTable(entry.getKey(), table.prop, columns,
+          types != null ? types : Collections.nCopies(columns.size(), null));
+    }
+
+    try {
+      catalog.save(catalogPath);
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot save catalog to " + catalogPath, e);
+    }
+  }
 }
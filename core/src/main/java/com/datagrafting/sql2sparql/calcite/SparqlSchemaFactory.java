@@ -26,6 +26,7 @@ import org.apache.calcite.schema.SchemaFactory;
 import org.apache.calcite.schema.SchemaPlus;
 
 import com.datagrafting.sql2sparql.calcite.config.Config;
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
 import com.datagrafting.sql2sparql.calcite.config.TableMapping;
 import com.datagrafting.sql2sparql.calcite.config.TableMode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -54,8 +55,62 @@ public class SparqlSchemaFactory implements SchemaFactory {
                            .collect(Collectors.toList());
     }
 
-    // Maybe evaluate usage of Builder pattern
-    Config config = new Config(endpointOp, tableMode, tableMappings);
+    Config.Builder builder = Config.builder(endpointOp, tableMode)
+                                   .tableMappings(tableMappings);
+
+    if (operand.containsKey("poolMinSize")) {
+      builder.poolMinSize(((Number) operand.get("poolMinSize")).intValue());
+    }
+    if (operand.containsKey("poolMaxSize")) {
+      builder.poolMaxSize(((Number) operand.get("poolMaxSize")).intValue());
+    }
+    if (operand.containsKey("poolIdleTimeout")) {
+      builder.poolIdleTimeoutMillis(((Number) operand.get("poolIdleTimeout")).longValue());
+    }
+    if (operand.containsKey("poolBorrowTimeout")) {
+      builder.poolBorrowTimeoutMillis(((Number) operand.get("poolBorrowTimeout")).longValue());
+    }
+    if (operand.containsKey("executor")) {
+      builder.executor((String) operand.get("executor"));
+    }
+    if (operand.containsKey("executorThreads")) {
+      builder.executorThreads(((Number) operand.get("executorThreads")).intValue());
+    }
+    if (operand.containsKey("prefetch")) {
+      builder.prefetch((Boolean) operand.get("prefetch"));
+    }
+    if (operand.containsKey("catalogDir")) {
+      builder.catalogDir((String) operand.get("catalogDir"));
+    }
+    if (operand.containsKey("catalogTtl")) {
+      builder.catalogTtlMillis(((Number) operand.get("catalogTtl")).longValue());
+    }
+    if (operand.containsKey("catalogRefresh")) {
+      builder.catalogRefresh((Boolean) operand.get("catalogRefresh"));
+    }
+    if (operand.containsKey("planCacheSize")) {
+      builder.planCacheSize(((Number) operand.get("planCacheSize")).intValue());
+    }
+    if (operand.containsKey("resultCacheSize")) {
+      builder.resultCacheSize(((Number) operand.get("resultCacheSize")).longValue());
+    }
+    if (operand.containsKey("resultCacheTtl")) {
+      builder.resultCacheTtlMillis(((Number) operand.get("resultCacheTtl")).longValue());
+    }
+    if (operand.containsKey("pageSize")) {
+      builder.pageSize(((Number) operand.get("pageSize")).longValue());
+    }
+    if (operand.containsKey("scanParallelism")) {
+      builder.scanParallelism(((Number) operand.get("scanParallelism")).intValue());
+    }
+    if (operand.containsKey("metrics")) {
+      builder.metrics((String) operand.get("metrics"));
+    }
+    if (operand.containsKey("multiValued")) {
+      builder.multiValued(MultiValued.of((String) operand.get("multiValued")));
+    }
+
+    Config config = builder.build();
 
     try {
       return new SparqlSchema(config, parentSchema, name);
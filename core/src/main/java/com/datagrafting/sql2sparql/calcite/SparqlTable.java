@@ -18,38 +18,178 @@ package com.datagrafting.sql2sparql.calcite;
 import java.lang.reflect.Type;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeImpl;
+import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.schema.QueryableTable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.calcite.schema.impl.AbstractTable;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.datagrafting.sql2sparql.calcite.config.Config;
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
 import com.datagrafting.sql2sparql.sparql.SparqlEndpoint;
+import com.datagrafting.sql2sparql.sparql.SparqlMetrics;
 
 public abstract class SparqlTable extends AbstractTable implements TranslatableTable, QueryableTable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SparqlTable.class);
+
+  // Number of decoded rows that the partitions of a parallel scan can read ahead of the consumer
+  private static final int PARTITION_QUEUE_CAPACITY = 10_000;
+
   protected String tableName;
   protected String prop;
   protected SparqlEndpoint endpoint;
+  protected Config config;
+  protected SparqlResultCache resultCache;
+  // Types of the columns other than "s", once probed or loaded from the catalog. The schema keeps one table
+  // instance per table name and drops them all on refresh, so together with the row type below this works as a
+  // per-schema cache keyed by table.
+  protected List<SqlTypeName> columnTypes;
+  private RelProtoDataType protoRowType;
 
   protected final Type elementType;
 
-  public SparqlTable(String tableName, String prop, SparqlEndpoint endpoint) {
+  public SparqlTable(String tableName, String prop, SparqlEndpoint endpoint, Config config,
+                     SparqlResultCache resultCache) {
     this.tableName = tableName;
     this.prop = prop;
     this.endpoint = endpoint;
+    this.config = config;
+    this.resultCache = resultCache;
 
     // TODO: review
     this.elementType = Object[].class;
   }
 
+  public String getTableName() {
+    return tableName;
+  }
+
+  public SparqlMetrics getMetrics() {
+    return endpoint.getMetrics();
+  }
+
+  /**
+   * Returns the (name, property URI) pairs of the columns of this table, except for the subject column "s".
+   */
+  public abstract List<Pair<String, String>> getColumns();
+
+  /**
+   * Returns how each column returned by {@link #getColumns()} binds a property with several values for a subject.
+   */
+  public List<MultiValued> getMultiValued() {
+    return Collections.nCopies(getColumns().size(), MultiValued.SINGLE);
+  }
+
+  /**
+   * Returns whether the columns returned by {@link #getColumns()} are bound by OPTIONALs, so that they are null
+   * for the subjects without a value.
+   */
+  protected boolean hasOptionalColumns() {
+    return true;
+  }
+
+  /**
+   * Infers the SQL types of the columns returned by {@link #getColumns()} by probing the endpoint.
+   */
+  protected abstract List<SqlTypeName> probeColumnTypes() throws SQLException;
+
+  /**
+   * Returns the column types, probing the endpoint only the first time.
+   */
+  public synchronized List<SqlTypeName> getColumnTypes() {
+    if (columnTypes == null) {
+      try {
+        columnTypes = probeColumnTypes();
+      } catch (SQLException e) {
+        throw new RuntimeException("SQL Exception", e);
+      }
+    }
+
+    return columnTypes;
+  }
+
+  /**
+   * Sets columns and column types that are already known, so that the endpoint does not need to be probed.
+   */
+  synchronized void restore(List<Pair<String, String>> columns, List<SqlTypeName> columnTypes) {
+    this.columnTypes = columnTypes;
+    this.protoRowType = null;
+  }
+
+  @Override
+  public synchronized RelDataType getRowType(RelDataTypeFactory typeFactory) {
+    // Calcite asks for the row type at every statement, so it is built once and then copied to each type factory
+    if (protoRowType == null) {
+      RelDataTypeFactory.Builder builder = typeFactory.builder();
+      builder.add("s", typeFactory.createSqlType(SqlTypeName.VARCHAR));
+
+      List<Pair<String, String>> columns = getColumns();
+      List<SqlTypeName> types = getColumnTypes();
+      List<MultiValued> multiValued = getMultiValued();
+      for (int i = 0; i < columns.size(); i++) {
+        RelDataType type = createColumnType(typeFactory, types.get(i), multiValued.get(i));
+        builder.add(columns.get(i).getKey(), typeFactory.createTypeWithNullability(type, hasOptionalColumns()));
+      }
+
+      protoRowType = RelDataTypeImpl.proto(builder.build());
+    }
+
+    return protoRowType.apply(typeFactory);
+  }
+
+  /**
+   * Returns the type of a column whose values have the given type. The values of a multi-valued column are
+   * aggregated as strings, so its probed type is kept in the catalog but not used.
+   */
+  private static RelDataType createColumnType(RelDataTypeFactory typeFactory, SqlTypeName type,
+                                              MultiValued multiValued) {
+    switch (multiValued) {
+      case CONCAT:
+        return typeFactory.createSqlType(SqlTypeName.VARCHAR);
+
+      case ARRAY:
+        return typeFactory.createArrayType(typeFactory.createSqlType(SqlTypeName.VARCHAR), -1);
+
+      default:
+        return typeFactory.createSqlType(type);
+    }
+  }
+
+  /**
+   * Probes the types of all the columns with a single query to the endpoint.
+   */
+  protected List<SqlTypeName> probeColumnTypesBatched(int maxProbeObjects) throws SQLException {
+    List<Pair<String, String>> columns = getColumns();
+    Map<String, Set<String>> objectTypes = endpoint.getObjectTypesForProperties(
+        columns.stream().map(Pair::getValue).collect(Collectors.toList()), maxProbeObjects);
+
+    return columns.stream()
+                  .map(col -> probeColumnType(objectTypes.getOrDefault(col.getValue(), Collections.emptySet())))
+                  .collect(Collectors.toList());
+  }
+
   @Override
   public <T> Queryable<T> asQueryable(QueryProvider queryProvider, SchemaPlus schema, String tableName) {
     return new SparqlQueryable<T>(queryProvider, schema, this, tableName);
@@ -65,26 +205,105 @@ public abstract class SparqlTable extends AbstractTable implements TranslatableT
     return Schemas.tableExpression(schema, elementType, tableName, clazz);
   }
 
-  public Enumerable<Object> query(String queryString) {
-    // TODO Merge with the scan body
-    System.out.println(queryString);
+  /**
+   * Runs the query of a template filled with the values of its parameters (see {@link SparqlTemplate}).
+   */
+  public Enumerable<Object> query(String queryTemplate, List<SqlTypeName> columnTypes, Object[] parameters) {
+    return query(SparqlTemplate.bind(queryTemplate, parameters), columnTypes);
+  }
 
-    ResultSet results;
+  /**
+   * Returns whether {@link #query(String, List)} sends a query to the endpoint as it is, i.e. without paging or
+   * partitioning it, and without caching its results.
+   */
+  boolean isSentAsIs(String queryString) {
+    return !resultCache.isEnabled()
+        && SparqlPartitions.of(queryString, config.getScanParallelism()) == null
+        && SparqlPages.of(queryString, config.getPageSize()) == null;
+  }
 
-    try {
-      results = endpoint.query(queryString);
-    } catch (SQLException e) {
-      throw new RuntimeException("SQL Exception", e);
+  /**
+   * Runs a query whose result columns have the given SQL types, which are used to decode the results.
+   */
+  public Enumerable<Object> query(String queryString, List<SqlTypeName> columnTypes) {
+    LOGGER.debug("Query of table {}:\n{}", tableName, queryString);
+
+    // Cached rows are read when the query is bound, so that they cannot expire before being enumerated
+    if (resultCache.isEnabled()) {
+      List<Object> rows = resultCache.get(queryString, columnTypes);
+      if (rows != null) {
+        return Linq4j.asEnumerable(rows);
+      }
     }
 
+    // Full scans can be split into partitions read concurrently, and large results are read in pages, each of
+    // them being a separate request
+    List<String> partitions = SparqlPartitions.of(queryString, config.getScanParallelism());
+    SparqlPages pages = partitions == null ? SparqlPages.of(queryString, config.getPageSize()) : null;
+
     return new AbstractEnumerable<Object>() {
       @Override
       public Enumerator<Object> enumerator() {
-        return new SparqlEnumerator(results);
+        Enumerator<Object> enumerator = SparqlMeteredEnumerator.open(() -> {
+          if (partitions != null) {
+            List<Supplier<Enumerator<Object>>> readers = partitions.stream()
+                .<Supplier<Enumerator<Object>>>map(partition ->
+                    // The partitions already run on the executor, so they do not prefetch their pages
+                    () -> open(partition, SparqlPages.of(partition, config.getPageSize()), columnTypes, false))
+                .collect(Collectors.toList());
+            return new SparqlParallelEnumerator(readers, endpoint.getExecutor(), PARTITION_QUEUE_CAPACITY);
+          }
+
+          return open(queryString, pages, columnTypes, config.isPrefetch());
+        }, getMetrics(), tableName);
+
+        return resultCache.isEnabled() ? resultCache.record(queryString, columnTypes, enumerator) : enumerator;
       }
     };
   }
 
+  /**
+   * Opens the results of a query. With prefetching the request is sent asynchronously, so that it overlaps with
+   * the work done before the first row is read (e.g. opening the other inputs of a join evaluated by Calcite),
+   * and with the reading of the previous page of a paged query. The request is only sent once the results are
+   * opened, since an enumerable that is never enumerated has nothing to release its connection.
+   */
+  private Enumerator<Object> open(String queryString, SparqlPages pages, List<SqlTypeName> columnTypes,
+                                  boolean prefetch) {
+    if (pages != null) {
+      return new SparqlPagedEnumerator(endpoint, tableName, pages, columnTypes, prefetch);
+    }
+
+    if (prefetch) {
+      return new SparqlPrefetchedEnumerator(endpoint, endpoint.queryAsync(queryString, tableName), columnTypes,
+          tableName, queryString);
+    }
+
+    ResultSet results;
+
+    try {
+      results = endpoint.query(queryString, tableName);
+    } catch (SQLException e) {
+      throw new RuntimeException("SQL Exception", e);
+    }
+
+    return new SparqlEnumerator(endpoint, results, columnTypes, tableName, queryString);
+  }
+
+  /**
+   * Picks the SQL type of a column from the datatypes of a sample of its objects, where a null datatype stands
+   * for an IRI.
+   */
+  protected SqlTypeName probeColumnType(Set<String> probeObjects) {
+    if (probeObjects.size() != 1) {
+      // Too many potential types, stick to string type
+      return SqlTypeName.VARCHAR;
+    }
+
+    String potentialType = probeObjects.iterator().next();
+    return potentialType == null ? SqlTypeName.VARCHAR : datatypeToSqlType(potentialType, true);
+  }
+
   public SqlTypeName datatypeToSqlType(String datatype, boolean defaultToString) {
     final String XSD_PREFIX = "http://www.w3.org/2001/XMLSchema#";
 
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.util.FmtUtils;
+
+/**
+ * Bind slots of the SPARQL queries of prepared statements with dynamic parameters. The parameters are bound to
+ * variables by a VALUES block at the start of the query pattern, whose only row holds a placeholder IRI for each
+ * parameter. The serialized query is then a template, where each placeholder is replaced by the value of its
+ * parameter at every execution, without planning or parsing the query again.
+ */
+public final class SparqlTemplate {
+  private static final String SLOT_PREFIX = "urn:x-calcite-sparql:parameter:";
+  private static final Pattern SLOT = Pattern.compile("<" + Pattern.quote(SLOT_PREFIX) + "(\\d+)>");
+
+  private SparqlTemplate() {
+  }
+
+  /**
+   * Returns the placeholder of the i-th slot of a template.
+   */
+  public static Node slot(int i) {
+    return NodeFactory.createURI(SLOT_PREFIX + i);
+  }
+
+  /**
+   * Returns the VALUES block that binds each of the given variables to the slot with the same position.
+   */
+  public static ElementData values(Collection<Var> vars) {
+    ElementData data = new ElementData();
+    Binding row = BindingFactory.root();
+    int i = 0;
+
+    for (Var var : vars) {
+      data.add(var);
+      row = BindingFactory.binding(row, var, slot(i++));
+    }
+
+    data.add(row);
+    return data;
+  }
+
+  /**
+   * Fills the slots of a template with the given values, in order.
+   */
+  public static String bind(String template, Object[] values) {
+    // In a single pass, so that the values are never taken for slots
+    Matcher matcher = SLOT.matcher(template);
+    StringBuffer query = new StringBuffer();
+
+    while (matcher.find()) {
+      String value = format(values[Integer.parseInt(matcher.group(1))]);
+      matcher.appendReplacement(query, Matcher.quoteReplacement(value));
+    }
+
+    matcher.appendTail(query);
+    return query.toString();
+  }
+
+  // A null parameter leaves its variable unbound, so that a comparison with it is never true like in SQL
+  private static String format(Object value) {
+    NodeValue nodeValue;
+
+    if (value == null) {
+      return "UNDEF";
+    } else if (value instanceof String) {
+      nodeValue = NodeValue.makeString((String) value);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte) {
+      nodeValue = NodeValue.makeInteger(((Number) value).longValue());
+    } else if (value instanceof BigInteger) {
+      nodeValue = NodeValue.makeInteger((BigInteger) value);
+    } else if (value instanceof BigDecimal) {
+      nodeValue = NodeValue.makeDecimal((BigDecimal) value);
+    } else if (value instanceof Double || value instanceof Float) {
+      nodeValue = NodeValue.makeDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      nodeValue = NodeValue.makeBoolean((Boolean) value);
+    } else {
+      nodeValue = NodeValue.makeString(value.toString());
+    }
+
+    return FmtUtils.stringForNode(nodeValue.asNode());
+  }
+}
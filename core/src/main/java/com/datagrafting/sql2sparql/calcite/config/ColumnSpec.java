@@ -18,6 +18,8 @@ package com.datagrafting.sql2sparql.calcite.config;
 public class ColumnSpec {
   private String name;
   private String property;
+  // Overrides the mode of the table mapping if set
+  private MultiValued multiValued;
 
   public String getName() {
     return name;
@@ -26,4 +28,8 @@ public class ColumnSpec {
   public String getProperty() {
     return property;
   }
+
+  public MultiValued getMultiValued() {
+    return multiValued;
+  }
 }
@@ -17,15 +17,57 @@ package com.datagrafting.sql2sparql.calcite.config;
 
 import java.util.List;
 
+import com.datagrafting.sql2sparql.sparql.SparqlConnectionPool;
+import com.datagrafting.sql2sparql.sparql.SparqlExecutors;
+import com.datagrafting.sql2sparql.sparql.SparqlMetrics;
+
 public class Config {
   private final String endpoint;
   private final TableMode tableMode;
   private final List<TableMapping> tableMappings;
+  private final int poolMinSize;
+  private final int poolMaxSize;
+  private final long poolIdleTimeoutMillis;
+  private final long poolBorrowTimeoutMillis;
+  private final String executor;
+  private final int executorThreads;
+  private final boolean prefetch;
+  private final String catalogDir;
+  private final long catalogTtlMillis;
+  private final boolean catalogRefresh;
+  private final int planCacheSize;
+  private final long resultCacheSize;
+  private final long resultCacheTtlMillis;
+  private final long pageSize;
+  private final int scanParallelism;
+  private final String metrics;
+  private final MultiValued multiValued;
+
+  private Config(Builder builder) {
+    this.endpoint = builder.endpoint;
+    this.tableMode = builder.tableMode;
+    this.tableMappings = builder.tableMappings;
+    this.poolMinSize = builder.poolMinSize;
+    this.poolMaxSize = builder.poolMaxSize;
+    this.poolIdleTimeoutMillis = builder.poolIdleTimeoutMillis;
+    this.poolBorrowTimeoutMillis = builder.poolBorrowTimeoutMillis;
+    this.executor = builder.executor;
+    this.executorThreads = builder.executorThreads;
+    this.prefetch = builder.prefetch;
+    this.catalogDir = builder.catalogDir;
+    this.catalogTtlMillis = builder.catalogTtlMillis;
+    this.catalogRefresh = builder.catalogRefresh;
+    this.planCacheSize = builder.planCacheSize;
+    this.resultCacheSize = builder.resultCacheSize;
+    this.resultCacheTtlMillis = builder.resultCacheTtlMillis;
+    this.pageSize = builder.pageSize;
+    this.scanParallelism = builder.scanParallelism;
+    this.metrics = builder.metrics;
+    this.multiValued = builder.multiValued;
+  }
 
-  public Config(String endpoint, TableMode tableMode, List<TableMapping> tableMappings) {
-    this.endpoint = endpoint;
-    this.tableMode = tableMode;
-    this.tableMappings = tableMappings;
+  public static Builder builder(String endpoint, TableMode tableMode) {
+    return new Builder(endpoint, tableMode);
   }
 
   public String getEndpoint() {
@@ -39,4 +81,197 @@ public class Config {
   public List<TableMapping> getTableMappings() {
     return tableMappings;
   }
+
+  public int getPoolMinSize() {
+    return poolMinSize;
+  }
+
+  public int getPoolMaxSize() {
+    return poolMaxSize;
+  }
+
+  public long getPoolIdleTimeoutMillis() {
+    return poolIdleTimeoutMillis;
+  }
+
+  public long getPoolBorrowTimeoutMillis() {
+    return poolBorrowTimeoutMillis;
+  }
+
+  public String getExecutor() {
+    return executor;
+  }
+
+  public int getExecutorThreads() {
+    return executorThreads;
+  }
+
+  public boolean isPrefetch() {
+    return prefetch;
+  }
+
+  public String getCatalogDir() {
+    return catalogDir;
+  }
+
+  public long getCatalogTtlMillis() {
+    return catalogTtlMillis;
+  }
+
+  public boolean isCatalogRefresh() {
+    return catalogRefresh;
+  }
+
+  public int getPlanCacheSize() {
+    return planCacheSize;
+  }
+
+  public long getResultCacheSize() {
+    return resultCacheSize;
+  }
+
+  public long getResultCacheTtlMillis() {
+    return resultCacheTtlMillis;
+  }
+
+  public long getPageSize() {
+    return pageSize;
+  }
+
+  public int getScanParallelism() {
+    return scanParallelism;
+  }
+
+  public String getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns the mode of the columns of class tables, whose properties are discovered rather than mapped.
+   */
+  public MultiValued getMultiValued() {
+    return multiValued;
+  }
+
+  public static class Builder {
+    private final String endpoint;
+    private final TableMode tableMode;
+    private List<TableMapping> tableMappings;
+    private int poolMinSize = SparqlConnectionPool.DEFAULT_MIN_SIZE;
+    private int poolMaxSize = SparqlConnectionPool.DEFAULT_MAX_SIZE;
+    private long poolIdleTimeoutMillis = SparqlConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private long poolBorrowTimeoutMillis = SparqlConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS;
+    private String executor = SparqlExecutors.CACHED;
+    private int executorThreads = SparqlConnectionPool.DEFAULT_MAX_SIZE;
+    private boolean prefetch;
+    private String catalogDir;
+    private long catalogTtlMillis = 24 * 60 * 60 * 1000L;
+    private boolean catalogRefresh;
+    private int planCacheSize = 256;
+    private long resultCacheSize;
+    private long resultCacheTtlMillis = 5 * 60 * 1000L;
+    private long pageSize;
+    private int scanParallelism = 1;
+    private String metrics = SparqlMetrics.NONE;
+    private MultiValued multiValued = MultiValued.SINGLE;
+
+    private Builder(String endpoint, TableMode tableMode) {
+      this.endpoint = endpoint;
+      this.tableMode = tableMode;
+    }
+
+    public Builder tableMappings(List<TableMapping> tableMappings) {
+      this.tableMappings = tableMappings;
+      return this;
+    }
+
+    public Builder poolMinSize(int poolMinSize) {
+      this.poolMinSize = poolMinSize;
+      return this;
+    }
+
+    public Builder poolMaxSize(int poolMaxSize) {
+      this.poolMaxSize = poolMaxSize;
+      return this;
+    }
+
+    public Builder poolIdleTimeoutMillis(long poolIdleTimeoutMillis) {
+      this.poolIdleTimeoutMillis = poolIdleTimeoutMillis;
+      return this;
+    }
+
+    public Builder poolBorrowTimeoutMillis(long poolBorrowTimeoutMillis) {
+      this.poolBorrowTimeoutMillis = poolBorrowTimeoutMillis;
+      return this;
+    }
+
+    public Builder executor(String executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public Builder executorThreads(int executorThreads) {
+      this.executorThreads = executorThreads;
+      return this;
+    }
+
+    public Builder prefetch(boolean prefetch) {
+      this.prefetch = prefetch;
+      return this;
+    }
+
+    public Builder catalogDir(String catalogDir) {
+      this.catalogDir = catalogDir;
+      return this;
+    }
+
+    public Builder catalogTtlMillis(long catalogTtlMillis) {
+      this.catalogTtlMillis = catalogTtlMillis;
+      return this;
+    }
+
+    public Builder catalogRefresh(boolean catalogRefresh) {
+      this.catalogRefresh = catalogRefresh;
+      return this;
+    }
+
+    public Builder planCacheSize(int planCacheSize) {
+      this.planCacheSize = planCacheSize;
+      return this;
+    }
+
+    public Builder resultCacheSize(long resultCacheSize) {
+      this.resultCacheSize = resultCacheSize;
+      return this;
+    }
+
+    public Builder resultCacheTtlMillis(long resultCacheTtlMillis) {
+      this.resultCacheTtlMillis = resultCacheTtlMillis;
+      return this;
+    }
+
+    public Builder pageSize(long pageSize) {
+      this.pageSize = pageSize;
+      return this;
+    }
+
+    public Builder scanParallelism(int scanParallelism) {
+      this.scanParallelism = scanParallelism;
+      return this;
+    }
+
+    public Builder metrics(String metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public Builder multiValued(MultiValued multiValued) {
+      this.multiValued = multiValued;
+      return this;
+    }
+
+    public Config build() {
+      return new Config(this);
+    }
+  }
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.config;
+
+import java.util.Locale;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * How a column binds a property that can have more than one value for the same subject.
+ */
+public enum MultiValued {
+  // One row for each value, so a subject with several values for several columns gets one row for each combination
+  SINGLE,
+  // The values joined in a VARCHAR column
+  CONCAT,
+  // The values in a VARCHAR ARRAY column
+  ARRAY;
+
+  @JsonCreator
+  public static MultiValued of(String name) {
+    return valueOf(name.toUpperCase(Locale.ROOT));
+  }
+}
@@ -16,10 +16,12 @@
 package com.datagrafting.sql2sparql.calcite.config;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class TableMapping {
   private String name;
   private List<ColumnSpec> columns;
+  private MultiValued multiValued = MultiValued.SINGLE;
 
   public String getName() {
     return name;
@@ -28,4 +30,17 @@ public class TableMapping {
   public List<ColumnSpec> getColumns() {
     return columns;
   }
+
+  public MultiValued getMultiValued() {
+    return multiValued;
+  }
+
+  /**
+   * Returns the mode of each column, which is the one of the table mapping unless the column sets its own.
+   */
+  public List<MultiValued> getColumnsMultiValued() {
+    return columns.stream()
+                  .map(col -> col.getMultiValued() != null ? col.getMultiValued() : multiValued)
+                  .collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.calcite.plan.RelOptPredicateList;
+import org.apache.calcite.plan.Strong;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_Coalesce;
+import org.apache.jena.sparql.expr.E_Conditional;
+import org.apache.jena.sparql.expr.E_Divide;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.AggAvg;
+import org.apache.jena.sparql.expr.aggregate.AggAvgDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggCount;
+import org.apache.jena.sparql.expr.aggregate.AggCountDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggCountVar;
+import org.apache.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggMax;
+import org.apache.jena.sparql.expr.aggregate.AggMin;
+import org.apache.jena.sparql.expr.aggregate.AggSum;
+import org.apache.jena.sparql.expr.aggregate.AggSumDistinct;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
+import org.apache.jena.vocabulary.XSD;
+
+/**
+ * Translation of SQL aggregate functions to SPARQL, shared by the class and property conventions.
+ */
+final class SparqlAggregates {
+  // SPARQL has no NULL literal, and an expression that fails to evaluate is unbound
+  private static final Expr UNBOUND = new E_Divide(NodeValue.nvZERO, NodeValue.nvZERO);
+
+  private SparqlAggregates() {
+  }
+
+  /**
+   * Checks whether an aggregate can be evaluated by the endpoint, i.e. it has a single set of group keys and only
+   * calls COUNT, SUM, MIN, MAX or AVG on at most one column without a FILTER clause. A SPARQL aggregate is unbound
+   * as soon as one of its values is, while SQL skips NULL values, so MIN and MAX are only evaluated by the endpoint
+   * on columns that are never NULL.
+   */
+  static boolean isSupported(Aggregate aggregate) {
+    if (aggregate.getGroupType() != Aggregate.Group.SIMPLE) {
+      return false;
+    }
+
+    for (AggregateCall call : aggregate.getAggCallList()) {
+      if (call.hasFilter() || call.getArgList().size() > 1 || call.getCollation().getFieldCollations().size() > 0) {
+        return false;
+      }
+
+      switch (call.getAggregation().getKind()) {
+        case COUNT:
+          break;
+
+        case SUM:
+        case SUM0:
+        case AVG:
+          if (call.getArgList().size() != 1) {
+            return false;
+          }
+          break;
+
+        case MIN:
+        case MAX:
+          if (call.getArgList().size() != 1 || isNullable(aggregate, call.getArgList().get(0))) {
+            return false;
+          }
+          break;
+
+        default:
+          return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks whether a field of the input of an aggregate may be NULL, i.e. it has a nullable type and no filter on
+   * the input rejects its NULL values.
+   */
+  static boolean isNullable(Aggregate aggregate, int field) {
+    RelNode input = aggregate.getInput();
+    if (!input.getRowType().getFieldList().get(field).getType().isNullable()) {
+      return false;
+    }
+
+    RelOptPredicateList predicates = aggregate.getCluster().getMetadataQuery().getPulledUpPredicates(input);
+    ImmutableBitSet fields = ImmutableBitSet.of(field);
+    return predicates.pulledUpPredicates.stream().noneMatch(predicate -> Strong.isNotTrue(predicate, fields));
+  }
+
+  /**
+   * Returns the SPARQL expression of an aggregate call, given the variables bound to the fields of its input. The
+   * aggregators are allocated by the query they belong to, which returns the expression that refers to them.
+   *
+   * <p>SUM and AVG skip unbound values by replacing them with 0, and return the unbound value when there are no
+   * values to aggregate, as SQL does, while SUM0 returns 0.
+   */
+  static Expr toSparql(Aggregate aggregate, AggregateCall call, List<Var> fields,
+                       Function<Aggregator, Expr> allocator) {
+    boolean distinct = call.isDistinct();
+    Expr arg = call.getArgList().isEmpty() ? null : new ExprVar(fields.get(call.getArgList().get(0)));
+    boolean nullable = arg != null && isNullable(aggregate, call.getArgList().get(0));
+    Expr value = nullable ? new E_Coalesce(new ExprList(Arrays.asList(arg, NodeValue.nvZERO))) : arg;
+
+    // Groups are never empty, but a global aggregate or a group of NULL values has no values to aggregate
+    boolean empty = nullable || aggregate.getGroupSet().isEmpty();
+
+    switch (call.getAggregation().getKind()) {
+      case COUNT:
+        if (arg == null) {
+          return allocator.apply(distinct ? new AggCountDistinct() : new AggCount());
+        }
+
+        return allocator.apply(distinct ? new AggCountVarDistinct(arg) : new AggCountVar(arg));
+
+      case SUM0:
+        return allocator.apply(distinct ? new AggSumDistinct(value) : new AggSum(value));
+
+      case SUM: {
+        Expr sum = allocator.apply(distinct ? new AggSumDistinct(value) : new AggSum(value));
+        return empty ? ifNoValues(arg, distinct, sum, allocator) : sum;
+      }
+
+      case MIN:
+        return allocator.apply(new AggMin(arg));
+
+      case MAX:
+        return allocator.apply(new AggMax(arg));
+
+      case AVG: {
+        Expr avg;
+        if (nullable) {
+          // The average of the bound values only, which is a division by zero, i.e. unbound, if there are none
+          avg = new E_Divide(allocator.apply(distinct ? new AggSumDistinct(value) : new AggSum(value)),
+              allocator.apply(distinct ? new AggCountVarDistinct(arg) : new AggCountVar(arg)));
+        } else {
+          avg = allocator.apply(distinct ? new AggAvgDistinct(arg) : new AggAvg(arg));
+          if (empty) {
+            avg = ifNoValues(arg, distinct, avg, allocator);
+          }
+        }
+
+        // SPARQL always returns a decimal average, while SQL truncates the average of integers
+        if (SqlTypeName.INT_TYPES.contains(call.getType().getSqlTypeName())) {
+          return new E_Function(XSD.integer.getURI(), new ExprList(avg));
+        }
+
+        return avg;
+      }
+
+      default:
+        throw new UnsupportedOperationException(call.getAggregation().getKind() + " aggregate not supported");
+    }
+  }
+
+  /**
+   * Returns the unbound value if the argument of an aggregate has no bound values, and the aggregate otherwise.
+   */
+  private static Expr ifNoValues(Expr arg, boolean distinct, Expr aggregate, Function<Aggregator, Expr> allocator) {
+    Expr count = allocator.apply(distinct ? new AggCountVarDistinct(arg) : new AggCountVar(arg));
+    return new E_Conditional(new E_Equals(count, NodeValue.nvZERO), UNBOUND, aggregate);
+  }
+}
@@ -16,15 +16,41 @@
 package com.datagrafting.sql2sparql.calcite.rel;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.util.Pair;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.SortCondition;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_Str;
+import org.apache.jena.sparql.expr.E_StrEncodeForURI;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.aggregate.AggGroupConcat;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.vocabulary.RDF;
+
+import com.datagrafting.sql2sparql.calcite.SparqlRowDecoder;
+import com.datagrafting.sql2sparql.calcite.SparqlTemplate;
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
 
 public interface SparqlClassRel extends RelNode {
   void implement(Implementor implementor);
@@ -33,62 +59,381 @@ public interface SparqlClassRel extends RelNode {
 
   class Implementor {
     public RelOptTable table;
-    public Map<String, String> classes = new HashMap<>();
-    public List<Pair<String, String>> props = new ArrayList<>();
-    public List<Integer> projects = new ArrayList<>();
-    public List<Pair<Integer, String>> sortIndices = new ArrayList<>();
-    public Map<Integer, String> filters = new HashMap<>();
+    // The SPARQL variable bound to each field of the rel being implemented, in order
+    public List<Var> fields = new ArrayList<>();
+    // One pattern per scanned table
+    public List<ScanPattern> scans = new ArrayList<>();
+    public List<Expr> filters = new ArrayList<>();
+    public List<SortCondition> orderBy = new ArrayList<>();
     public int limit;
+    public int offset;
+    // Once the fields are aggregated, the group keys, the expression of each aggregate variable and the filters
+    // on the groups
+    public List<Var> groupBy = new ArrayList<>();
+    public Map<Var, Expr> aggregates = new LinkedHashMap<>();
+    public List<Expr> having = new ArrayList<>();
+    // The variable bound to each dynamic parameter, by the index of the parameter, in the order of the slots of the
+    // query template
+    public Map<Integer, Var> parameters = new LinkedHashMap<>();
+    // The query being built, which allocates the aggregators
+    private final Query query = new Query();
+    private boolean aggregated;
+    private Set<String> variables = new HashSet<>();
 
     public void visitChild(int ordinal, RelNode input) {
-      assert ordinal == 0;
+      // Only joins have more than one input
+      assert ordinal == 0 || ordinal == 1;
       ((SparqlClassRel) input).implement(this);
     }
 
-    public String getQuery() {
-      props.add(0, new Pair<>("s", "_ID_"));
-
-      List<Pair<String, String>> select = projects.isEmpty() ?
-          props :
-          projects.stream().map(idx -> props.get(idx)).collect(Collectors.toList());
-
-      String selectClause = select.stream()
-                            .map(pair -> String.format("?%s", pair.getKey()))
-                            .collect(Collectors.joining(" "));
-
-      // TODO: this should be in its own class - here the type class should be mandatory
-      String typeClause = classes.values().isEmpty() ? "" : String.format("?s a <%s> .", classes.values().toArray()[0]);
-
-      String whereClause = props.stream()
-                                .filter(entry -> !entry.getValue().equals("_ID_"))
-                                .map(entry -> String.format("OPTIONAL { ?s <%s> ?%s }", entry.getValue(), entry.getKey()))
-                                .collect(Collectors.joining("\n    "));
-
-      String filter = filters.entrySet().stream()
-                             .map(entry -> entry.getValue().replace(SparqlClassFilter.PLACEHOLDER, "?" + props.get(entry.getKey()).getKey()))
-                             .collect(Collectors.joining(" "));
-      String filterClause = filter.length() > 0 ? "FILTER (" + filter + ")" : "";
-
-      String orderBy = sortIndices.stream()
-                                  .map(entry -> String.format("%s (?%s)", entry.getValue(), props.get(entry.getKey()).getKey()))
-                                  .collect(Collectors.joining(" "));
-      String orderByClause = orderBy.length() > 0 ? "ORDER BY " + orderBy : "";
-
-      String limitClause = limit > 0 ? "LIMIT " + limit : "";
-
-      return String.format(""
-              + "SELECT %s\n"
-              + "WHERE {\n"
-              + "  GRAPH ?g {\n"
-              + "    %s\n"
-              + "    %s\n"
-              + "  }\n"
-              + "%s"
-              + "}\n"
-              + "%s\n"
-              + "%s",
-          selectClause, typeClause, whereClause, filterClause, orderByClause, limitClause
-      ).trim();
+    /**
+     * Adds the pattern of a class table (or of a mapping table if {@code classUri} is null), whose subject and
+     * columns become the next fields. Each column is bound with an OPTIONAL, since not every subject has every
+     * property, and according to how it binds the values of a property with several values for a subject.
+     */
+    public void addScan(String classUri, List<Pair<String, String>> columns, List<MultiValued> multiValued) {
+      Var graph = newVariable("g");
+      Var subject = newVariable("s");
+      List<ColumnPattern> columnPatterns = new ArrayList<>();
+      fields.add(subject);
+
+      for (int i = 0; i < columns.size(); i++) {
+        Pair<String, String> column = columns.get(i);
+        Var var = newVariable(column.getKey());
+        columnPatterns.add(new ColumnPattern(NodeFactory.createURI(column.getValue()), var, multiValued.get(i)));
+        fields.add(var);
+      }
+
+      scans.add(new ScanPattern(graph, subject, classUri == null ? null : NodeFactory.createURI(classUri),
+          columnPatterns));
+    }
+
+    private Var newVariable(String name) {
+      return SparqlRels.newVariable(variables, name);
+    }
+
+    /**
+     * Adds a condition on the fields, which is a filter on the groups once the fields are aggregated.
+     */
+    public void addFilter(Expr condition) {
+      if (aggregated) {
+        having.add(condition);
+      } else {
+        filters.add(condition);
+      }
+    }
+
+    /**
+     * Sorts by a field, in the given {@link Query#ORDER_ASCENDING} or {@link Query#ORDER_DESCENDING} direction.
+     */
+    public void addSort(int index, int direction) {
+      orderBy.add(new SortCondition(getExpression(index), direction));
+    }
+
+    public Expr allocAggregate(Aggregator aggregator) {
+      return query.allocAggregate(aggregator);
+    }
+
+    /**
+     * Groups the fields by the given keys, which become the first fields, followed by one field for each aggregate
+     * expression.
+     */
+    public void aggregate(List<Integer> groupKeys, List<Expr> expressions) {
+      List<Var> aggregateFields = groupKeys.stream().map(fields::get).collect(Collectors.toList());
+      groupBy = aggregateFields.stream().distinct().collect(Collectors.toList());
+
+      for (Expr expression : expressions) {
+        Var var = newVariable("agg");
+        aggregates.put(var, expression);
+        aggregateFields.add(var);
+      }
+
+      fields = aggregateFields;
+      aggregated = true;
+    }
+
+    /**
+     * Returns the SPARQL expression of a field. Aggregate variables are only bound after the groups are filtered,
+     * and may not be selected at all, so filters and sorts refer to their expressions instead.
+     */
+    public Expr getExpression(int index) {
+      Var var = fields.get(index);
+      Expr aggregate = aggregates.get(var);
+      return aggregate != null ? aggregate : new ExprVar(var);
+    }
+
+    /**
+     * Returns the SPARQL expression of a dynamic parameter, which is the variable bound to its slot.
+     */
+    public Expr getParameter(int index) {
+      return new ExprVar(parameters.computeIfAbsent(index, i -> newVariable("param" + i)));
+    }
+
+    public void project(List<Integer> indices) {
+      fields = indices.stream().map(fields::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Implements the right input of a join separately, so that its projections only see its own fields, and
+     * appends its fields and patterns to the ones of the left input.
+     */
+    public void visitRight(RelNode right) {
+      Implementor rightImplementor = new Implementor();
+      rightImplementor.variables = variables;
+      rightImplementor.parameters = parameters;
+      rightImplementor.visitChild(1, right);
+
+      if (table == null) {
+        table = rightImplementor.table;
+      }
+
+      fields.addAll(rightImplementor.fields);
+      scans.addAll(rightImplementor.scans);
+      filters.addAll(rightImplementor.filters);
+    }
+
+    /**
+     * Makes two fields share the same variable, so that the endpoint joins their patterns. As a SQL join never
+     * matches a null, the columns bound to the variable are no longer optional.
+     */
+    public void unify(int leftIndex, int rightIndex) {
+      Var from = fields.get(rightIndex);
+      Var to = fields.get(leftIndex);
+
+      if (!from.equals(to)) {
+        fields = fields.stream().map(var -> var.equals(from) ? to : var).collect(Collectors.toList());
+        filters = filters.stream()
+                         .map(filter -> SparqlExpressions.rename(filter, from, to))
+                         .collect(Collectors.toList());
+        for (ScanPattern scan : scans) {
+          scan.rename(from, to);
+        }
+      }
+
+      for (ScanPattern scan : scans) {
+        scan.require(to);
+      }
+    }
+
+    /**
+     * Builds the query of the implemented rels. Fields bound to the same variable (e.g. both sides of a join) are
+     * selected again under a new name, so that there is still one result column per field.
+     */
+    public Query getQuery() {
+      if (query.isSelectType()) {
+        return query;
+      }
+
+      query.setQuerySelectType();
+
+      Set<Var> selected = new HashSet<>();
+      for (int i = 0; i < fields.size(); i++) {
+        Var var = fields.get(i);
+        if (!selected.add(var)) {
+          query.addResultVar(Var.alloc(var.getVarName() + "_" + i), new ExprVar(var));
+        } else if (aggregates.containsKey(var)) {
+          query.addResultVar(var, aggregates.get(var));
+        } else {
+          query.addResultVar(var);
+        }
+      }
+
+      ElementGroup pattern = new ElementGroup();
+      if (!parameters.isEmpty()) {
+        pattern.addElement(SparqlTemplate.values(parameters.values()));
+      }
+      // A column that a filter rejects when unbound is never missing from the results, so it does not need an
+      // OPTIONAL, and as a required pattern it can drive the evaluation of the query (e.g. with an index lookup)
+      for (Expr filter : filters) {
+        for (Var var : SparqlExpressions.getRejectedUnbound(filter)) {
+          for (ScanPattern scan : scans) {
+            scan.require(var);
+          }
+        }
+      }
+
+      Set<Var> used = getUsedVariables();
+      for (ScanPattern scan : scans) {
+        pattern.addElement(scan.toElement(used));
+      }
+      if (!filters.isEmpty()) {
+        pattern.addElementFilter(new ElementFilter(SparqlExpressions.and(filters)));
+      }
+      query.setQueryPattern(pattern);
+
+      for (Var var : groupBy) {
+        query.addGroupBy(var);
+      }
+      if (!having.isEmpty()) {
+        query.addHavingCondition(SparqlExpressions.and(having));
+      }
+      for (SortCondition condition : orderBy) {
+        query.addOrderBy(condition);
+      }
+      if (limit > 0) {
+        query.setLimit(limit);
+      }
+      if (offset > 0) {
+        query.setOffset(offset);
+      }
+
+      return query;
+    }
+
+    /**
+     * Returns the variables that are selected, filtered, grouped, aggregated or sorted on. The optional columns
+     * bound to other variables are not needed, and each of them would only add a left join to the query.
+     */
+    private Set<Var> getUsedVariables() {
+      Set<Var> used = new HashSet<>(fields);
+      used.addAll(groupBy);
+      for (Expr filter : filters) {
+        SparqlExpressions.addVariables(filter, used);
+      }
+      for (Expr condition : having) {
+        SparqlExpressions.addVariables(condition, used);
+      }
+      for (Expr aggregate : aggregates.values()) {
+        SparqlExpressions.addVariables(aggregate, used);
+      }
+      for (SortCondition condition : orderBy) {
+        SparqlExpressions.addVariables(condition.getExpression(), used);
+      }
+
+      return used;
+    }
+  }
+
+  /**
+   * The triple patterns of a scanned table, within their own graph.
+   */
+  class ScanPattern {
+    private final Var graph;
+    private Var subject;
+    private final Node classUri;
+    private final List<ColumnPattern> columns;
+
+    ScanPattern(Var graph, Var subject, Node classUri, List<ColumnPattern> columns) {
+      this.graph = graph;
+      this.subject = subject;
+      this.classUri = classUri;
+      this.columns = columns;
+    }
+
+    void rename(Var from, Var to) {
+      if (subject.equals(from)) {
+        subject = to;
+      }
+
+      for (ColumnPattern column : columns) {
+        if (column.var.equals(from)) {
+          column.var = to;
+        }
+      }
+    }
+
+    void require(Var var) {
+      for (ColumnPattern column : columns) {
+        if (column.var.equals(var)) {
+          column.required = true;
+        }
+      }
+    }
+
+    /**
+     * Builds the patterns of the table, leaving out the optional columns that are bound to unused variables.
+     */
+    Element toElement(Set<Var> used) {
+      ElementGroup pattern = new ElementGroup();
+      ElementPathBlock required = new ElementPathBlock();
+
+      // A mapping table has no type, so its subjects are only bound by its columns
+      if (classUri != null) {
+        required.addTriple(Triple.create(subject, RDF.type.asNode(), classUri));
+      }
+
+      for (ColumnPattern column : columns) {
+        if (column.required && column.multiValued == MultiValued.SINGLE) {
+          required.addTriple(Triple.create(subject, column.property, column.var));
+        }
+      }
+
+      if (!required.isEmpty()) {
+        pattern.addElement(required);
+      }
+
+      boolean anyRequired = false;
+      for (ColumnPattern column : columns) {
+        if (column.required && column.multiValued != MultiValued.SINGLE) {
+          pattern.addElement(column.toElement(subject, classUri));
+        }
+        anyRequired |= column.required;
+      }
+
+      for (ColumnPattern column : columns) {
+        // Without a type or a required column, the first optional column is the one that binds the subjects of a
+        // mapping table
+        boolean bindsSubject = classUri == null && !anyRequired && column == columns.get(0);
+
+        if (!column.required && (used.contains(column.var) || bindsSubject)) {
+          pattern.addElement(new ElementOptional(column.toElement(subject, classUri)));
+        }
+      }
+
+      return new ElementNamedGraph(graph, pattern);
+    }
+  }
+
+  class ColumnPattern {
+    private static final String CONCAT_SEPARATOR = ", ";
+
+    private final Node property;
+    private Var var;
+    private boolean required;
+    private final MultiValued multiValued;
+
+    ColumnPattern(Node property, Var var, MultiValued multiValued) {
+      this.property = property;
+      this.var = var;
+      this.multiValued = multiValued;
+    }
+
+    /**
+     * Builds the pattern that binds the column. The values of a multi-valued column are aggregated by a subquery
+     * grouped by subject, so that each subject still has a single row however many values it has. The subquery is
+     * evaluated before it is joined, so it only matches the subjects of the class, if any.
+     */
+    Element toElement(Var subject, Node classUri) {
+      ElementPathBlock triple = new ElementPathBlock();
+
+      if (multiValued == MultiValued.SINGLE) {
+        triple.addTriple(Triple.create(subject, property, var));
+        return triple;
+      }
+
+      // Not visible outside the subquery
+      Var value = Var.alloc(var.getVarName() + "_value");
+      if (classUri != null) {
+        triple.addTriple(Triple.create(subject, RDF.type.asNode(), classUri));
+      }
+      triple.addTriple(Triple.create(subject, property, value));
+      ElementGroup group = new ElementGroup();
+      group.addElement(triple);
+
+      Query subQuery = new Query();
+      subQuery.setQuerySelectType();
+      subQuery.setQueryPattern(group);
+      subQuery.addResultVar(subject);
+
+      Expr string = new E_Str(new ExprVar(value));
+      // The values of an array are encoded, so that they cannot contain the separator
+      Aggregator concat = multiValued == MultiValued.ARRAY ?
+          new AggGroupConcat(new E_StrEncodeForURI(string), SparqlRowDecoder.ARRAY_SEPARATOR) :
+          new AggGroupConcat(string, CONCAT_SEPARATOR);
+      subQuery.addResultVar(var, subQuery.allocAggregate(concat));
+      subQuery.addGroupBy(subject);
+
+      return new ElementSubQuery(subQuery);
     }
   }
 }
@@ -17,24 +17,40 @@ package com.datagrafting.sql2sparql.calcite.rel;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.logical.LogicalAggregate;
 import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
 import org.apache.calcite.rel.logical.LogicalProject;
 import org.apache.calcite.rel.logical.LogicalSort;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.jena.sparql.expr.Expr;
 
 public class SparqlClassRules {
   public static final List<RelOptRule> RULES = Arrays.asList(
       SparqlProjectRule.INSTANCE,
       SparqlSortRule.INSTANCE,
-      SparqlFilterRule.INSTANCE
+      SparqlFilterRule.INSTANCE,
+      SparqlJoinRule.INSTANCE,
+      SparqlAggregateRule.INSTANCE,
+      SparqlFilterSplitRule.create(SparqlClassRel.CONVENTION, SparqlClassFilter::new)
   );
 
+  // Joins and aggregates are merged into the patterns of the scans of class or mapping tables
+  private static final Predicate<RelNode> IS_SCAN =
+      rel -> rel instanceof SparqlClassTableScan || rel instanceof SparqlMappingTableScan;
+
   private static class SparqlProjectRule extends ConverterRule {
     private static final SparqlClassRules.SparqlProjectRule INSTANCE = Config.INSTANCE
         .withConversion(LogicalProject.class, Convention.NONE,
@@ -46,6 +62,14 @@ public class SparqlClassRules {
       super(config);
     }
 
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalProject project = call.rel(0);
+
+      // Expressions are computed by Calcite
+      return project.getProjects().stream().allMatch(expr -> expr instanceof RexInputRef);
+    }
+
     @Override
     public RelNode convert(RelNode rel) {
       final LogicalProject project = (LogicalProject) rel;
@@ -68,6 +92,16 @@ public class SparqlClassRules {
       super(config);
     }
 
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalSort sort = call.rel(0);
+
+      // A limit or offset given by a dynamic parameter is left to Calcite
+      return !SparqlRels.isLimited(sort.getInput())
+          && (sort.fetch == null || sort.fetch instanceof RexLiteral)
+          && (sort.offset == null || sort.offset instanceof RexLiteral);
+    }
+
     @Override
     public RelNode convert(RelNode rel) {
       final LogicalSort sort = (LogicalSort) rel;
@@ -76,12 +110,6 @@ public class SparqlClassRules {
       RexNode offset = sort.offset;
       RexNode fetch = sort.fetch;
 
-//            System.out.println("Sort: " + sort);
-//            System.out.println("Sort input: " + sort.getInput());
-//            System.out.println("Sort collation: " + sort.getCollation());
-//            System.out.println("Sort offset: " + offset);
-//            System.out.println("Sort fetch: " + fetch);
-
       return new SparqlClassSort(sort.getCluster(), traitSet,
           convert(input, input.getTraitSet().replace(out)), sort.getCollation(), offset, fetch);
     }
@@ -98,13 +126,90 @@ public class SparqlClassRules {
       super(config);
     }
 
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalFilter filter = call.rel(0);
+
+      return !SparqlRels.isLimited(filter.getInput());
+    }
+
     @Override
     public RelNode convert(RelNode rel) {
       final LogicalFilter filter = (LogicalFilter) rel;
       final RelTraitSet traitSet = filter.getTraitSet().replace(SparqlClassRel.CONVENTION);
 
+      // Conditions that the endpoint cannot evaluate are left to Calcite
+      Expr condition = SparqlExpressions.translate(filter.getCondition(), filter.getInput());
+      if (condition == null) {
+        return null;
+      }
+
       return new SparqlClassFilter(rel.getCluster(), traitSet,
-          convert(filter.getInput(), SparqlClassRel.CONVENTION), filter.getCondition());
+          convert(filter.getInput(), SparqlClassRel.CONVENTION), filter.getCondition(), condition);
+    }
+  }
+
+  private static class SparqlJoinRule extends ConverterRule {
+    private static final SparqlClassRules.SparqlJoinRule INSTANCE = Config.INSTANCE
+        .withConversion(LogicalJoin.class, Convention.NONE,
+            SparqlClassRel.CONVENTION, "SparqlJoinRule")
+        .withRuleFactory(SparqlClassRules.SparqlJoinRule::new)
+        .toRule(SparqlClassRules.SparqlJoinRule.class);
+
+    protected SparqlJoinRule(Config config) {
+      super(config);
+    }
+
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalJoin join = call.rel(0);
+      final JoinInfo joinInfo = join.analyzeCondition();
+
+      return join.getJoinType() == JoinRelType.INNER
+          && joinInfo.isEqui()
+          && !joinInfo.pairs().isEmpty()
+          && SparqlRels.isPattern(join.getLeft(), IS_SCAN)
+          && SparqlRels.isPattern(join.getRight(), IS_SCAN);
+    }
+
+    @Override
+    public RelNode convert(RelNode rel) {
+      final LogicalJoin join = (LogicalJoin) rel;
+      final RelTraitSet traitSet = join.getTraitSet().replace(SparqlClassRel.CONVENTION);
+
+      return new SparqlClassJoin(join.getCluster(), traitSet,
+          convert(join.getLeft(), SparqlClassRel.CONVENTION),
+          convert(join.getRight(), SparqlClassRel.CONVENTION),
+          join.getCondition(), join.getJoinType());
+    }
+  }
+
+  private static class SparqlAggregateRule extends ConverterRule {
+    private static final SparqlClassRules.SparqlAggregateRule INSTANCE = Config.INSTANCE
+        .withConversion(LogicalAggregate.class, Convention.NONE,
+            SparqlClassRel.CONVENTION, "SparqlAggregateRule")
+        .withRuleFactory(SparqlClassRules.SparqlAggregateRule::new)
+        .toRule(SparqlClassRules.SparqlAggregateRule.class);
+
+    protected SparqlAggregateRule(Config config) {
+      super(config);
+    }
+
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalAggregate aggregate = call.rel(0);
+
+      return SparqlAggregates.isSupported(aggregate) && SparqlRels.isPattern(aggregate.getInput(), IS_SCAN);
+    }
+
+    @Override
+    public RelNode convert(RelNode rel) {
+      final LogicalAggregate aggregate = (LogicalAggregate) rel;
+      final RelTraitSet traitSet = aggregate.getTraitSet().replace(SparqlClassRel.CONVENTION);
+
+      return new SparqlClassAggregate(aggregate.getCluster(), traitSet,
+          convert(aggregate.getInput(), SparqlClassRel.CONVENTION),
+          aggregate.getGroupSet(), aggregate.getGroupSets(), aggregate.getAggCallList());
     }
   }
 }
@@ -26,17 +26,22 @@ import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.util.Pair;
 
+import com.datagrafting.sql2sparql.calcite.config.MultiValued;
+
 public class SparqlClassTableScan extends TableScan implements SparqlClassRel {
   private String tableName;
   private String classUri;
   private List<Pair<String, String>> props;
+  private List<MultiValued> multiValued;
 
   public SparqlClassTableScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable relOptTable,
-                              String tableName, String classUri, List<Pair<String, String>> props) {
+                              String tableName, String classUri, List<Pair<String, String>> props,
+                              List<MultiValued> multiValued) {
     super(cluster, traitSet, new ArrayList<>(), relOptTable);
     this.tableName = tableName;
     this.classUri = classUri;
     this.props = props;
+    this.multiValued = multiValued;
 
     assert getConvention() == SparqlClassRel.CONVENTION;
   }
@@ -59,7 +64,6 @@ public class SparqlClassTableScan extends TableScan implements SparqlClassRel {
   @Override
   public void implement(Implementor implementor) {
     implementor.table = table;
-    implementor.classes.put(this.tableName, this.classUri);
-    implementor.props.addAll(props);
+    implementor.addScan(this.classUri, props, multiValued);
   }
 }
@@ -15,33 +15,16 @@
  */
 package com.datagrafting.sql2sparql.calcite.rel;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.calcite.adapter.enumerable.EnumerableRel;
-import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
-import org.apache.calcite.adapter.enumerable.JavaRowFormat;
-import org.apache.calcite.adapter.enumerable.PhysType;
-import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
-import org.apache.calcite.linq4j.tree.BlockBuilder;
-import org.apache.calcite.linq4j.tree.Expression;
-import org.apache.calcite.linq4j.tree.Expressions;
-import org.apache.calcite.plan.ConventionTraitDef;
 import org.apache.calcite.plan.RelOptCluster;
-import org.apache.calcite.plan.RelOptCost;
-import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.convert.ConverterImpl;
-import org.apache.calcite.rel.metadata.RelMetadataQuery;
-import org.apache.calcite.runtime.Hook;
-import org.checkerframework.checker.nullness.qual.Nullable;
 
-import com.datagrafting.sql2sparql.calcite.SparqlMethod;
-import com.datagrafting.sql2sparql.calcite.SparqlQueryable;
-
-public class SparqlClassToEnumerableConverter extends ConverterImpl implements EnumerableRel {
+public class SparqlClassToEnumerableConverter extends SparqlToEnumerableConverter {
   protected SparqlClassToEnumerableConverter(RelOptCluster cluster, RelTraitSet traits, RelNode child) {
-    super(cluster, ConventionTraitDef.INSTANCE, traits, child);
+    super(cluster, traits, child);
   }
 
   @Override
@@ -51,36 +34,11 @@ public class SparqlClassToEnumerableConverter extends ConverterImpl implements E
   }
 
   @Override
-  public @Nullable RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
-    RelOptCost cost = super.computeSelfCost(planner, mq);
-    if (cost == null) {
-      return null;
-    }
-    return cost.multiplyBy(0.1);
-  }
-
-  @Override
-  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
-    final BlockBuilder builder = new BlockBuilder();
-    final PhysType physType =
-        PhysTypeImpl.of(implementor.getTypeFactory(), rowType,
-            pref.prefer(JavaRowFormat.ARRAY));
+  public PushedQuery implementQuery() {
     final SparqlClassRel.Implementor sparqlImplementor = new SparqlClassRel.Implementor();
     sparqlImplementor.visitChild(0, getInput());
 
-    String sparqlQuery = sparqlImplementor.getQuery();
-
-    final Expression table =
-        builder.append("table",
-            sparqlImplementor.table.getExpression(
-                SparqlQueryable.class));
-    Expression enumerable =
-        builder.append("enumerable",
-            Expressions.call(table, SparqlMethod.SPARQL_QUERY.method, Expressions.constant(sparqlQuery)));
-    builder.add(
-        Expressions.return_(null, enumerable));
-    Hook.QUERY_PLAN.run(sparqlQuery);
-
-    return implementor.result(physType, builder.toBlock());
+    return new PushedQuery(sparqlImplementor.table, sparqlImplementor.getQuery().serialize(),
+        new ArrayList<>(sparqlImplementor.parameters.keySet()));
   }
 }
@@ -0,0 +1,519 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexDynamicParam;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUnknownAs;
+import org.apache.calcite.sql.fun.SqlLikeOperator;
+import org.apache.calcite.sql.type.SqlTypeFamily;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.DateString;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.NlsString;
+import org.apache.calcite.util.Sarg;
+import org.apache.calcite.util.TimestampString;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_Add;
+import org.apache.jena.sparql.expr.E_Bound;
+import org.apache.jena.sparql.expr.E_Coalesce;
+import org.apache.jena.sparql.expr.E_Conditional;
+import org.apache.jena.sparql.expr.E_Divide;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.E_GreaterThan;
+import org.apache.jena.sparql.expr.E_GreaterThanOrEqual;
+import org.apache.jena.sparql.expr.E_LessThan;
+import org.apache.jena.sparql.expr.E_LessThanOrEqual;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.E_LogicalNot;
+import org.apache.jena.sparql.expr.E_LogicalOr;
+import org.apache.jena.sparql.expr.E_Multiply;
+import org.apache.jena.sparql.expr.E_NotEquals;
+import org.apache.jena.sparql.expr.E_NotOneOf;
+import org.apache.jena.sparql.expr.E_OneOf;
+import org.apache.jena.sparql.expr.E_OneOfBase;
+import org.apache.jena.sparql.expr.E_Regex;
+import org.apache.jena.sparql.expr.E_Str;
+import org.apache.jena.sparql.expr.E_StrContains;
+import org.apache.jena.sparql.expr.E_StrEndsWith;
+import org.apache.jena.sparql.expr.E_StrStartsWith;
+import org.apache.jena.sparql.expr.E_Subtract;
+import org.apache.jena.sparql.expr.E_UnaryMinus;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprFunction;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprTransformCopy;
+import org.apache.jena.sparql.expr.ExprTransformer;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.vocabulary.XSD;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+
+/**
+ * Translation of Calcite row expressions to SPARQL expressions, shared by the class and property conventions. The
+ * translation returns null for the expressions that SPARQL cannot evaluate, which are then left to Calcite.
+ */
+final class SparqlExpressions {
+  // Names of the placeholders of the fields of the input, the aggregated ones and the dynamic parameters
+  private static final String FIELD = "field";
+  private static final String AGGREGATE = "aggregate";
+  private static final String PARAMETER = "param";
+
+  private final ImmutableBitSet aggregates;
+
+  private SparqlExpressions(ImmutableBitSet aggregates) {
+    this.aggregates = aggregates;
+  }
+
+  /**
+   * Returns the SPARQL expression of a condition on the rows of a rel, or null if the endpoint cannot evaluate it.
+   * The fields and dynamic parameters are placeholder variables, which {@link #bind} replaces once the query of the
+   * rel is implemented.
+   */
+  static Expr translate(RexNode condition, RelNode input) {
+    return new SparqlExpressions(SparqlRels.getAggregates(input)).translate(condition);
+  }
+
+  /**
+   * Replaces the placeholders of a translated condition with the SPARQL expression of each field of the input and
+   * the variable bound to each dynamic parameter.
+   */
+  static Expr bind(Expr condition, IntFunction<Expr> fields, IntFunction<Expr> params) {
+    return ExprTransformer.transform(new ExprTransformCopy() {
+      @Override
+      public Expr transform(ExprVar exprVar) {
+        String name = exprVar.getVarName();
+        if (name.startsWith(PARAMETER)) {
+          return params.apply(Integer.parseInt(name.substring(PARAMETER.length())));
+        }
+
+        String prefix = name.startsWith(AGGREGATE) ? AGGREGATE : FIELD;
+        return fields.apply(Integer.parseInt(name.substring(prefix.length())));
+      }
+    }, condition);
+  }
+
+  private Expr translate(RexNode node) {
+    if (node instanceof RexInputRef) {
+      int index = ((RexInputRef) node).getIndex();
+      return new ExprVar((aggregates != null && aggregates.get(index) ? AGGREGATE : FIELD) + index);
+    } else if (node instanceof RexDynamicParam) {
+      // Only the values that are formatted as SPARQL literals
+      SqlTypeFamily family = node.getType().getSqlTypeName().getFamily();
+      if (family != SqlTypeFamily.CHARACTER && family != SqlTypeFamily.NUMERIC && family != SqlTypeFamily.BOOLEAN) {
+        return null;
+      }
+
+      // Parameters are bound to variables, which cannot be used in the filters on groups
+      return aggregates != null ? null : new ExprVar(PARAMETER + ((RexDynamicParam) node).getIndex());
+    } else if (node instanceof RexLiteral) {
+      return ((RexLiteral) node).isNull() ? null : value(((RexLiteral) node).getValue());
+    } else if (!(node instanceof RexCall)) {
+      return null;
+    }
+
+    List<RexNode> operands = ((RexCall) node).getOperands();
+
+    switch (node.getKind()) {
+      case AND:
+        return join(operands, E_LogicalAnd::new);
+
+      case OR:
+        return join(operands, E_LogicalOr::new);
+
+      case NOT: {
+        Expr operand = translate(operands.get(0));
+        return operand == null ? null : new E_LogicalNot(operand);
+      }
+
+      case EQUALS:
+        return binary(operands, E_Equals::new);
+
+      case NOT_EQUALS:
+        return binary(operands, E_NotEquals::new);
+
+      case LESS_THAN:
+        return binary(operands, E_LessThan::new);
+
+      case LESS_THAN_OR_EQUAL:
+        return binary(operands, E_LessThanOrEqual::new);
+
+      case GREATER_THAN:
+        return binary(operands, E_GreaterThan::new);
+
+      case GREATER_THAN_OR_EQUAL:
+        return binary(operands, E_GreaterThanOrEqual::new);
+
+      case PLUS:
+        return binary(operands, E_Add::new);
+
+      case MINUS:
+        return binary(operands, E_Subtract::new);
+
+      case TIMES:
+        return binary(operands, E_Multiply::new);
+
+      case DIVIDE: {
+        Expr division = binary(operands, E_Divide::new);
+
+        // SPARQL always returns a decimal, while SQL truncates the division of integers
+        if (division != null && SqlTypeName.INT_TYPES.contains(node.getType().getSqlTypeName())) {
+          return new E_Function(XSD.integer.getURI(), new ExprList(division));
+        }
+
+        return division;
+      }
+
+      case MINUS_PREFIX: {
+        Expr operand = translate(operands.get(0));
+        return operand == null ? null : new E_UnaryMinus(operand);
+      }
+
+      case PLUS_PREFIX:
+        return translate(operands.get(0));
+
+      case IS_NULL:
+        return bound(operands.get(0), false);
+
+      case IS_NOT_NULL:
+        return bound(operands.get(0), true);
+
+      case LIKE:
+        return like((RexCall) node);
+
+      case SEARCH:
+        return search(operands);
+
+      case CAST:
+        return cast((RexCall) node);
+
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the conjunction of some conditions.
+   */
+  static Expr and(List<Expr> conditions) {
+    return conditions.stream().reduce(E_LogicalAnd::new).orElse(NodeValue.TRUE);
+  }
+
+  /**
+   * Adds the variables mentioned by an expression to a set, including the ones in the arguments of its
+   * aggregates.
+   */
+  static void addVariables(Expr expr, Set<Var> variables) {
+    Walker.walk(expr, new ExprVisitorBase() {
+      @Override
+      public void visit(ExprVar exprVar) {
+        variables.add(exprVar.asVar());
+      }
+
+      @Override
+      public void visit(ExprAggregator eAgg) {
+        ExprList args = eAgg.getAggregator().getExprList();
+        if (args != null) {
+          args.forEach(arg -> addVariables(arg, variables));
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the variables that a condition rejects when unbound, i.e. such that the condition is false or an
+   * error whenever one of them is unbound, as a null-rejecting predicate in SQL.
+   */
+  static Set<Var> getRejectedUnbound(Expr condition) {
+    if (condition instanceof E_Bound) {
+      return getFailingUnbound(((E_Bound) condition).getArg());
+    }
+
+    if (condition instanceof E_LogicalAnd) {
+      Set<Var> rejected = getRejectedUnbound(((E_LogicalAnd) condition).getArg1());
+      rejected.addAll(getRejectedUnbound(((E_LogicalAnd) condition).getArg2()));
+      return rejected;
+    }
+
+    if (condition instanceof E_LogicalOr) {
+      Set<Var> rejected = getRejectedUnbound(((E_LogicalOr) condition).getArg1());
+      rejected.retainAll(getRejectedUnbound(((E_LogicalOr) condition).getArg2()));
+      return rejected;
+    }
+
+    // The negation of false is true, but the negation of an error is still an error
+    if (condition instanceof E_LogicalNot) {
+      return getFailingUnbound(((E_LogicalNot) condition).getArg());
+    }
+
+    return getFailingUnbound(condition);
+  }
+
+  /**
+   * Returns the variables that make an expression an error when unbound. Errors go through most functions, except
+   * for the ones that test whether their arguments are bound or do not always evaluate all of them.
+   */
+  private static Set<Var> getFailingUnbound(Expr expr) {
+    Set<Var> failing = new HashSet<>();
+
+    if (expr.isVariable()) {
+      failing.add(expr.asVar());
+    } else if (expr instanceof E_OneOfBase) {
+      failing.addAll(getFailingUnbound(((E_OneOfBase) expr).getLHS()));
+    } else if (expr instanceof ExprFunction && !(expr instanceof E_Bound || expr instanceof E_LogicalAnd
+        || expr instanceof E_LogicalOr || expr instanceof E_Coalesce || expr instanceof E_Conditional
+        || expr instanceof ExprFunctionOp)) {
+      for (Expr arg : ((ExprFunction) expr).getArgs()) {
+        failing.addAll(getFailingUnbound(arg));
+      }
+    }
+
+    return failing;
+  }
+
+  /**
+   * Returns a copy of an expression where a variable is replaced by another one.
+   */
+  static Expr rename(Expr expr, Var from, Var to) {
+    return ExprTransformer.transform(new ExprTransformCopy() {
+      @Override
+      public Expr transform(ExprVar exprVar) {
+        return exprVar.asVar().equals(from) ? new ExprVar(to) : exprVar;
+      }
+    }, expr);
+  }
+
+  private Expr join(List<RexNode> operands, BinaryOperator<Expr> operator) {
+    Expr joined = null;
+    for (RexNode operand : operands) {
+      Expr expression = translate(operand);
+      if (expression == null) {
+        return null;
+      }
+
+      joined = joined == null ? expression : operator.apply(joined, expression);
+    }
+
+    return joined;
+  }
+
+  private Expr binary(List<RexNode> operands, BinaryOperator<Expr> operator) {
+    return operands.size() == 2 ? join(operands, operator) : null;
+  }
+
+  // BOUND only accepts a variable, so conditions on the nulls of aggregates are left to Calcite
+  private Expr bound(RexNode node, boolean bound) {
+    Expr operand = translate(node);
+    if (operand == null || !operand.isVariable() || operand.getVarName().startsWith(AGGREGATE)) {
+      return null;
+    }
+
+    return bound ? new E_Bound(operand) : new E_LogicalNot(new E_Bound(operand));
+  }
+
+  /**
+   * Translates a LIKE pattern to the simplest string function that matches it, falling back to a regular
+   * expression when the pattern has single character wildcards or wildcards in the middle.
+   */
+  private Expr like(RexCall call) {
+    List<RexNode> operands = call.getOperands();
+    // Patterns with an ESCAPE clause are left to Calcite
+    if (operands.size() != 2 || !(operands.get(1) instanceof RexLiteral)
+        || ((RexLiteral) operands.get(1)).isNull()) {
+      return null;
+    }
+
+    Expr operand = translate(operands.get(0));
+    if (operand == null) {
+      return null;
+    }
+
+    String pattern = ((RexLiteral) operands.get(1)).getValueAs(String.class);
+    Expr str = new E_Str(operand);
+    Expr expression;
+
+    String fixed = pattern;
+    boolean leading = fixed.startsWith("%");
+    if (leading) {
+      fixed = fixed.substring(1);
+    }
+    boolean trailing = fixed.endsWith("%");
+    if (trailing) {
+      fixed = fixed.substring(0, fixed.length() - 1);
+    }
+
+    if (fixed.contains("%") || fixed.contains("_")) {
+      StringBuilder regex = new StringBuilder("^");
+      for (char c : pattern.toCharArray()) {
+        if (c == '%') {
+          regex.append(".*");
+        } else if (c == '_') {
+          regex.append('.');
+        } else if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+          regex.append('\\').append(c);
+        } else {
+          regex.append(c);
+        }
+      }
+
+      expression = new E_Regex(str, regex.append('$').toString(), "s");
+    } else if (leading && trailing) {
+      expression = new E_StrContains(str, NodeValue.makeString(fixed));
+    } else if (leading) {
+      expression = new E_StrEndsWith(str, NodeValue.makeString(fixed));
+    } else if (trailing) {
+      expression = new E_StrStartsWith(str, NodeValue.makeString(fixed));
+    } else {
+      expression = new E_Equals(str, NodeValue.makeString(fixed));
+    }
+
+    if (call.getOperator() instanceof SqlLikeOperator && ((SqlLikeOperator) call.getOperator()).isNegated()) {
+      return new E_LogicalNot(expression);
+    }
+
+    return expression;
+  }
+
+  /**
+   * Translates a search argument, i.e. a set of points and ranges such as the ones of IN and BETWEEN.
+   */
+  private Expr search(List<RexNode> operands) {
+    Expr operand = translate(operands.get(0));
+    if (operand == null || !(operands.get(1) instanceof RexLiteral)) {
+      return null;
+    }
+
+    Sarg<?> sarg = ((RexLiteral) operands.get(1)).getValueAs(Sarg.class);
+    Expr expression;
+
+    if (sarg.isPoints()) {
+      expression = points(operand, sarg.rangeSet, false);
+    } else if (sarg.isComplementedPoints()) {
+      expression = points(operand, sarg.rangeSet.complement(), true);
+    } else {
+      expression = null;
+      for (Range<?> range : sarg.rangeSet.asRanges()) {
+        List<Expr> bounds = new ArrayList<>();
+        if (range.hasLowerBound()) {
+          Expr lower = value(range.lowerEndpoint());
+          if (lower == null) {
+            return null;
+          }
+          bounds.add(range.lowerBoundType() == BoundType.CLOSED
+              ? new E_GreaterThanOrEqual(operand, lower)
+              : new E_GreaterThan(operand, lower));
+        }
+        if (range.hasUpperBound()) {
+          Expr upper = value(range.upperEndpoint());
+          if (upper == null) {
+            return null;
+          }
+          bounds.add(range.upperBoundType() == BoundType.CLOSED
+              ? new E_LessThanOrEqual(operand, upper)
+              : new E_LessThan(operand, upper));
+        }
+
+        expression = expression == null ? and(bounds) : new E_LogicalOr(expression, and(bounds));
+      }
+
+      if (expression == null) {
+        expression = NodeValue.FALSE;
+      }
+    }
+
+    if (expression == null) {
+      return null;
+    }
+
+    if (sarg.nullAs == RexUnknownAs.TRUE) {
+      Expr isNull = bound(operands.get(0), false);
+      return isNull == null ? null : new E_LogicalOr(expression, isNull);
+    }
+
+    return expression;
+  }
+
+  private static Expr points(Expr operand, RangeSet<?> rangeSet, boolean negated) {
+    ExprList values = new ExprList();
+    for (Range<?> range : rangeSet.asRanges()) {
+      Expr value = value(range.lowerEndpoint());
+      if (value == null) {
+        return null;
+      }
+
+      values.add(value);
+    }
+
+    if (values.size() == 1) {
+      return negated ? new E_NotEquals(operand, values.get(0)) : new E_Equals(operand, values.get(0));
+    }
+
+    return negated ? new E_NotOneOf(operand, values) : new E_OneOf(operand, values);
+  }
+
+  // Casts between types that SPARQL compares in the same way are ignored, the others are left to Calcite
+  private Expr cast(RexCall call) {
+    SqlTypeName from = call.getOperands().get(0).getType().getSqlTypeName();
+    SqlTypeName to = call.getType().getSqlTypeName();
+
+    boolean sameFamily = from.getFamily() == SqlTypeFamily.CHARACTER && to.getFamily() == SqlTypeFamily.CHARACTER
+        || SqlTypeName.INT_TYPES.contains(from) && SqlTypeName.INT_TYPES.contains(to)
+        || SqlTypeName.NUMERIC_TYPES.contains(from) && SqlTypeName.APPROX_TYPES.contains(to);
+
+    return sameFamily ? translate(call.getOperands().get(0)) : null;
+  }
+
+  /**
+   * Returns the SPARQL literal of a value of a Calcite literal or search argument, or null if it has no SPARQL
+   * equivalent.
+   */
+  private static Expr value(Comparable<?> value) {
+    if (value instanceof NlsString) {
+      return NodeValue.makeString(((NlsString) value).getValue());
+    } else if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal) value;
+      return decimal.scale() <= 0 ? NodeValue.makeInteger(decimal.toBigInteger()) : NodeValue.makeDecimal(decimal);
+    } else if (value instanceof Boolean) {
+      return NodeValue.makeBoolean((Boolean) value);
+    } else if (value instanceof DateString) {
+      return NodeValue.makeDate(value.toString());
+    } else if (value instanceof TimestampString) {
+      return NodeValue.makeDateTime(value.toString().replace(' ', 'T'));
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.calcite.plan.Convention;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelRule;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.tools.RelBuilderFactory;
+import org.apache.jena.sparql.expr.Expr;
+
+/**
+ * Splits a filter whose condition can only be partly evaluated by the endpoint into a filter of a SPARQL convention
+ * with the conditions that can, and a filter with the other conditions above it, which is evaluated by Calcite.
+ * Filters that are fully supported are converted by the filter rule of the convention instead.
+ */
+public class SparqlFilterSplitRule extends RelRule<SparqlFilterSplitRule.Config> {
+  protected SparqlFilterSplitRule(Config config) {
+    super(config);
+  }
+
+  /**
+   * Creates the rule for a SPARQL convention, given the constructor of its filters.
+   */
+  static SparqlFilterSplitRule create(Convention convention, FilterFactory filterFactory) {
+    return new Config(convention, filterFactory, RelFactories.LOGICAL_BUILDER,
+        "SparqlFilterSplitRule(" + convention + ")",
+        b -> b.operand(LogicalFilter.class)
+            .predicate(filter -> !SparqlRels.isLimited(filter.getInput()))
+            .anyInputs())
+        .toRule();
+  }
+
+  @Override
+  public void onMatch(RelOptRuleCall call) {
+    final LogicalFilter filter = call.rel(0);
+    final List<RexNode> supported = new ArrayList<>();
+    final List<Expr> translated = new ArrayList<>();
+    final List<RexNode> unsupported = new ArrayList<>();
+
+    for (RexNode condition : RelOptUtil.conjunctions(filter.getCondition())) {
+      Expr expression = SparqlExpressions.translate(condition, filter.getInput());
+      if (expression != null) {
+        supported.add(condition);
+        translated.add(expression);
+      } else {
+        unsupported.add(condition);
+      }
+    }
+
+    if (supported.isEmpty() || unsupported.isEmpty()) {
+      return;
+    }
+
+    final Convention convention = config.convention;
+    final RexBuilder rexBuilder = filter.getCluster().getRexBuilder();
+    final RelNode pushed = config.filterFactory.create(filter.getCluster(), filter.getTraitSet().replace(convention),
+        convert(filter.getInput(), convention), RexUtil.composeConjunction(rexBuilder, supported),
+        SparqlExpressions.and(translated));
+
+    call.transformTo(LogicalFilter.create(pushed, RexUtil.composeConjunction(rexBuilder, unsupported)));
+  }
+
+  /**
+   * Constructor of the filters of a SPARQL convention, given their condition and its translation.
+   */
+  interface FilterFactory {
+    RelNode create(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RexNode condition, Expr filter);
+  }
+
+  /**
+   * Configuration of the rule, i.e. the SPARQL convention of the pushed filters and their constructor.
+   */
+  public static final class Config implements RelRule.Config {
+    private final Convention convention;
+    private final FilterFactory filterFactory;
+    private final RelBuilderFactory relBuilderFactory;
+    private final String description;
+    private final OperandTransform operandSupplier;
+
+    private Config(Convention convention, FilterFactory filterFactory, RelBuilderFactory relBuilderFactory,
+                   String description, OperandTransform operandSupplier) {
+      this.convention = convention;
+      this.filterFactory = filterFactory;
+      this.relBuilderFactory = relBuilderFactory;
+      this.description = description;
+      this.operandSupplier = operandSupplier;
+    }
+
+    @Override
+    public SparqlFilterSplitRule toRule() {
+      return new SparqlFilterSplitRule(this);
+    }
+
+    @Override
+    public RelBuilderFactory relBuilderFactory() {
+      return relBuilderFactory;
+    }
+
+    @Override
+    public Config withRelBuilderFactory(RelBuilderFactory relBuilderFactory) {
+      return new Config(convention, filterFactory, relBuilderFactory, description, operandSupplier);
+    }
+
+    @Override
+    public String description() {
+      return description;
+    }
+
+    @Override
+    public Config withDescription(String description) {
+      return new Config(convention, filterFactory, relBuilderFactory, description, operandSupplier);
+    }
+
+    @Override
+    public OperandTransform operandSupplier() {
+      return operandSupplier;
+    }
+
+    @Override
+    public Config withOperandSupplier(OperandTransform operandSupplier) {
+      return new Config(convention, filterFactory, relBuilderFactory, description, operandSupplier);
+    }
+  }
+}
@@ -56,9 +56,10 @@ public class SparqlMappingTableScan extends TableScan implements SparqlClassRel
   @Override
   public void implement(Implementor implementor) {
     implementor.table = table;
-    implementor.props.addAll(tableMapping.getColumns().stream()
-                                         .map(item -> new Pair<String, String>(item.getName(), item.getProperty()))
-                                         .collect(Collectors.toList())
+    implementor.addScan(null, tableMapping.getColumns().stream()
+                                          .map(item -> new Pair<String, String>(item.getName(), item.getProperty()))
+                                          .collect(Collectors.toList()),
+        tableMapping.getColumnsMultiValued()
     );
   }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.jena.sparql.expr.Expr;
+
+/**
+ * Aggregate of property tables, implemented as a SPARQL query with GROUP BY and aggregate expressions, so that the
+ * endpoint returns one row per group.
+ */
+public class SparqlPropAggregate extends Aggregate implements SparqlPropRel {
+  public SparqlPropAggregate(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, ImmutableBitSet groupSet,
+                             List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+    super(cluster, traitSet, new ArrayList<>(), input, groupSet, groupSets, aggCalls);
+
+    assert getConvention() == SparqlPropRel.CONVENTION;
+  }
+
+  @Override
+  public Aggregate copy(RelTraitSet traitSet, RelNode input, ImmutableBitSet groupSet,
+                        List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+    return new SparqlPropAggregate(getCluster(), traitSet, input, groupSet, groupSets, aggCalls);
+  }
+
+  @Override
+  public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+    return SparqlRels.pushDownCost(super.computeSelfCost(planner, mq));
+  }
+
+  @Override
+  public void implement(Implementor implementor) {
+    implementor.visitChild(0, getInput());
+
+    List<Expr> expressions = new ArrayList<>();
+    for (AggregateCall call : getAggCallList()) {
+      expressions.add(SparqlAggregates.toSparql(this, call, implementor.joinSelect, implementor::allocAggregate));
+    }
+
+    implementor.aggregate(getGroupSet().asList(), expressions);
+  }
+}
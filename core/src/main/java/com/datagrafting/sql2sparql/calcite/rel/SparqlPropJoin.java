@@ -0,0 +1,66 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.util.ArrayList;
+
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.mapping.IntPair;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Inner equi-join of property tables, implemented as a single SPARQL query whose patterns share the variables of
+ * the joined columns.
+ */
+public class SparqlPropJoin extends Join implements SparqlPropRel {
+  public SparqlPropJoin(RelOptCluster cluster, RelTraitSet traitSet, RelNode left, RelNode right,
+                        RexNode condition, JoinRelType joinType) {
+    super(cluster, traitSet, new ArrayList<>(), left, right, condition, ImmutableSet.of(), joinType);
+
+    assert getConvention() == SparqlPropRel.CONVENTION;
+  }
+
+  @Override
+  public Join copy(RelTraitSet traitSet, RexNode conditionExpr, RelNode left, RelNode right,
+                   JoinRelType joinType, boolean semiJoinDone) {
+    return new SparqlPropJoin(getCluster(), traitSet, left, right, conditionExpr, joinType);
+  }
+
+  @Override
+  public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+    return SparqlRels.pushDownCost(super.computeSelfCost(planner, mq));
+  }
+
+  @Override
+  public void implement(Implementor implementor) {
+    implementor.visitChild(0, getLeft());
+    int leftFieldCount = implementor.joinSelect.size();
+    implementor.visitRight(getRight());
+
+    for (IntPair pair : analyzeCondition().pairs()) {
+      implementor.unify(pair.source, leftFieldCount + pair.target);
+    }
+  }
+}
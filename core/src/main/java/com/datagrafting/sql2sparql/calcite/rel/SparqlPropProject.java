@@ -56,13 +56,12 @@ public class SparqlPropProject extends Project implements SparqlPropRel {
   public void implement(Implementor implementor) {
     implementor.visitChild(0, getInput());
 
-    System.out.println(getProjects());
-    System.out.println(getNamedProjects());
-
+    List<Integer> projectIndices = new ArrayList<>();
     for (RexNode project : getProjects()) {
-      int projectIndex = ((RexInputRef) project).getIndex();
-      implementor.projects.add(projectIndex);
+      projectIndices.add(((RexInputRef) project).getIndex());
     }
+
+    implementor.project(projectIndices);
   }
 
   @Override
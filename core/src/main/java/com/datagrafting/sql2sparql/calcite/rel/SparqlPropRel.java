@@ -17,14 +17,30 @@ package com.datagrafting.sql2sparql.calcite.rel;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.rel.RelNode;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.SortCondition;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+
+import com.datagrafting.sql2sparql.calcite.SparqlTemplate;
 
 public interface SparqlPropRel extends RelNode {
   void implement(Implementor implementor);
@@ -35,69 +51,210 @@ public interface SparqlPropRel extends RelNode {
     public RelOptTable table;
     public Map<String, String> props = new HashMap<>();
     public int limit;
-    public List<String> joinSelect = new ArrayList<>();
-    public List<String> joinPattern = new ArrayList<>();
-    public Map<Integer, String> sortIndices = new HashMap<>();
-    public List<Integer> projects = new ArrayList<>();
-    public Map<Integer, String> filters = new HashMap<>();
+    public int offset;
+    // The SPARQL variable bound to each field of the rel being implemented, in order
+    public List<Var> joinSelect = new ArrayList<>();
+    // One triple pattern per scanned table, sharing the variables of the joined fields, and the graph it is in
+    public List<Triple> joinPattern = new ArrayList<>();
+    public List<Var> graphs = new ArrayList<>();
+    public List<SortCondition> orderBy = new ArrayList<>();
+    public List<Expr> filters = new ArrayList<>();
+    // Once the fields are aggregated, the group keys, the expression of each aggregate variable and the filters
+    // on the groups
+    public List<Var> groupBy = new ArrayList<>();
+    public Map<Var, Expr> aggregates = new LinkedHashMap<>();
+    public List<Expr> having = new ArrayList<>();
+    // The variable bound to each dynamic parameter, by the index of the parameter, in the order of the slots of the
+    // query template
+    public Map<Integer, Var> parameters = new LinkedHashMap<>();
+    // The query being built, which allocates the aggregators
+    private final Query query = new Query();
+    private boolean aggregated;
+    // Names of the variables used so far, shared with the implementor of the right input of a join
+    private Set<String> variables = new HashSet<>();
 
     public void visitChild(int ordinal, RelNode input) {
-      assert ordinal == 0;
+      // Only joins have more than one input
+      assert ordinal == 0 || ordinal == 1;
       ((SparqlPropRel) input).implement(this);
     }
 
-    public String getQuery() {
-      // No joins, simple select
-      if (joinSelect.isEmpty()) {
-        joinSelect.add("?s");
-        joinSelect.add("?o");
+    /**
+     * Adds the pattern of a property table, whose subject and object become the next two fields.
+     */
+    public void addScan(String tableName, String prop) {
+      Var subject = newVariable("s");
+      Var object = newVariable("o");
+
+      props.put(tableName, prop);
+      joinSelect.add(subject);
+      joinSelect.add(object);
+      joinPattern.add(Triple.create(subject, NodeFactory.createURI(prop), object));
+      graphs.add(newVariable("g"));
+    }
+
+    private Var newVariable(String name) {
+      return SparqlRels.newVariable(variables, name);
+    }
+
+    /**
+     * Adds a condition on the fields, which is a filter on the groups once the fields are aggregated.
+     */
+    public void addFilter(Expr condition) {
+      if (aggregated) {
+        having.add(condition);
       } else {
-        // TODO: refine join to prevent this?
-        // Remove duplicate selects (artifact from joins) without changing order
-        joinSelect = joinSelect.stream().distinct().collect(Collectors.toList());
+        filters.add(condition);
       }
+    }
 
-      List<String> select;
-      if (projects.isEmpty()) {
-        select = new ArrayList<>();
-        select.add("?s");
-        select.add("?o");
-      } else {
-        select = projects.stream()
-                         .sorted()
-                         .map(idx -> joinSelect.get(idx))
-                         .collect(Collectors.toList());
+    /**
+     * Sorts by a field, in the given {@link Query#ORDER_ASCENDING} or {@link Query#ORDER_DESCENDING} direction.
+     */
+    public void addSort(int index, int direction) {
+      orderBy.add(new SortCondition(getExpression(index), direction));
+    }
+
+    public Expr allocAggregate(Aggregator aggregator) {
+      return query.allocAggregate(aggregator);
+    }
+
+    /**
+     * Groups the fields by the given keys, which become the first fields, followed by one field for each aggregate
+     * expression.
+     */
+    public void aggregate(List<Integer> groupKeys, List<Expr> expressions) {
+      List<Var> aggregateFields = groupKeys.stream().map(joinSelect::get).collect(Collectors.toList());
+      groupBy = aggregateFields.stream().distinct().collect(Collectors.toList());
+
+      for (Expr expression : expressions) {
+        Var var = newVariable("agg");
+        aggregates.put(var, expression);
+        aggregateFields.add(var);
       }
 
-      StringBuilder orderBy = new StringBuilder();
-      for (Map.Entry<Integer, String> sort : sortIndices.entrySet()) {
-        orderBy.append(sort.getValue());
-        orderBy.append("(");
-        orderBy.append(select.get(sort.getKey()));
-        orderBy.append(")");
+      joinSelect = aggregateFields;
+      aggregated = true;
+    }
+
+    /**
+     * Returns the SPARQL expression of a field. Aggregate variables are only bound after the groups are filtered,
+     * and may not be selected at all, so filters and sorts refer to their expressions instead.
+     */
+    public Expr getExpression(int index) {
+      Var var = joinSelect.get(index);
+      Expr aggregate = aggregates.get(var);
+      return aggregate != null ? aggregate : new ExprVar(var);
+    }
+
+    /**
+     * Returns the SPARQL expression of a dynamic parameter, which is the variable bound to its slot.
+     */
+    public Expr getParameter(int index) {
+      return new ExprVar(parameters.computeIfAbsent(index, i -> newVariable("param" + i)));
+    }
+
+    public void project(List<Integer> indices) {
+      joinSelect = indices.stream().map(joinSelect::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Implements the right input of a join separately, so that its projections only see its own fields, and
+     * appends its fields and patterns to the ones of the left input.
+     */
+    public void visitRight(RelNode right) {
+      Implementor rightImplementor = new Implementor();
+      rightImplementor.variables = variables;
+      rightImplementor.parameters = parameters;
+      rightImplementor.visitChild(1, right);
+
+      if (table == null) {
+        table = rightImplementor.table;
+      }
+
+      props.putAll(rightImplementor.props);
+      joinSelect.addAll(rightImplementor.joinSelect);
+      joinPattern.addAll(rightImplementor.joinPattern);
+      graphs.addAll(rightImplementor.graphs);
+      filters.addAll(rightImplementor.filters);
+    }
+
+    /**
+     * Makes two fields share the same variable, so that the endpoint joins their patterns.
+     */
+    public void unify(int leftIndex, int rightIndex) {
+      Var from = joinSelect.get(rightIndex);
+      Var to = joinSelect.get(leftIndex);
+      if (from.equals(to)) {
+        return;
+      }
+
+      joinSelect = joinSelect.stream().map(var -> var.equals(from) ? to : var).collect(Collectors.toList());
+      joinPattern = joinPattern.stream()
+                               .map(triple -> Triple.create(
+                                   triple.getSubject().equals(from) ? to : triple.getSubject(),
+                                   triple.getPredicate(),
+                                   triple.getObject().equals(from) ? to : triple.getObject()))
+                               .collect(Collectors.toList());
+      filters = filters.stream()
+                       .map(filter -> SparqlExpressions.rename(filter, from, to))
+                       .collect(Collectors.toList());
+    }
+
+    /**
+     * Builds the query of the implemented rels. Fields bound to the same variable (e.g. both sides of a join) are
+     * selected again under a new name, so that there is still one result column per field.
+     */
+    public Query getQuery() {
+      if (query.isSelectType()) {
+        return query;
+      }
+
+      query.setQuerySelectType();
+
+      Set<Var> selected = new HashSet<>();
+      for (int i = 0; i < joinSelect.size(); i++) {
+        Var var = joinSelect.get(i);
+        if (!selected.add(var)) {
+          query.addResultVar(Var.alloc(var.getVarName() + "_" + i), new ExprVar(var));
+        } else if (aggregates.containsKey(var)) {
+          query.addResultVar(var, aggregates.get(var));
+        } else {
+          query.addResultVar(var);
+        }
+      }
+
+      ElementGroup pattern = new ElementGroup();
+      if (!parameters.isEmpty()) {
+        pattern.addElement(SparqlTemplate.values(parameters.values()));
+      }
+      for (int i = 0; i < joinPattern.size(); i++) {
+        ElementPathBlock block = new ElementPathBlock();
+        block.addTriple(joinPattern.get(i));
+        pattern.addElement(new ElementNamedGraph(graphs.get(i), block));
       }
+      if (!filters.isEmpty()) {
+        pattern.addElementFilter(new ElementFilter(SparqlExpressions.and(filters)));
+      }
+      query.setQueryPattern(pattern);
 
-      StringBuilder filterClause = new StringBuilder();
-      for (Map.Entry<Integer, String> filter : filters.entrySet()) {
-        filterClause.append(filter.getValue().replace(SparqlPropFilter.PLACEHOLDER, joinSelect.get(filter.getKey())));
+      for (Var var : groupBy) {
+        query.addGroupBy(var);
+      }
+      if (!having.isEmpty()) {
+        query.addHavingCondition(SparqlExpressions.and(having));
+      }
+      for (SortCondition condition : orderBy) {
+        query.addOrderBy(condition);
+      }
+      if (limit > 0) {
+        query.setLimit(limit);
+      }
+      if (offset > 0) {
+        query.setOffset(offset);
       }
 
-      return String.format(""
-              + "SELECT %s\n"
-              + "WHERE {\n"
-              + "  GRAPH ?g {\n"
-              + "    %s\n"
-              + "  }\n"
-              + "%s"
-              + "}\n"
-              + "%s\n"
-              + "%s",
-          String.join(" ", select),
-          joinPattern.isEmpty() ? "?s <" + props.values().toArray()[0] + "> ?o ." : String.join(" . ", new LinkedHashSet<>(joinPattern)),
-          filterClause.length() > 0 ? "FILTER (" + filterClause + ")" : "",
-          orderBy.length() > 0 ? "ORDER BY " + orderBy.toString() : "",
-          limit > 0 ? "LIMIT " + limit : ""
-      );
+      return query;
     }
   }
 }
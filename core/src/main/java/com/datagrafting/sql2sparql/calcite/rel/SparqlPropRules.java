@@ -17,24 +17,39 @@ package com.datagrafting.sql2sparql.calcite.rel;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.apache.calcite.plan.Convention;
 import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.plan.RelOptRuleCall;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.convert.ConverterRule;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.logical.LogicalAggregate;
 import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
 import org.apache.calcite.rel.logical.LogicalProject;
 import org.apache.calcite.rel.logical.LogicalSort;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.jena.sparql.expr.Expr;
 
 public class SparqlPropRules {
   public static final List<RelOptRule> RULES = Arrays.asList(
       SparqlSortRule.INSTANCE,
       SparqlProjectRule.INSTANCE,
-      SparqlFilterRule.INSTANCE
+      SparqlFilterRule.INSTANCE,
+      SparqlJoinRule.INSTANCE,
+      SparqlAggregateRule.INSTANCE,
+      SparqlFilterSplitRule.create(SparqlPropRel.CONVENTION, SparqlPropFilter::new)
   );
 
+  // Joins and aggregates are merged into the patterns of the scans of property tables
+  private static final Predicate<RelNode> IS_SCAN = SparqlPropTableScan.class::isInstance;
+
   private static class SparqlSortRule extends ConverterRule {
     private static final SparqlSortRule INSTANCE = Config.INSTANCE
         .withConversion(LogicalSort.class, Convention.NONE,
@@ -46,6 +61,16 @@ public class SparqlPropRules {
       super(config);
     }
 
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalSort sort = call.rel(0);
+
+      // A limit or offset given by a dynamic parameter is left to Calcite
+      return !SparqlRels.isLimited(sort.getInput())
+          && (sort.fetch == null || sort.fetch instanceof RexLiteral)
+          && (sort.offset == null || sort.offset instanceof RexLiteral);
+    }
+
     @Override
     public RelNode convert(RelNode rel) {
       final LogicalSort sort = (LogicalSort) rel;
@@ -54,12 +79,6 @@ public class SparqlPropRules {
       RexNode offset = sort.offset;
       RexNode fetch = sort.fetch;
 
-//            System.out.println("Sort: " + sort);
-//            System.out.println("Sort input: " + sort.getInput());
-//            System.out.println("Sort collation: " + sort.getCollation());
-//            System.out.println("Sort offset: " + offset);
-//            System.out.println("Sort fetch: " + fetch);
-
       return new SparqlPropSort(sort.getCluster(), traitSet,
           convert(input, input.getTraitSet().replace(out)), sort.getCollation(), offset, fetch);
     }
@@ -76,6 +95,14 @@ public class SparqlPropRules {
       super(config);
     }
 
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalProject project = call.rel(0);
+
+      // Expressions are computed by Calcite
+      return project.getProjects().stream().allMatch(expr -> expr instanceof RexInputRef);
+    }
+
     @Override
     public RelNode convert(RelNode rel) {
       final LogicalProject project = (LogicalProject) rel;
@@ -98,13 +125,90 @@ public class SparqlPropRules {
       super(config);
     }
 
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalFilter filter = call.rel(0);
+
+      return !SparqlRels.isLimited(filter.getInput());
+    }
+
     @Override
     public RelNode convert(RelNode rel) {
       final LogicalFilter filter = (LogicalFilter) rel;
       final RelTraitSet traitSet = filter.getTraitSet().replace(SparqlPropRel.CONVENTION);
 
+      // Conditions that the endpoint cannot evaluate are left to Calcite
+      Expr condition = SparqlExpressions.translate(filter.getCondition(), filter.getInput());
+      if (condition == null) {
+        return null;
+      }
+
       return new SparqlPropFilter(rel.getCluster(), traitSet,
-          convert(filter.getInput(), SparqlPropRel.CONVENTION), filter.getCondition());
+          convert(filter.getInput(), SparqlPropRel.CONVENTION), filter.getCondition(), condition);
+    }
+  }
+
+  private static class SparqlJoinRule extends ConverterRule {
+    private static final SparqlJoinRule INSTANCE = Config.INSTANCE
+        .withConversion(LogicalJoin.class, Convention.NONE,
+            SparqlPropRel.CONVENTION, "SparqlJoinRule")
+        .withRuleFactory(SparqlJoinRule::new)
+        .toRule(SparqlJoinRule.class);
+
+    protected SparqlJoinRule(Config config) {
+      super(config);
+    }
+
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalJoin join = call.rel(0);
+      final JoinInfo joinInfo = join.analyzeCondition();
+
+      return join.getJoinType() == JoinRelType.INNER
+          && joinInfo.isEqui()
+          && !joinInfo.pairs().isEmpty()
+          && SparqlRels.isPattern(join.getLeft(), IS_SCAN)
+          && SparqlRels.isPattern(join.getRight(), IS_SCAN);
+    }
+
+    @Override
+    public RelNode convert(RelNode rel) {
+      final LogicalJoin join = (LogicalJoin) rel;
+      final RelTraitSet traitSet = join.getTraitSet().replace(SparqlPropRel.CONVENTION);
+
+      return new SparqlPropJoin(join.getCluster(), traitSet,
+          convert(join.getLeft(), SparqlPropRel.CONVENTION),
+          convert(join.getRight(), SparqlPropRel.CONVENTION),
+          join.getCondition(), join.getJoinType());
+    }
+  }
+
+  private static class SparqlAggregateRule extends ConverterRule {
+    private static final SparqlAggregateRule INSTANCE = Config.INSTANCE
+        .withConversion(LogicalAggregate.class, Convention.NONE,
+            SparqlPropRel.CONVENTION, "SparqlAggregateRule")
+        .withRuleFactory(SparqlAggregateRule::new)
+        .toRule(SparqlAggregateRule.class);
+
+    protected SparqlAggregateRule(Config config) {
+      super(config);
+    }
+
+    @Override
+    public boolean matches(RelOptRuleCall call) {
+      final LogicalAggregate aggregate = call.rel(0);
+
+      return SparqlAggregates.isSupported(aggregate) && SparqlRels.isPattern(aggregate.getInput(), IS_SCAN);
+    }
+
+    @Override
+    public RelNode convert(RelNode rel) {
+      final LogicalAggregate aggregate = (LogicalAggregate) rel;
+      final RelTraitSet traitSet = aggregate.getTraitSet().replace(SparqlPropRel.CONVENTION);
+
+      return new SparqlPropAggregate(aggregate.getCluster(), traitSet,
+          convert(aggregate.getInput(), SparqlPropRel.CONVENTION),
+          aggregate.getGroupSet(), aggregate.getGroupSets(), aggregate.getAggCallList());
     }
   }
 }
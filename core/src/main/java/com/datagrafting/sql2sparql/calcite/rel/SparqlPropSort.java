@@ -27,6 +27,7 @@ import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.jena.query.Query;
 
 public class SparqlPropSort extends Sort implements SparqlPropRel {
   public SparqlPropSort(RelOptCluster cluster, RelTraitSet traitSet,
@@ -46,14 +47,16 @@ public class SparqlPropSort extends Sort implements SparqlPropRel {
   public void implement(Implementor implementor) {
     implementor.visitChild(0, getInput());
 
-    // TODO: add offset
     if (fetch != null) {
       implementor.limit = RexLiteral.intValue(fetch);
     }
+    if (offset != null) {
+      implementor.offset = RexLiteral.intValue(offset);
+    }
 
     for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
-      implementor.sortIndices.put(fieldCollation.getFieldIndex(),
-          fieldCollation.getDirection().isDescending() ? "DESC" : "ASC");
+      implementor.addSort(fieldCollation.getFieldIndex(),
+          fieldCollation.getDirection().isDescending() ? Query.ORDER_DESCENDING : Query.ORDER_ASCENDING);
     }
   }
 
@@ -54,6 +54,6 @@ public class SparqlPropTableScan extends TableScan implements SparqlPropRel {
   @Override
   public void implement(Implementor implementor) {
     implementor.table = table;
-    implementor.props.put(this.tableName, this.prop);
+    implementor.addScan(this.tableName, this.prop);
   }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.volcano.RelSubset;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.jena.sparql.core.Var;
+
+/**
+ * Checks on the inputs of the rels that the endpoint evaluates, their costs and the variables of their queries,
+ * shared by the class and property conventions.
+ */
+final class SparqlRels {
+  // Much cheaper than fetching every input row and evaluating the rel locally
+  private static final double PUSH_DOWN_FACTOR = 0.1;
+  private static final Pattern INVALID_VARIABLE_CHARS = Pattern.compile("[^A-Za-z0-9_]");
+
+  private SparqlRels() {
+  }
+
+  /**
+   * Returns a variable named after a column or role that is not used yet in a query, adding it to the used ones,
+   * e.g. ?s for the first table and ?s_1 for the second one.
+   */
+  static Var newVariable(Set<String> variables, String name) {
+    String base = INVALID_VARIABLE_CHARS.matcher(name).replaceAll("_");
+    String var = base;
+    for (int i = 1; variables.contains(var); i++) {
+      var = base + "_" + i;
+    }
+
+    variables.add(var);
+    return Var.alloc(var);
+  }
+
+  /**
+   * Returns the cost of a filter, join or aggregate evaluated by the endpoint, given its cost when evaluated by
+   * Calcite.
+   */
+  static RelOptCost pushDownCost(RelOptCost cost) {
+    return cost == null ? null : cost.multiplyBy(PUSH_DOWN_FACTOR);
+  }
+
+  /**
+   * Checks whether the input of a join or aggregate can be merged into its patterns, i.e. it only scans, filters,
+   * projects or joins the tables of a convention. Sorts, limits and aggregates cannot be merged.
+   */
+  static boolean isPattern(RelNode rel, Predicate<RelNode> isScan) {
+    if (rel instanceof RelSubset) {
+      rel = ((RelSubset) rel).getOriginal();
+    }
+
+    if (isScan.test(rel)) {
+      return true;
+    } else if (rel instanceof Filter) {
+      return isPattern(((Filter) rel).getInput(), isScan);
+    } else if (rel instanceof Project) {
+      return ((Project) rel).getProjects().stream().allMatch(project -> project instanceof RexInputRef)
+          && isPattern(((Project) rel).getInput(), isScan);
+    } else if (rel instanceof Join) {
+      return ((Join) rel).getJoinType() == JoinRelType.INNER
+          && isPattern(((Join) rel).getLeft(), isScan)
+          && isPattern(((Join) rel).getRight(), isScan);
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks whether the rows of a rel are limited by a sort with a fetch or an offset, possibly below projections and
+   * filters. Sorting or filtering those rows again cannot be part of the same query, as SPARQL applies the limit
+   * after the filters and the sort.
+   */
+  static boolean isLimited(RelNode rel) {
+    if (rel instanceof RelSubset) {
+      rel = ((RelSubset) rel).getOriginal();
+    }
+
+    if (rel instanceof Sort) {
+      return ((Sort) rel).fetch != null || ((Sort) rel).offset != null || isLimited(((Sort) rel).getInput());
+    } else if (rel instanceof Filter) {
+      return isLimited(((Filter) rel).getInput());
+    } else if (rel instanceof Project) {
+      return isLimited(((Project) rel).getInput());
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns the fields of a rel that are the results of aggregate functions, possibly below projections, filters and
+   * sorts, or null if its fields are not aggregated.
+   */
+  static ImmutableBitSet getAggregates(RelNode rel) {
+    if (rel instanceof RelSubset) {
+      rel = ((RelSubset) rel).getOriginal();
+    }
+
+    if (rel instanceof Aggregate) {
+      return ImmutableBitSet.range(((Aggregate) rel).getGroupCount(), rel.getRowType().getFieldCount());
+    } else if (rel instanceof Filter || rel instanceof Sort) {
+      return getAggregates(rel.getInput(0));
+    } else if (rel instanceof Project) {
+      ImmutableBitSet aggregates = getAggregates(((Project) rel).getInput());
+      if (aggregates == null) {
+        return null;
+      }
+
+      // Computed expressions are not variables either
+      ImmutableBitSet.Builder projected = ImmutableBitSet.builder();
+      List<RexNode> projects = ((Project) rel).getProjects();
+      for (int i = 0; i < projects.size(); i++) {
+        if (!(projects.get(i) instanceof RexInputRef) || aggregates.get(((RexInputRef) projects.get(i)).getIndex())) {
+          projected.set(i);
+        }
+      }
+
+      return projected.build();
+    }
+
+    return null;
+  }
+}
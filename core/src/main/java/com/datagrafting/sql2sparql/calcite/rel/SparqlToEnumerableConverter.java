@@ -0,0 +1,138 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.calcite.rel;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.plan.ConventionTraitDef;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.convert.ConverterImpl;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.util.BuiltInMethod;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.datagrafting.sql2sparql.calcite.SparqlMethod;
+import com.datagrafting.sql2sparql.calcite.SparqlQueryable;
+import com.datagrafting.sql2sparql.calcite.SparqlTable;
+
+/**
+ * Converts the rels of a SPARQL convention to an enumerable that sends their query to the endpoint, whether they
+ * read class and mapping tables or property tables.
+ */
+public abstract class SparqlToEnumerableConverter extends ConverterImpl implements EnumerableRel {
+  protected SparqlToEnumerableConverter(RelOptCluster cluster, RelTraitSet traits, RelNode child) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, child);
+  }
+
+  /**
+   * Builds the SPARQL query of the input.
+   */
+  public abstract PushedQuery implementQuery();
+
+  @Override
+  public @Nullable RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+    RelOptCost cost = super.computeSelfCost(planner, mq);
+    if (cost == null) {
+      return null;
+    }
+    return cost.multiplyBy(0.1);
+  }
+
+  @Override
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    final BlockBuilder builder = new BlockBuilder();
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(), rowType,
+            pref.prefer(JavaRowFormat.ARRAY));
+    long start = System.nanoTime();
+    final PushedQuery query = implementQuery();
+
+    // The queries of joins are recorded against their first table
+    SparqlTable sparqlTable = query.getSparqlTable();
+    if (sparqlTable != null) {
+      sparqlTable.getMetrics().generated(sparqlTable.getTableName(), System.nanoTime() - start);
+    }
+
+    // Passed to the enumerator, so that it can pick the decoder of each column upfront
+    List<SqlTypeName> columnTypes = rowType.getFieldList().stream()
+                                           .map(field -> field.getType().getSqlTypeName())
+                                           .collect(Collectors.toList());
+
+    final Expression table =
+        builder.append("table",
+            query.table.getExpression(
+                SparqlQueryable.class));
+    Expression enumerable;
+    if (query.parameters.isEmpty()) {
+      enumerable =
+          builder.append("enumerable",
+              Expressions.call(table, SparqlMethod.SPARQL_QUERY.method, Expressions.constant(query.query),
+                  Expressions.constant(columnTypes)));
+    } else {
+      // The query is a template, whose slots are filled with the values of the parameters at every execution
+      List<Expression> parameters = query.parameters.stream()
+          .map(index -> Expressions.call(implementor.getRootExpression(), BuiltInMethod.DATA_CONTEXT_GET.method,
+              Expressions.constant("?" + index)))
+          .collect(Collectors.toList());
+      enumerable =
+          builder.append("enumerable",
+              Expressions.call(table, SparqlMethod.SPARQL_QUERY_TEMPLATE.method, Expressions.constant(query.query),
+                  Expressions.constant(columnTypes), Expressions.newArrayInit(Object.class, parameters)));
+    }
+    builder.add(
+        Expressions.return_(null, enumerable));
+    Hook.QUERY_PLAN.run(query.query);
+
+    return implementor.result(physType, builder.toBlock());
+  }
+
+  /**
+   * The SPARQL query of the input of a converter, with the table it is sent to.
+   */
+  public static class PushedQuery {
+    // The first table of the query, whose endpoint runs it
+    public final RelOptTable table;
+    public final String query;
+    // The indices of the dynamic parameters, in the order of the slots of the query template
+    public final List<Integer> parameters;
+
+    PushedQuery(RelOptTable table, String query, List<Integer> parameters) {
+      this.table = table;
+      this.query = query;
+      this.parameters = parameters;
+    }
+
+    public SparqlTable getSparqlTable() {
+      return table.unwrap(SparqlTable.class);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of JDBC connections to a SPARQL endpoint.
+ *
+ * <p>At most {@code maxSize} connections are handed out at the same time; callers that cannot get one within
+ * the borrow timeout get an {@link SQLException}. Connections that have been idle for longer than the idle
+ * timeout are closed on the next borrow or release, as long as at least {@code minSize} connections remain.
+ */
+public class SparqlConnectionPool {
+  public static final int DEFAULT_MIN_SIZE = 1;
+  public static final int DEFAULT_MAX_SIZE = 8;
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+  public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+
+  private final String url;
+  private final Properties info;
+  private final int minSize;
+  private final int maxSize;
+  private final long idleTimeoutMillis;
+  private final long borrowTimeoutMillis;
+
+  private final Semaphore permits;
+  // Most recently used connections are kept at the head
+  private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger openCount = new AtomicInteger();
+  private volatile boolean closed;
+
+  public SparqlConnectionPool(String url, Properties info, int minSize, int maxSize,
+                              long idleTimeoutMillis, long borrowTimeoutMillis) throws SQLException {
+    if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+      throw new IllegalArgumentException(
+          "Invalid pool size (min " + minSize + ", max " + maxSize + ")");
+    }
+
+    this.url = url;
+    this.info = info;
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.permits = new Semaphore(maxSize, true);
+
+    // Open the minimum number of connections upfront, so that an unreachable endpoint fails fast
+    for (int i = 0; i < minSize; i++) {
+      idle.addFirst(new IdleConnection(open()));
+    }
+  }
+
+  public Connection borrow() throws SQLException {
+    if (closed) {
+      throw new SQLException("Connection pool is closed");
+    }
+
+    try {
+      if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a connection to " + url);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection to " + url, e);
+    }
+
+    try {
+      evictIdle();
+
+      IdleConnection candidate;
+      while ((candidate = idle.pollFirst()) != null) {
+        if (!candidate.conn.isClosed()) {
+          return candidate.conn;
+        }
+
+        openCount.decrementAndGet();
+      }
+
+      return open();
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  public void release(Connection conn) {
+    if (closed) {
+      discard(conn);
+    } else {
+      idle.addFirst(new IdleConnection(conn));
+      evictIdle();
+    }
+
+    permits.release();
+  }
+
+  public int getOpenCount() {
+    return openCount.get();
+  }
+
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  public int getActiveCount() {
+    return maxSize - permits.availablePermits();
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public void close() throws SQLException {
+    closed = true;
+
+    IdleConnection candidate;
+    while ((candidate = idle.pollFirst()) != null) {
+      discard(candidate.conn);
+    }
+  }
+
+  private Connection open() throws SQLException {
+    Connection conn = DriverManager.getConnection(url, info);
+    openCount.incrementAndGet();
+    return conn;
+  }
+
+  private void discard(Connection conn) {
+    openCount.decrementAndGet();
+
+    try {
+      conn.close();
+    } catch (SQLException e) {
+      // Nothing useful can be done with a connection that cannot be closed
+    }
+  }
+
+  private void evictIdle() {
+    long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+
+    // The least recently used connections are at the tail
+    Iterator<IdleConnection> it = idle.descendingIterator();
+    while (it.hasNext() && openCount.get() > minSize) {
+      IdleConnection candidate = it.next();
+
+      if (candidate.lastUsed > deadline) {
+        break;
+      }
+
+      if (idle.removeLastOccurrence(candidate)) {
+        discard(candidate.conn);
+      }
+    }
+  }
+
+  private static class IdleConnection {
+    private final Connection conn;
+    private final long lastUsed;
+
+    private IdleConnection(Connection conn) {
+      this.conn = conn;
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+}
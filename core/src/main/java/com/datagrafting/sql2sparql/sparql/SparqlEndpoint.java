@@ -18,17 +18,23 @@ package com.datagrafting.sql2sparql.sparql;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.apache.calcite.util.Pair;
 import org.apache.jena.graph.Node;
@@ -37,15 +43,27 @@ import org.apache.jena.jdbc.JenaDriver;
 
 public class SparqlEndpoint {
   private Properties info;
-  private Connection conn;
+  private SparqlConnectionPool pool;
   private String url;
   private int compatibility;
+  private Executor executor;
+  private boolean ownsExecutor;
+  private boolean closed;
+  private final AtomicLong queryCount = new AtomicLong();
+  private final AtomicLong failedQueryCount = new AtomicLong();
+  private volatile SparqlMetrics metrics = SparqlMetrics.DISABLED;
 
   public SparqlEndpoint(String url) throws SQLException {
     this(url, JdbcCompatibility.LOW);
   }
 
   public SparqlEndpoint(String url, int compatibility) throws SQLException {
+    this(url, compatibility, SparqlConnectionPool.DEFAULT_MIN_SIZE, SparqlConnectionPool.DEFAULT_MAX_SIZE,
+        SparqlConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, SparqlConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS);
+  }
+
+  public SparqlEndpoint(String url, int compatibility, int minPoolSize, int maxPoolSize,
+                        long idleTimeoutMillis, long borrowTimeoutMillis) throws SQLException {
     this.url = url;
     this.compatibility = compatibility;
 
@@ -59,19 +77,147 @@ public class SparqlEndpoint {
     } catch (ClassNotFoundException e) {
       throw new RuntimeException("Class not found", e);
     }
-    conn = DriverManager.getConnection(url, info);
+    pool = new SparqlConnectionPool(url, info, minPoolSize, maxPoolSize, idleTimeoutMillis, borrowTimeoutMillis);
   }
 
+  /**
+   * Runs a query on a pooled connection. The returned result set must be passed to {@link #release(ResultSet)}
+   * once consumed, so that its statement is closed and its connection goes back to the pool.
+   */
   public ResultSet query(String queryString) throws SQLException {
+    return query(queryString, null);
+  }
+
+  /**
+   * Same as {@link #query(String)}, for a query that reads a table, whose name is recorded by the JFR events of
+   * the query (see {@link SparqlEvents}).
+   */
+  public ResultSet query(String queryString, String tableName) throws SQLException {
+    SparqlEvents.QueryEvent event = new SparqlEvents.QueryEvent();
+    event.begin();
+
+    Connection conn = pool.borrow();
+    Statement stmt = null;
+    boolean succeeded = false;
+    queryCount.incrementAndGet();
+
     try {
-      Statement stmt = conn.createStatement();
-      return stmt.executeQuery(queryString);
+      stmt = conn.createStatement();
+      ResultSet results = stmt.executeQuery(queryString);
+      succeeded = true;
+      return results;
     } catch (SQLException e) {
+      failedQueryCount.incrementAndGet();
+      closeQuietly(stmt);
+      pool.release(conn);
       throw new RuntimeException("SQL Exception", e);
+    } catch (RuntimeException e) {
+      failedQueryCount.incrementAndGet();
+      closeQuietly(stmt);
+      pool.release(conn);
+      throw e;
+    } finally {
+      event.commit(url, tableName, queryString, succeeded);
+    }
+  }
+
+  /**
+   * Runs a query on the endpoint executor without blocking the caller. As with {@link #query(String)}, the
+   * result set must be passed to {@link #release(ResultSet)} once consumed.
+   */
+  public CompletableFuture<ResultSet> queryAsync(String queryString) {
+    return queryAsync(queryString, null);
+  }
+
+  /**
+   * Same as {@link #queryAsync(String)}, for a query that reads a table (see {@link #query(String, String)}).
+   */
+  public CompletableFuture<ResultSet> queryAsync(String queryString, String tableName) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return query(queryString, tableName);
+      } catch (SQLException e) {
+        throw new CompletionException(e);
+      }
+    }, getExecutor());
+  }
+
+  public synchronized Executor getExecutor() {
+    if (executor == null) {
+      executor = SparqlExecutors.newExecutor(SparqlExecutors.CACHED, 0);
+      ownsExecutor = true;
+    }
+
+    return executor;
+  }
+
+  /**
+   * Sets the executor used by {@link #queryAsync(String)}, e.g. a virtual-thread-per-task executor. The caller
+   * remains responsible for shutting it down.
+   */
+  public void setExecutor(Executor executor) {
+    setExecutor(executor, false);
+  }
+
+  /**
+   * Same as {@link #setExecutor(Executor)}, where an {@code owned} executor is shut down when the endpoint is
+   * closed.
+   */
+  public synchronized void setExecutor(Executor executor, boolean owned) {
+    shutdownOwnedExecutor();
+    this.executor = executor;
+    this.ownsExecutor = owned;
+  }
+
+  private void shutdownOwnedExecutor() {
+    if (ownsExecutor && executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+
+  public void release(ResultSet results) throws SQLException {
+    Statement stmt = results.getStatement();
+
+    try {
+      results.close();
+    } finally {
+      if (stmt != null) {
+        Connection conn = stmt.getConnection();
+        closeQuietly(stmt);
+        pool.release(conn);
+      }
+    }
+  }
+
+  /**
+   * Releases the result set of a query sent with {@link #queryAsync(String)} that is no longer needed. The
+   * request cannot be cancelled, so its connection goes back to the pool once the results arrive.
+   */
+  public void release(CompletableFuture<ResultSet> pending) {
+    pending.thenAccept(results -> {
+      try {
+        release(results);
+      } catch (SQLException e) {
+        throw new CompletionException(e);
+      }
+    });
+  }
+
+  private static void closeQuietly(Statement stmt) {
+    if (stmt == null) {
+      return;
+    }
+
+    try {
+      stmt.close();
+    } catch (SQLException e) {
+      // The connection is still usable even if the statement could not be closed
     }
   }
 
   public Map<String, String> getProperties() throws SQLException {
+    SparqlEvents.ProbeEvent event = new SparqlEvents.ProbeEvent();
+    event.begin();
     Map<String, String> properties = new HashMap<>();
     ResultSet results = query(""
         + "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
@@ -84,17 +230,24 @@ public class SparqlEndpoint {
         + "}"
     );
 
-    while (results.next()) {
-      Node p = (Node) results.getObject("p");
-      assert p.isURI();
+    try {
+      while (results.next()) {
+        Node p = (Node) results.getObject("p");
+        assert p.isURI();
 
-      properties.put(p.getLocalName(), p.getURI());
+        properties.put(p.getLocalName(), p.getURI());
+      }
+    } finally {
+      release(results);
     }
 
+    event.commit(url, "properties", null, properties.size());
     return properties;
   }
 
   public Map<String, String> getClasses() throws SQLException {
+    SparqlEvents.ProbeEvent event = new SparqlEvents.ProbeEvent();
+    event.begin();
     Map<String, String> classes = new HashMap<>();
     ResultSet results = query(""
         + "SELECT DISTINCT ?cl\n"
@@ -105,17 +258,24 @@ public class SparqlEndpoint {
         + "}"
     );
 
-    while (results.next()) {
-      Node cl = (Node) results.getObject("cl");
-      assert cl.isURI();
+    try {
+      while (results.next()) {
+        Node cl = (Node) results.getObject("cl");
+        assert cl.isURI();
 
-      classes.put(cl.getLocalName(), cl.getURI());
+        classes.put(cl.getLocalName(), cl.getURI());
+      }
+    } finally {
+      release(results);
     }
 
+    event.commit(url, "classes", null, classes.size());
     return classes;
   }
 
   public Set<String> getObjectTypesForProperty(String prop, int limit) throws SQLException {
+    SparqlEvents.ProbeEvent event = new SparqlEvents.ProbeEvent();
+    event.begin();
     Set<String> objectTypes = new HashSet<>();
     ResultSet results = query(String.format(""
         + "SELECT DISTINCT ?o\n"
@@ -127,21 +287,84 @@ public class SparqlEndpoint {
         + "LIMIT %d", prop, limit)
     );
 
-    while (results.next()) {
-      Node o = (Node) results.getObject("o");
+    try {
+      while (results.next()) {
+        Node o = (Node) results.getObject("o");
+
+        if (o.isURI()) {
+          objectTypes.add(null);
+        } else {
+          objectTypes.add(o.getLiteralDatatypeURI());
+        }
+      }
+    } finally {
+      release(results);
+    }
+
+    event.commit(url, "object types", prop, objectTypes.size());
+    return objectTypes;
+  }
+
+  /**
+   * Batched version of {@link #getObjectTypesForProperty(String, int)}: samples up to {@code limit} distinct objects
+   * of each property within a single query, and returns the datatypes of the sampled objects by property.
+   */
+  public Map<String, Set<String>> getObjectTypesForProperties(Collection<String> props, int limit)
+      throws SQLException {
+    Map<String, Set<String>> objectTypes = new HashMap<>();
+    if (props.isEmpty()) {
+      return objectTypes;
+    }
+
+    SparqlEvents.ProbeEvent event = new SparqlEvents.ProbeEvent();
+    event.begin();
+
+    // One sampling subquery per property, so that each property keeps its own limit
+    String samples = props.stream()
+                          .distinct()
+                          .map(prop -> String.format(""
+                              + "  {\n"
+                              + "    SELECT DISTINCT (<%s> AS ?p) ?o\n"
+                              + "    WHERE {\n"
+                              + "      GRAPH ?g {\n"
+                              + "        ?s <%s> ?o\n"
+                              + "      }\n"
+                              + "    }\n"
+                              + "    LIMIT %d\n"
+                              + "  }", prop, prop, limit))
+                          .collect(Collectors.joining("\n  UNION\n"));
+
+    // The datatype of an IRI is unbound, and is returned as null
+    ResultSet results = query(""
+        + "SELECT DISTINCT ?p (DATATYPE(?o) AS ?dt)\n"
+        + "WHERE {\n"
+        + samples + "\n"
+        + "}"
+    );
+
+    try {
+      while (results.next()) {
+        Node p = (Node) results.getObject("p");
+        Node dt = (Node) results.getObject("dt");
 
-      if (o.isURI()) {
-        objectTypes.add(null);
-      } else {
-        objectTypes.add(o.getLiteralDatatypeURI());
+        objectTypes.computeIfAbsent(p.getURI(), key -> new HashSet<>())
+                   .add(dt == null ? null : dt.getURI());
       }
+    } finally {
+      release(results);
     }
 
+    // Only joined when recording
+    if (event.shouldCommit()) {
+      event.commit(url, "object types", String.join(" ", props), objectTypes.size());
+    }
     return objectTypes;
   }
 
   public List<Pair<String, String>> getPropertiesPerClass(String type, int limit)
       throws SQLException, URISyntaxException {
+    SparqlEvents.ProbeEvent event = new SparqlEvents.ProbeEvent();
+    event.begin();
     Set<String> propNames = new HashSet<>();
     List<Pair<String, String>> props = new ArrayList<>();
     ResultSet results = query(String.format(""
@@ -157,20 +380,25 @@ public class SparqlEndpoint {
         + "LIMIT %d", type, limit)
     );
 
-    while (results.next()) {
-      Node p = (Node) results.getObject("p");
-      String name = getNamespacedName(p);
-      String uri = p.getURI();
+    try {
+      while (results.next()) {
+        Node p = (Node) results.getObject("p");
+        String name = getNamespacedName(p);
+        String uri = p.getURI();
 
-      // Temporary hack to prevent similar property names to generate duplicate columns
-      if (propNames.contains(name)) {
-        name += "_0";
-      }
+        // Temporary hack to prevent similar property names to generate duplicate columns
+        if (propNames.contains(name)) {
+          name += "_0";
+        }
 
-      propNames.add(name);
-      props.add(new Pair<>(name, uri));
+        propNames.add(name);
+        props.add(new Pair<>(name, uri));
+      }
+    } finally {
+      release(results);
     }
 
+    event.commit(url, "class properties", type, props.size());
     return props;
   }
 
@@ -181,7 +409,54 @@ public class SparqlEndpoint {
     return domain + "_" + p.getLocalName();
   }
 
+  /**
+   * Returns the number of queries sent to the endpoint so far.
+   */
+  public long getQueryCount() {
+    return queryCount.get();
+  }
+
+  /**
+   * Returns the number of queries that the endpoint failed to run so far.
+   */
+  public long getFailedQueryCount() {
+    return failedQueryCount.get();
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public SparqlMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the metrics that record the queries run against the endpoint, which are closed together with it.
+   */
+  public void setMetrics(SparqlMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public SparqlConnectionPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Shuts down the executor if owned, unregisters the metrics and closes the pooled connections. Closing an
+   * endpoint again has no effect.
+   */
   public void close() throws SQLException {
-    conn.close();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+
+      closed = true;
+      shutdownOwnedExecutor();
+    }
+
+    metrics.close();
+    pool.close();
   }
 }
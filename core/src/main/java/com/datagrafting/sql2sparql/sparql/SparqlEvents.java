@@ -0,0 +1,149 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the requests sent to a SPARQL endpoint, so that their latency shows up in a
+ * recording next to the work done by Calcite. The events of a query share the hash of its text, which is only
+ * computed when an event is committed; when no recording is running, creating and committing an event costs
+ * next to nothing.
+ */
+public final class SparqlEvents {
+  private static final String CATEGORY = "SPARQL";
+
+  private SparqlEvents() {
+  }
+
+  /**
+   * Returns a short hash of a SPARQL query, which tells apart the events of different queries without recording
+   * their whole text.
+   */
+  public static String hash(String queryString) {
+    return queryString == null ? null : String.format("%08x", queryString.hashCode());
+  }
+
+  /**
+   * The fields shared by the events of a query.
+   */
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public abstract static class QueryEventBase extends Event {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Table")
+    @Description("Table read by the query, if any")
+    String table;
+
+    @Label("Query Hash")
+    @Description("Hash of the text of the SPARQL query")
+    String queryHash;
+
+    /**
+     * Commits the event if it is enabled and lasted longer than its threshold, filling in its fields first.
+     */
+    public void commit(String endpoint, String table, String queryString) {
+      if (shouldCommit()) {
+        this.endpoint = endpoint;
+        this.table = table;
+        this.queryHash = hash(queryString);
+        commit();
+      }
+    }
+  }
+
+  /**
+   * A query sent to the endpoint, lasting until the endpoint has answered (or failed).
+   */
+  @Name("com.datagrafting.sql2sparql.Query")
+  @Label("SPARQL Query")
+  @Description("A SPARQL query sent to the endpoint, until its response starts")
+  public static class QueryEvent extends QueryEventBase {
+    @Label("Succeeded")
+    boolean succeeded;
+
+    public void commit(String endpoint, String table, String queryString, boolean succeeded) {
+      this.succeeded = succeeded;
+      commit(endpoint, table, queryString);
+    }
+  }
+
+  /**
+   * The results of a query, from the moment they are returned by the endpoint until their first row is read.
+   */
+  @Name("com.datagrafting.sql2sparql.FirstRow")
+  @Label("SPARQL First Row")
+  @Description("The results of a SPARQL query, until their first row is read")
+  public static class FirstRowEvent extends QueryEventBase {
+  }
+
+  /**
+   * The results of a query, from the moment they are returned by the endpoint until their last row is read.
+   */
+  @Name("com.datagrafting.sql2sparql.Exhausted")
+  @Label("SPARQL Results Exhausted")
+  @Description("The results of a SPARQL query, until their last row is read")
+  public static class ExhaustedEvent extends QueryEventBase {
+    @Label("Rows")
+    long rows;
+
+    public void commit(String endpoint, String table, String queryString, long rows) {
+      this.rows = rows;
+      commit(endpoint, table, queryString);
+    }
+  }
+
+  /**
+   * A query that discovers the tables or columns of a schema, or samples the types of its columns.
+   */
+  @Name("com.datagrafting.sql2sparql.SchemaProbe")
+  @Label("SPARQL Schema Probe")
+  @Description("A SPARQL query that discovers the tables, columns or column types of a schema")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class ProbeEvent extends Event {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Kind")
+    @Description("What is probed: properties, classes, class properties or object types")
+    String kind;
+
+    @Label("Target")
+    @Description("Class or properties that are probed, if any")
+    String target;
+
+    @Label("Results")
+    long results;
+
+    public void commit(String endpoint, String kind, String target, long results) {
+      if (shouldCommit()) {
+        this.endpoint = endpoint;
+        this.kind = kind;
+        this.target = target;
+        this.results = results;
+        commit();
+      }
+    }
+  }
+}
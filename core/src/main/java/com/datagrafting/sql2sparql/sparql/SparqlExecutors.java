@@ -0,0 +1,77 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used to run SPARQL queries asynchronously.
+ */
+public class SparqlExecutors {
+  public static final String CACHED = "cached";
+  public static final String FIXED = "fixed";
+  public static final String VIRTUAL = "virtual";
+
+  private SparqlExecutors() {
+  }
+
+  /**
+   * Creates an executor of the given type: {@code cached} (an unbounded pool of daemon threads),
+   * {@code fixed} (a pool of {@code threads} daemon threads) or {@code virtual} (one virtual thread per task,
+   * only available on Java 21 or later).
+   */
+  public static ExecutorService newExecutor(String type, int threads) {
+    switch (type.toLowerCase(Locale.ROOT)) {
+      case CACHED:
+        return Executors.newCachedThreadPool(daemonThreadFactory());
+
+      case FIXED:
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory());
+
+      case VIRTUAL:
+        return newVirtualThreadPerTaskExecutor();
+
+      default:
+        throw new RuntimeException("Unsupported executor type " + type);
+    }
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    // Looked up reflectively, so that the library can still be built and run on older Java versions
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException("Virtual threads require Java 21 or later", e);
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw new RuntimeException("Cannot create virtual thread executor", e);
+    }
+  }
+
+  private static ThreadFactory daemonThreadFactory() {
+    AtomicInteger count = new AtomicInteger();
+
+    return runnable -> {
+      Thread thread = new Thread(runnable, "sparql-query-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Exposes the metrics of a schema as MBeans of the platform MBean server: one named
+ * {@code com.datagrafting.sql2sparql:type=Schema,name="<schema>",id=<id>} with the planning times and the counters
+ * of its endpoint, and one named
+ * {@code com.datagrafting.sql2sparql:type=Table,schema="<schema>",id=<id>,name="<table>"} for each table that has
+ * been queried. Every connection creates its own schema, so the id tells apart the schemas
+ * with the same name.
+ */
+public class SparqlJmxMetrics implements SparqlMetrics {
+  public static final String DOMAIN = "com.datagrafting.sql2sparql";
+
+  private static final AtomicInteger IDS = new AtomicInteger();
+
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+  private final String prefix;
+  private final ObjectName schemaName;
+  private final SparqlEndpoint endpoint;
+  private final Timer planning = new Timer();
+  private final Map<String, TableStats> tables = new ConcurrentHashMap<>();
+
+  public SparqlJmxMetrics(String schemaName, SparqlEndpoint endpoint) {
+    int id = IDS.incrementAndGet();
+    this.prefix = DOMAIN + ":type=Table,schema=" + ObjectName.quote(schemaName) + ",id=" + id + ",name=";
+    this.schemaName = objectName(DOMAIN + ":type=Schema,name=" + ObjectName.quote(schemaName) + ",id=" + id);
+    this.endpoint = endpoint;
+
+    register(this.schemaName, new StandardMBean(new SchemaStats(), SchemaStatsMBean.class, false));
+  }
+
+  public ObjectName getSchemaName() {
+    return schemaName;
+  }
+
+  @Override
+  public void planned(long nanos) {
+    planning.record(nanos);
+  }
+
+  @Override
+  public void generated(String table, long nanos) {
+    getTable(table).generation.record(nanos);
+  }
+
+  @Override
+  public void queried(String table, long firstRowNanos, long fetchNanos, long rows) {
+    TableStats stats = getTable(table);
+    stats.firstRow.record(firstRowNanos);
+    stats.fetch.record(fetchNanos);
+    stats.rows.add(rows);
+  }
+
+  @Override
+  public void failed(String table) {
+    getTable(table).failed.increment();
+  }
+
+  @Override
+  public void close() {
+    unregister(schemaName);
+    for (String table : tables.keySet()) {
+      unregister(objectName(prefix + ObjectName.quote(table)));
+    }
+
+    tables.clear();
+  }
+
+  private TableStats getTable(String table) {
+    return tables.computeIfAbsent(table, key -> {
+      TableStats stats = new TableStats();
+      register(objectName(prefix + ObjectName.quote(key)), new StandardMBean(stats, TableStatsMBean.class, false));
+      return stats;
+    });
+  }
+
+  private void register(ObjectName name, StandardMBean mbean) {
+    try {
+      server.registerMBean(mbean, name);
+    } catch (JMException e) {
+      throw new RuntimeException("Cannot register MBean " + name, e);
+    }
+  }
+
+  private void unregister(ObjectName name) {
+    try {
+      server.unregisterMBean(name);
+    } catch (JMException e) {
+      // Already unregistered
+    }
+  }
+
+  private static ObjectName objectName(String name) {
+    try {
+      return new ObjectName(name);
+    } catch (JMException e) {
+      throw new RuntimeException("Invalid MBean name " + name, e);
+    }
+  }
+
+  public interface SchemaStatsMBean {
+    String getEndpoint();
+
+    long getQueryCount();
+
+    long getFailedQueryCount();
+
+    int getOpenConnections();
+
+    int getActiveConnections();
+
+    long getPlanningCount();
+
+    double getPlanningTimeMillis();
+
+    double getMaxPlanningTimeMillis();
+  }
+
+  public interface TableStatsMBean {
+    long getGenerationCount();
+
+    double getGenerationTimeMillis();
+
+    long getQueryCount();
+
+    long getFailedQueryCount();
+
+    long getRowCount();
+
+    double getFirstRowTimeMillis();
+
+    double getMaxFirstRowTimeMillis();
+
+    double getFetchTimeMillis();
+
+    double getMaxFetchTimeMillis();
+  }
+
+  private class SchemaStats implements SchemaStatsMBean {
+    @Override
+    public String getEndpoint() {
+      return endpoint.getUrl();
+    }
+
+    @Override
+    public long getQueryCount() {
+      return endpoint.getQueryCount();
+    }
+
+    @Override
+    public long getFailedQueryCount() {
+      return endpoint.getFailedQueryCount();
+    }
+
+    @Override
+    public int getOpenConnections() {
+      return endpoint.getPool().getOpenCount();
+    }
+
+    @Override
+    public int getActiveConnections() {
+      return endpoint.getPool().getActiveCount();
+    }
+
+    @Override
+    public long getPlanningCount() {
+      return planning.getCount();
+    }
+
+    @Override
+    public double getPlanningTimeMillis() {
+      return planning.getTotalMillis();
+    }
+
+    @Override
+    public double getMaxPlanningTimeMillis() {
+      return planning.getMaxMillis();
+    }
+  }
+
+  private static class TableStats implements TableStatsMBean {
+    private final Timer generation = new Timer();
+    private final Timer firstRow = new Timer();
+    private final Timer fetch = new Timer();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Override
+    public long getGenerationCount() {
+      return generation.getCount();
+    }
+
+    @Override
+    public double getGenerationTimeMillis() {
+      return generation.getTotalMillis();
+    }
+
+    @Override
+    public long getQueryCount() {
+      return fetch.getCount() + failed.sum();
+    }
+
+    @Override
+    public long getFailedQueryCount() {
+      return failed.sum();
+    }
+
+    @Override
+    public long getRowCount() {
+      return rows.sum();
+    }
+
+    @Override
+    public double getFirstRowTimeMillis() {
+      return firstRow.getTotalMillis();
+    }
+
+    @Override
+    public double getMaxFirstRowTimeMillis() {
+      return firstRow.getMaxMillis();
+    }
+
+    @Override
+    public double getFetchTimeMillis() {
+      return fetch.getTotalMillis();
+    }
+
+    @Override
+    public double getMaxFetchTimeMillis() {
+      return fetch.getMaxMillis();
+    }
+  }
+
+  /**
+   * Number, total time and maximum time of the recorded events.
+   */
+  private static class Timer {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    long getCount() {
+      return count.sum();
+    }
+
+    double getTotalMillis() {
+      return (double) totalNanos.sum() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    double getMaxMillis() {
+      return (double) maxNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+
+/**
+ * Receives the timings and counters of the queries run against an endpoint, e.g. to expose them through JMX or to
+ * forward them to a metrics library such as Micrometer. The methods are called concurrently by the threads that
+ * plan and read the queries, so implementations must be thread-safe and cheap.
+ */
+public interface SparqlMetrics {
+  String NONE = "none";
+  String JMX = "jmx";
+
+  /**
+   * Discards all the metrics.
+   */
+  SparqlMetrics DISABLED = new SparqlMetrics() {
+  };
+
+  /**
+   * Records the time taken to parse, validate and plan a SQL query.
+   */
+  default void planned(long nanos) {
+  }
+
+  /**
+   * Records the time taken to generate the SPARQL query of a plan that reads a table.
+   */
+  default void generated(String table, long nanos) {
+  }
+
+  /**
+   * Records a SPARQL query that read a table: the time from sending it until its first row was decoded (or until
+   * its results were found to be empty), the time until its last row was decoded and the number of decoded rows.
+   */
+  default void queried(String table, long firstRowNanos, long fetchNanos, long rows) {
+  }
+
+  /**
+   * Records a SPARQL query that read a table and failed.
+   */
+  default void failed(String table) {
+  }
+
+  /**
+   * Releases any resource held by the metrics, e.g. registered MBeans.
+   */
+  default void close() {
+  }
+
+  /**
+   * Creates the metrics of a schema: {@code none}, {@code jmx} (see {@link SparqlJmxMetrics}) or the fully qualified
+   * name of a class implementing this interface, with a public constructor taking the name of the schema and its
+   * endpoint.
+   */
+  static SparqlMetrics newMetrics(String type, String schemaName, SparqlEndpoint endpoint) {
+    switch (type.toLowerCase(Locale.ROOT)) {
+      case NONE:
+        return DISABLED;
+
+      case JMX:
+        return new SparqlJmxMetrics(schemaName, endpoint);
+
+      default:
+        try {
+          return (SparqlMetrics) Class.forName(type)
+                                      .getConstructor(String.class, SparqlEndpoint.class)
+                                      .newInstance(schemaName, endpoint);
+        } catch (ClassNotFoundException | NoSuchMethodException | ClassCastException e) {
+          throw new RuntimeException("Unsupported metrics type " + type, e);
+        } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
+          throw new RuntimeException("Cannot create metrics of type " + type, e);
+        }
+    }
+  }
+}
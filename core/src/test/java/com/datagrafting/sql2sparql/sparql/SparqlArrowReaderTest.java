@@ -0,0 +1,245 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.datagrafting.sql2sparql.calcite.SparqlArrowReader;
+
+public class SparqlArrowReaderTest {
+  private Connection connection;
+  private BufferAllocator allocator;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    URL modelPath = SparqlArrowReaderTest.class.getClassLoader().getResource("modelClass.json");
+    connection = DriverManager.getConnection(
+        "jdbc:calcite:model=" + Objects.requireNonNull(modelPath).getPath(), info);
+    allocator = new RootAllocator();
+  }
+
+  @AfterEach
+  public void teardown() throws SQLException {
+    connection.close();
+    allocator.close();
+  }
+
+  @Test
+  public void testPushedDownQuery() throws SQLException {
+    String query = ""
+        + "SELECT s, xmlns_name, xmlns_age "
+        + "FROM Person "
+        + "ORDER BY xmlns_age";
+
+    try (SparqlArrowReader reader = SparqlArrowReader.query(connection, query, allocator, 1)) {
+      // The values of the SPARQL results are written straight into the vectors
+      assertThat(reader.isDirect()).isTrue();
+
+      assertThat(reader.loadNextBatch()).isTrue();
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      assertThat(root.getSchema().toString())
+          .isEqualTo("Schema<s: Utf8, xmlns_name: Utf8, xmlns_age: Int(64, true)>");
+      assertThat(root.getRowCount()).isEqualTo(1);
+      assertThat(root.getVector("s").getObject(0).toString()).isEqualTo("http://www.example.com/id/janedoe");
+      assertThat(((VarCharVector) root.getVector("xmlns_name")).getObject(0).toString()).isEqualTo("Jane Doe");
+      assertThat(((BigIntVector) root.getVector("xmlns_age")).get(0)).isEqualTo(40);
+
+      assertThat(reader.loadNextBatch()).isTrue();
+      assertThat(root.getRowCount()).isEqualTo(1);
+      assertThat(((VarCharVector) root.getVector("xmlns_name")).getObject(0).toString()).isEqualTo("John Doe");
+      assertThat(((BigIntVector) root.getVector("xmlns_age")).get(0)).isEqualTo(42);
+
+      assertThat(reader.loadNextBatch()).isFalse();
+    }
+  }
+
+  @Test
+  public void testPartiallyPushedDownQuery() throws SQLException {
+    String query = ""
+        + "SELECT UPPER(xmlns_name) AS name, xmlns_age + 1 AS age "
+        + "FROM Person "
+        + "ORDER BY xmlns_age";
+
+    try (SparqlArrowReader reader = SparqlArrowReader.query(connection, query, allocator, 10)) {
+      // The rows computed by Calcite are converted by the Arrow JDBC adapter
+      assertThat(reader.isDirect()).isFalse();
+
+      assertThat(reader.loadNextBatch()).isTrue();
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      assertThat(root.getRowCount()).isEqualTo(2);
+      assertThat(root.getVector("name").getObject(0).toString()).isEqualTo("JANE DOE");
+      assertThat(root.getVector("age").getObject(1)).isEqualTo(43L);
+
+      assertThat(reader.loadNextBatch()).isFalse();
+    }
+  }
+
+  @Test
+  public void testPagedQuery() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    URL dataPath = SparqlArrowReaderTest.class.getClassLoader().getResource("data.nq");
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: 'jdbc:jena:mem:dataset=" + Objects.requireNonNull(dataPath).getPath() + "',"
+        + "      tableMode: 'class',"
+        + "      pageSize: 1"
+        + "    }"
+        + "  }]"
+        + "}";
+    String query = ""
+        + "SELECT xmlns_name "
+        + "FROM Person "
+        + "ORDER BY xmlns_age";
+
+    try (Connection pagedConnection = DriverManager.getConnection("jdbc:calcite:model=" + model, info);
+         SparqlArrowReader reader = SparqlArrowReader.query(pagedConnection, query, allocator, 10)) {
+      // A pushed-down query that is read in pages goes through JDBC, which sends one query per page
+      assertThat(reader.isDirect()).isFalse();
+
+      assertThat(reader.loadNextBatch()).isTrue();
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      assertThat(root.getRowCount()).isEqualTo(2);
+      assertThat(root.getVector("xmlns_name").getObject(0).toString()).isEqualTo("Jane Doe");
+      assertThat(root.getVector("xmlns_name").getObject(1).toString()).isEqualTo("John Doe");
+
+      assertThat(reader.loadNextBatch()).isFalse();
+    }
+  }
+
+  @Test
+  public void testMixedTypeColumn(@TempDir Path dataDir) throws SQLException, IOException {
+    Path data = dataDir.resolve("mixed.nq");
+    String endpoint = "jdbc:jena:mem:dataset=" + data.toString().replace("\\", "/");
+    Path catalogDir = Files.createDirectory(dataDir.resolve("catalog"));
+
+    // The column is typed as BIGINT when the catalog is saved, before one of its values becomes a string
+    Files.write(data, Arrays.asList(
+        "<http://www.example.com/id/item0> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://www.example.com/Item> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/value> "
+            + "\"1\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://www.example.com/graph/a> ."
+    ));
+    try (Connection connection = connect(endpoint, catalogDir, "")) {
+      connection.createStatement().executeQuery("SELECT example_value FROM Item").close();
+    }
+
+    Files.write(data, Arrays.asList(
+        "<http://www.example.com/id/item1> <http://www.example.com/value> \"two\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item1> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://www.example.com/Item> <http://www.example.com/graph/a> ."
+    ), StandardOpenOption.APPEND);
+
+    String query = ""
+        + "SELECT s, example_value "
+        + "FROM Item "
+        + "ORDER BY s";
+
+    List<List<Object>> direct = new ArrayList<>();
+    List<List<Object>> jdbc = new ArrayList<>();
+
+    // Timing the results does not prevent them from being read directly
+    try (Connection directConnection = connect(endpoint, catalogDir, ", metrics: 'jmx'");
+         SparqlArrowReader reader = SparqlArrowReader.query(directConnection, query, allocator, 10)) {
+      assertThat(reader.isDirect()).isTrue();
+      readAll(reader, direct);
+    }
+
+    // Paged queries go through JDBC
+    try (Connection pagedConnection = connect(endpoint, catalogDir, ", pageSize: 10");
+         SparqlArrowReader reader = SparqlArrowReader.query(pagedConnection, query, allocator, 10)) {
+      assertThat(reader.isDirect()).isFalse();
+      readAll(reader, jdbc);
+    }
+
+    // Both ways, the value that is not a number is null
+    assertThat(direct).containsExactly(
+        Arrays.asList("http://www.example.com/id/item0", "1"),
+        Arrays.asList("http://www.example.com/id/item1", null));
+    assertThat(jdbc).isEqualTo(direct);
+  }
+
+  private Connection connect(String endpoint, Path catalogDir, String extraOperands) throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: '" + endpoint + "',"
+        + "      tableMode: 'class',"
+        + "      catalogDir: '" + catalogDir.toString().replace("\\", "/") + "'"
+        + extraOperands
+        + "    }"
+        + "  }]"
+        + "}";
+
+    return DriverManager.getConnection("jdbc:calcite:model=" + model, info);
+  }
+
+  private static void readAll(SparqlArrowReader reader, List<List<Object>> rows) throws SQLException {
+    while (reader.loadNextBatch()) {
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      for (int row = 0; row < root.getRowCount(); row++) {
+        List<Object> values = new ArrayList<>();
+        for (FieldVector vector : root.getFieldVectors()) {
+          Object value = vector.getObject(row);
+          values.add(value == null ? null : value.toString());
+        }
+        rows.add(values);
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.datagrafting.sql2sparql.calcite.SparqlCatalog;
+import com.datagrafting.sql2sparql.calcite.config.TableMode;
+
+public class SparqlCatalogTest {
+  private static final String ENDPOINT = "jdbc:jena:mem:dataset=data.nq";
+
+  @TempDir
+  Path catalogDir;
+
+  private Connection connect(String extraOperands) throws SQLException {
+    return connect(ENDPOINT, "class", extraOperands);
+  }
+
+  private Connection connect(String endpoint, String tableMode, String extraOperands) throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: '" + endpoint + "',"
+        + "      tableMode: '" + tableMode + "',"
+        + "      catalogDir: '" + catalogDir.toString().replace("\\", "/") + "'"
+        + extraOperands
+        + "    }"
+        + "  }]"
+        + "}";
+
+    return DriverManager.getConnection("jdbc:calcite:model=" + model, info);
+  }
+
+  private List<String> getTableNames(Connection connection) throws SQLException {
+    List<String> tableNames = new ArrayList<>();
+    ResultSet tables = connection.getMetaData().getTables(null, "sparql", null, null);
+
+    while (tables.next()) {
+      tableNames.add(tables.getString("TABLE_NAME"));
+    }
+
+    return tableNames;
+  }
+
+  @Test
+  public void testCatalogIsSaved() throws SQLException, IOException {
+    Path catalogPath = SparqlCatalog.getPath(catalogDir.toString(), ENDPOINT, TableMode.CLASS);
+
+    try (Connection connection = connect("")) {
+      assertThat(getTableNames(connection)).containsExactlyInAnyOrder("Person", "Group");
+    }
+
+    SparqlCatalog catalog = SparqlCatalog.load(catalogPath);
+    assertThat(catalog).isNotNull();
+    assertThat(catalog.matches(ENDPOINT, TableMode.CLASS)).isTrue();
+    assertThat(catalog.getTables()).extracting(SparqlCatalog.TableEntry::getName)
+                                   .containsExactlyInAnyOrder("Person", "Group");
+
+    SparqlCatalog.TableEntry person = catalog.getTables().stream()
+                                             .filter(table -> table.getName().equals("Person"))
+                                             .findFirst()
+                                             .get();
+    assertThat(person.getUri()).isEqualTo("http://xmlns.com/foaf/0.1/Person");
+    assertThat(person.getColumns()).hasSize(9);
+    assertThat(person.getColumns())
+        .filteredOn(col -> col.getName().equals("xmlns_age"))
+        .extracting(SparqlCatalog.ColumnEntry::getType)
+        .containsExactly(SqlTypeName.BIGINT);
+  }
+
+  @Test
+  public void testCatalogIsLoaded() throws SQLException, IOException {
+    Path catalogPath = SparqlCatalog.getPath(catalogDir.toString(), ENDPOINT, TableMode.CLASS);
+
+    try (Connection connection = connect("")) {
+      getTableNames(connection);
+    }
+
+    // Drop a table from the saved catalog: if the catalog is used, the table is not rediscovered
+    SparqlCatalog catalog = SparqlCatalog.load(catalogPath);
+    catalog.getTables().removeIf(table -> table.getName().equals("Group"));
+    catalog.save(catalogPath);
+
+    try (Connection connection = connect("")) {
+      assertThat(getTableNames(connection)).containsExactly("Person");
+    }
+
+    try (Connection connection = connect(", catalogRefresh: true")) {
+      assertThat(getTableNames(connection)).containsExactlyInAnyOrder("Person", "Group");
+    }
+
+    assertThat(Files.exists(catalogPath)).isTrue();
+    assertThat(SparqlCatalog.load(catalogPath).getTables()).hasSize(2);
+  }
+
+  @Test
+  public void testCatalogIsSavedWithUnknownTypes(@TempDir Path dataDir) throws SQLException, IOException {
+    // The objects of the first property have two types, so its column type cannot be probed
+    Path data = Files.write(dataDir.resolve("mixed.nq"), Arrays.asList(
+        "<http://www.example.com/s1> <http://www.example.com/mixed> "
+            + "\"1\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/s2> <http://www.example.com/mixed> "
+            + "<http://www.example.com/o> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/s1> <http://www.example.com/plain> "
+            + "\"a\" <http://www.example.com/graph/a> ."));
+    String endpoint = "jdbc:jena:mem:dataset=" + data.toString().replace("\\", "/");
+    Path catalogPath = SparqlCatalog.getPath(catalogDir.toString(), endpoint, TableMode.PROPERTY);
+
+    try (Connection connection = connect(endpoint, "property", "")) {
+      assertThat(getTableNames(connection)).containsExactlyInAnyOrder("mixed", "plain");
+    }
+
+    SparqlCatalog catalog = SparqlCatalog.load(catalogPath);
+    assertThat(catalog.getTables())
+        .flatExtracting(SparqlCatalog.TableEntry::getColumns)
+        .extracting(SparqlCatalog.ColumnEntry::getType)
+        .containsExactlyInAnyOrder(null, SqlTypeName.VARCHAR);
+
+    // The other tables are read from the catalog and can be queried
+    try (Connection connection = connect(endpoint, "property", "");
+         ResultSet resultSet = connection.createStatement().executeQuery("SELECT o FROM plain")) {
+      assertThat(resultSet.next()).isTrue();
+      assertThat(resultSet.getString(1)).isEqualTo("a");
+    }
+  }
+
+  @Test
+  public void testExpiredCatalogIsRefreshed() throws SQLException, IOException {
+    Path catalogPath = SparqlCatalog.getPath(catalogDir.toString(), ENDPOINT, TableMode.CLASS);
+
+    SparqlCatalog catalog = new SparqlCatalog(ENDPOINT, TableMode.CLASS);
+    catalog.save(catalogPath);
+
+    try (Connection connection = connect(", catalogTtl: 0")) {
+      assertThat(getTableNames(connection)).containsExactlyInAnyOrder("Person", "Group");
+    }
+  }
+}
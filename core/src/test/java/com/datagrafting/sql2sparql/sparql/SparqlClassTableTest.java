@@ -17,17 +17,30 @@ package com.datagrafting.sql2sparql.sparql;
 
 import static com.datagrafting.sql2sparql.TestUtils.checkPlan;
 import static com.datagrafting.sql2sparql.TestUtils.checkResults;
+import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.function.Consumer;
 
+import org.apache.calcite.runtime.Hook;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.datagrafting.sql2sparql.calcite.SparqlClassTable;
 
 public class SparqlClassTableTest {
   private Connection connection;
@@ -278,8 +291,8 @@ public class SparqlClassTableTest {
     checkResults(connection, query, true, false, ""
         + "Person.s [java.lang.String] | Person.xmlns_name [java.lang.String]\n"
         + "------------------------------------------------------------------\n"
-        + "http://www.example.com/id/janedoe [java.lang.String] | Jane Doe [java.lang.String]\n"
         + "http://www.example.com/id/johndoe [java.lang.String] | John Doe [java.lang.String]\n"
+        + "http://www.example.com/id/janedoe [java.lang.String] | Jane Doe [java.lang.String]\n"
     );
   }
 
@@ -558,4 +571,487 @@ public class SparqlClassTableTest {
         + "http://www.example.com/id/janedoe [java.lang.String] | 40 [java.lang.Long]\n"
     );
   }
+
+  @Test
+  public void testSelectFilterLimitOffset() throws SQLException {
+    String query = ""
+        + "SELECT UPPER(xmlns_name) AS name "
+        + "FROM Person "
+        + "WHERE xmlns_age > 30 "
+        + "ORDER BY xmlns_age "
+        + "LIMIT 1 OFFSET 1";
+
+    checkPlan(connection, query, ""
+        + "EnumerableCalc(expr#0..9=[{inputs}], expr#10=[UPPER($t3)], name=[$t10], xmlns_age=[$t7])\n"
+        + "  SparqlClassToEnumerableConverter\n"
+        + "    SparqlClassSort(sort0=[$7], dir0=[ASC], offset=[1], fetch=[1])\n"
+        + "      SparqlClassFilter(condition=[>($7, 30)])\n"
+        + "        SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    assertThat(getSparqlQueries(query).get(0)).endsWith(""
+        + "      }\n"
+        + "    FILTER ( ?xmlns_age > 30 )\n"
+        + "  }\n"
+        + "ORDER BY ASC(?xmlns_age)\n"
+        + "OFFSET  1\n"
+        + "LIMIT   1\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "name [java.lang.String]\n"
+        + "-----------------------\n"
+        + "JOHN DOE [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testSortLimited() throws SQLException {
+    String query = ""
+        + "SELECT * "
+        + "FROM (SELECT s, xmlns_name FROM Person ORDER BY xmlns_name DESC LIMIT 2) "
+        + "ORDER BY s DESC";
+
+    checkPlan(connection, query, ""
+        + "EnumerableSort(sort0=[$0], dir0=[DESC])\n"
+        + "  SparqlClassToEnumerableConverter\n"
+        + "    SparqlClassProject(s=[$0], xmlns_name=[$3])\n"
+        + "      SparqlClassSort(sort0=[$3], dir0=[DESC], fetch=[2])\n"
+        + "        SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "s [java.lang.String] | xmlns_name [java.lang.String]\n"
+        + "----------------------------------------------------\n"
+        + "http://www.example.com/id/johndoe [java.lang.String] | John Doe [java.lang.String]\n"
+        + "http://www.example.com/id/janedoe [java.lang.String] | Jane Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testSelectBooleanFilter() throws SQLException {
+    String query = ""
+        + "SELECT xmlns_name "
+        + "FROM Person "
+        + "WHERE xmlns_nick LIKE 'J_hn%' OR NOT (xmlns_age + 1 >= 42)";
+
+    checkPlan(connection, query, ""
+        + "SparqlClassToEnumerableConverter\n"
+        + "  SparqlClassProject(xmlns_name=[$3])\n"
+        + "    SparqlClassFilter(condition=[OR(LIKE($9, 'J_hn%'), <(+($7, 1), 42))])\n"
+        + "      SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    assertThat(getSparqlQueries(query).get(0)).endsWith(""
+        + "      }\n"
+        + "    FILTER ( regex(str(?xmlns_nick), \"^J.hn.*$\", \"s\") || ( ( ?xmlns_age + 1 ) < 42 ) )\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "Person.xmlns_name [java.lang.String]\n"
+        + "------------------------------------\n"
+        + "Jane Doe [java.lang.String]\n"
+        + "John Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testSelectPartialFilter() throws SQLException {
+    String query = ""
+        + "SELECT xmlns_name "
+        + "FROM Person "
+        + "WHERE xmlns_name LIKE '%Doe' AND CHAR_LENGTH(xmlns_givenname) = 4 AND xmlns_age NOT IN (40, 41)";
+
+    checkPlan(connection, query, ""
+        + "EnumerableCalc(expr#0..9=[{inputs}], expr#10=[CHAR_LENGTH($t8)], expr#11=[4], expr#12=[=($t10, $t11)], xmlns_name=[$t3], $condition=[$t12])\n"
+        + "  SparqlClassToEnumerableConverter\n"
+        + "    SparqlClassFilter(condition=[AND(LIKE($3, '%Doe'), SEARCH($7, Sarg[(-\u221e..40L:BIGINT), (40L:BIGINT..41L:BIGINT), (41L:BIGINT..+\u221e)]:BIGINT))])\n"
+        + "      SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    assertThat(getSparqlQueries(query).get(0)).endsWith(""
+        + "      }\n"
+        + "    FILTER ( strends(str(?xmlns_name), \"Doe\") && ( ?xmlns_age NOT IN (40, 41) ) )\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "Person.xmlns_name [java.lang.String]\n"
+        + "------------------------------------\n"
+        + "John Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testJoinKnows() throws SQLException {
+    String query = ""
+        + "SELECT p.xmlns_name, k.xmlns_name "
+        + "FROM Person p JOIN Person k ON p.xmlns_knows = k.s";
+
+    checkPlan(connection, query, ""
+        + "SparqlClassToEnumerableConverter\n"
+        + "  SparqlClassProject(xmlns_name=[$1], xmlns_name0=[$3])\n"
+        + "    SparqlClassJoin(condition=[=($0, $2)], joinType=[inner])\n"
+        + "      SparqlClassProject(xmlns_knows=[$2], xmlns_name=[$3])\n"
+        + "        SparqlClassTableScan(table=[[sparql, Person]])\n"
+        + "      SparqlClassProject(s=[$0], xmlns_name=[$3])\n"
+        + "        SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?xmlns_name ?xmlns_name_1\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  a                     <http://xmlns.com/foaf/0.1/Person> ;\n"
+        + "            <http://xmlns.com/foaf/0.1/knows>  ?xmlns_knows\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/name>  ?xmlns_name}\n"
+        + "      }\n"
+        + "    GRAPH ?g_1\n"
+        + "      { ?xmlns_knows  a  <http://xmlns.com/foaf/0.1/Person>\n"
+        + "        OPTIONAL\n"
+        + "          { ?xmlns_knows  <http://xmlns.com/foaf/0.1/name>  ?xmlns_name_1}\n"
+        + "      }\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "Person.xmlns_name [java.lang.String] | Person.xmlns_name [java.lang.String]\n"
+        + "---------------------------------------------------------------------------\n"
+        + "Jane Doe [java.lang.String] | John Doe [java.lang.String]\n"
+        + "John Doe [java.lang.String] | Jane Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testCount() throws SQLException {
+    String query = ""
+        + "SELECT COUNT(*) AS c "
+        + "FROM Person";
+
+    checkPlan(connection, query, ""
+        + "SparqlClassToEnumerableConverter\n"
+        + "  SparqlClassAggregate(group=[{}], c=[COUNT()])\n"
+        + "    SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  (count(*) AS ?agg)\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  a  <http://xmlns.com/foaf/0.1/Person> }\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "c [java.lang.Long]\n"
+        + "------------------\n"
+        + "2 [java.lang.Long]\n"
+    );
+  }
+
+  @Test
+  public void testGroupByAggregates() throws SQLException {
+    String query = ""
+        + "SELECT xmlns_title, SUM(xmlns_age) AS total, AVG(xmlns_age) AS average, "
+        + "COUNT(DISTINCT xmlns_family_name) AS families "
+        + "FROM Person "
+        + "GROUP BY xmlns_title";
+
+    checkPlan(connection, query, ""
+        + "SparqlClassToEnumerableConverter\n"
+        + "  SparqlClassAggregate(group=[{4}], total=[SUM($7)], average=[AVG($7)], families=[COUNT(DISTINCT $1)])\n"
+        + "    SparqlClassTableScan(table=[[sparql, Person]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?xmlns_title (if(( COUNT(?xmlns_age) = 0 ), ( 0 / 0 ), SUM(coalesce(?xmlns_age, 0))) AS ?agg) (<http://www.w3.org/2001/XMLSchema#integer>(( SUM(coalesce(?xmlns_age, 0)) / COUNT(?xmlns_age) )) AS ?agg_1) (COUNT(DISTINCT ?xmlns_family_name) AS ?agg_2)\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  a  <http://xmlns.com/foaf/0.1/Person>\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/family_name>  ?xmlns_family_name}\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/title>  ?xmlns_title}\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/age>  ?xmlns_age}\n"
+        + "      }\n"
+        + "  }\n"
+        + "GROUP BY ?xmlns_title\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "Person.xmlns_title [java.lang.String] | total [java.lang.Long] | average [java.lang.Long] | families [java.lang.Long]\n"
+        + "---------------------------------------------------------------------------------------------------------------------\n"
+        + "Mr [java.lang.String] | 82 [java.lang.Long] | 41 [java.lang.Long] | 1 [java.lang.Long]\n"
+    );
+  }
+
+  @Test
+  public void testAggregatesOfNullValues(@TempDir Path dataDir) throws SQLException, IOException {
+    // One of the three persons has no age
+    Path data = Files.write(dataDir.resolve("ages.nq"), Arrays.asList(
+        "<http://www.example.com/id/johndoe> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://xmlns.com/foaf/0.1/Person> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/johndoe> <http://xmlns.com/foaf/0.1/age> "
+            + "\"42\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/janedoe> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://xmlns.com/foaf/0.1/Person> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/janedoe> <http://xmlns.com/foaf/0.1/age> "
+            + "\"40\"^^<http://www.w3.org/2001/XMLSchema#integer> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/babydoe> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://xmlns.com/foaf/0.1/Person> <http://www.example.com/graph/a> ."
+    ));
+
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: 'jdbc:jena:mem:dataset=" + data.toString().replace("\\", "/") + "',"
+        + "      tableMode: 'class'"
+        + "    }"
+        + "  }]"
+        + "}";
+
+    try (Connection agesConnection = DriverManager.getConnection("jdbc:calcite:model=" + model, info)) {
+      // The null age is skipped, as in SQL
+      checkResults(agesConnection, ""
+          + "SELECT SUM(xmlns_age) AS total, AVG(xmlns_age) AS average, MIN(xmlns_age) AS youngest, "
+          + "MAX(xmlns_age) AS oldest, COUNT(xmlns_age) AS ages, COUNT(*) AS persons "
+          + "FROM Person", true, false, ""
+          + "total [java.lang.Long] | average [java.lang.Long] | youngest [java.lang.Long] | oldest [java.lang.Long] | ages [java.lang.Long] | persons [java.lang.Long]\n"
+          + "----------------------------------------------------------------------------------------------------------------------------------------------------------\n"
+          + "82 [java.lang.Long] | 41 [java.lang.Long] | 40 [java.lang.Long] | 42 [java.lang.Long] | 2 [java.lang.Long] | 3 [java.lang.Long]\n"
+      );
+
+      // Without MIN and MAX, the aggregates are evaluated by the endpoint
+      String query = ""
+          + "SELECT SUM(xmlns_age) AS total, AVG(xmlns_age) AS average, SUM(DISTINCT xmlns_age) AS distinctTotal "
+          + "FROM Person";
+
+      checkPlan(agesConnection, query, ""
+          + "SparqlClassToEnumerableConverter\n"
+          + "  SparqlClassAggregate(group=[{}], total=[SUM($1)], average=[AVG($1)], distinctTotal=[SUM(DISTINCT $1)])\n"
+          + "    SparqlClassTableScan(table=[[sparql, Person]])\n"
+      );
+
+      checkResults(agesConnection, query, true, false, ""
+          + "total [java.lang.Long] | average [java.lang.Long] | distinctTotal [java.lang.Long]\n"
+          + "----------------------------------------------------------------------------------\n"
+          + "82 [java.lang.Long] | 41 [java.lang.Long] | 82 [java.lang.Long]\n"
+      );
+
+      // The sums and averages of no values are null, while their counts are 0
+      checkResults(agesConnection, ""
+          + "SELECT SUM(xmlns_age) AS total, AVG(xmlns_age) AS average, MIN(xmlns_age) AS youngest, "
+          + "COUNT(xmlns_age) AS ages "
+          + "FROM Person "
+          + "WHERE xmlns_age > 1000", true, false, ""
+          + "total [java.lang.Long] | average [java.lang.Long] | youngest [java.lang.Long] | ages [java.lang.Long]\n"
+          + "-----------------------------------------------------------------------------------------------------\n"
+          + "null | null | null | 0 [java.lang.Long]\n"
+      );
+    }
+  }
+
+  @Test
+  public void testSelectProjectWideTable(@TempDir Path dataDir) throws SQLException, IOException {
+    // A class with the maximum number of columns, all of them bound for every subject
+    List<String> quads = new ArrayList<>();
+    for (int subject = 0; subject < 2; subject++) {
+      String s = "<http://www.example.com/id/item" + subject + ">";
+      quads.add(s + " <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://www.example.com/Item> "
+          + "<http://www.example.com/graph/a> .");
+      for (int prop = 0; prop < SparqlClassTable.MAX_PROPS_PER_TABLE; prop++) {
+        quads.add(String.format("%s <http://www.example.com/p%02d> \"%d\" <http://www.example.com/graph/a> .",
+            s, prop, subject * 100 + prop));
+      }
+    }
+    Path data = Files.write(dataDir.resolve("wide.nq"), quads);
+
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: 'jdbc:jena:mem:dataset=" + data.toString().replace("\\", "/") + "',"
+        + "      tableMode: 'class'"
+        + "    }"
+        + "  }]"
+        + "}";
+
+    try (Connection wideConnection = DriverManager.getConnection("jdbc:calcite:model=" + model, info)) {
+      String query = ""
+          + "SELECT example_p03, example_p17 "
+          + "FROM Item";
+
+      // Only the two selected columns are bound, out of 25
+      assertThat(getSparqlQueries(wideConnection, query)).containsExactly(""
+          + "SELECT  ?example_p03 ?example_p17\n"
+          + "WHERE\n"
+          + "  { GRAPH ?g\n"
+          + "      { ?s  a  <http://www.example.com/Item>\n"
+          + "        OPTIONAL\n"
+          + "          { ?s  <http://www.example.com/p03>  ?example_p03}\n"
+          + "        OPTIONAL\n"
+          + "          { ?s  <http://www.example.com/p17>  ?example_p17}\n"
+          + "      }\n"
+          + "  }\n"
+      );
+
+      checkResults(wideConnection, query, true, false, ""
+          + "Item.example_p03 [java.lang.String] | Item.example_p17 [java.lang.String]\n"
+          + "-------------------------------------------------------------------------\n"
+          + "103 [java.lang.String] | 117 [java.lang.String]\n"
+          + "3 [java.lang.String] | 17 [java.lang.String]\n"
+      );
+
+      // Sorted columns are bound as well, and filtered ones by a required pattern
+      assertThat(getSparqlQueries(wideConnection, query + " WHERE example_p05 <> '5' ORDER BY example_p09"))
+          .singleElement()
+          .satisfies(sparql -> assertThat(sparql.split("OPTIONAL", -1)).hasSize(4))
+          .satisfies(sparql -> assertThat(sparql).doesNotContain("{ ?s  <http://www.example.com/p05>"));
+    }
+  }
+
+  @Test
+  public void testMultiValuedColumns(@TempDir Path dataDir) throws SQLException, IOException {
+    // Both classes have several labels per subject
+    Path data = Files.write(dataDir.resolve("multi.nq"), Arrays.asList(
+        "<http://www.example.com/id/item0> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://www.example.com/Item> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/label> \"one\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/label> \"two\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/tag0> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> "
+            + "<http://www.example.com/Tag> <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/tag0> <http://www.example.com/label> \"three\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/tag0> <http://www.example.com/label> \"four\" <http://www.example.com/graph/a> ."
+    ));
+
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: 'jdbc:jena:mem:dataset=" + data.toString().replace("\\", "/") + "',"
+        + "      tableMode: 'class',"
+        + "      multiValued: 'concat'"
+        + "    }"
+        + "  }]"
+        + "}";
+
+    try (Connection multiConnection = DriverManager.getConnection("jdbc:calcite:model=" + model, info)) {
+      String query = ""
+          + "SELECT example_label "
+          + "FROM Item "
+          + "WHERE example_label IS NOT NULL";
+
+      // The subquery only aggregates the labels of the items
+      assertThat(getSparqlQueries(multiConnection, query)).containsExactly(""
+          + "SELECT  ?example_label\n"
+          + "WHERE\n"
+          + "  { GRAPH ?g\n"
+          + "      { ?s  a  <http://www.example.com/Item>\n"
+          + "        { SELECT  ?s (GROUP_CONCAT(str(?example_label_value) ; separator=', ') AS ?example_label)\n"
+          + "          WHERE\n"
+          + "            { ?s  a                     <http://www.example.com/Item> ;\n"
+          + "                  <http://www.example.com/label>  ?example_label_value\n"
+          + "            }\n"
+          + "          GROUP BY ?s\n"
+          + "        }\n"
+          + "      }\n"
+          + "    FILTER bound(?example_label)\n"
+          + "  }\n"
+      );
+
+      try (ResultSet results = multiConnection.createStatement().executeQuery(query)) {
+        assertThat(results.next()).isTrue();
+        assertThat(results.getString(1).split(", ")).containsExactlyInAnyOrder("one", "two");
+        assertThat(results.next()).isFalse();
+      }
+    }
+  }
+
+  @Test
+  public void testFilterRequiredColumns() throws SQLException {
+    String query = ""
+        + "SELECT xmlns_name "
+        + "FROM Person "
+        + "WHERE xmlns_age > 40 AND xmlns_nick <> 'Jay'";
+
+    // The filtered columns cannot be null, so they are matched by required patterns
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?xmlns_name\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  a                     <http://xmlns.com/foaf/0.1/Person> ;\n"
+        + "            <http://xmlns.com/foaf/0.1/age>  ?xmlns_age ;\n"
+        + "            <http://xmlns.com/foaf/0.1/nick>  ?xmlns_nick\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/name>  ?xmlns_name}\n"
+        + "      }\n"
+        + "    FILTER ( ( ?xmlns_age > 40 ) && ( ?xmlns_nick != \"Jay\" ) )\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "Person.xmlns_name [java.lang.String]\n"
+        + "------------------------------------\n"
+        + "John Doe [java.lang.String]\n"
+    );
+
+    // A column that is filtered in only one side of a disjunction may still be null
+    assertThat(getSparqlQueries(""
+        + "SELECT xmlns_name "
+        + "FROM Person "
+        + "WHERE xmlns_age > 40 OR xmlns_nick = 'Jay'")).containsExactly(""
+        + "SELECT  ?xmlns_name\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  a  <http://xmlns.com/foaf/0.1/Person>\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/name>  ?xmlns_name}\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/age>  ?xmlns_age}\n"
+        + "        OPTIONAL\n"
+        + "          { ?s  <http://xmlns.com/foaf/0.1/nick>  ?xmlns_nick}\n"
+        + "      }\n"
+        + "    FILTER ( ( ?xmlns_age > 40 ) || ( ?xmlns_nick = \"Jay\" ) )\n"
+        + "  }\n"
+    );
+  }
+
+  private List<String> getSparqlQueries(String query) throws SQLException {
+    return getSparqlQueries(connection, query);
+  }
+
+  private List<String> getSparqlQueries(Connection connection, String query) throws SQLException {
+    List<String> queries = new ArrayList<>();
+
+    try (Hook.Closeable ignored = Hook.QUERY_PLAN.addThread((Consumer<Object>) plan -> queries.add((String) plan))) {
+      connection.createStatement().executeQuery(query).close();
+    }
+
+    return queries;
+  }
 }
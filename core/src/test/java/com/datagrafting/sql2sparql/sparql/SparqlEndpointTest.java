@@ -16,10 +16,21 @@
 package com.datagrafting.sql2sparql.sparql;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.net.URL;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.jena.graph.Node;
 import org.apache.jena.jdbc.JdbcCompatibility;
@@ -29,12 +40,13 @@ import org.junit.jupiter.api.Test;
 
 public class SparqlEndpointTest {
   SparqlEndpoint sparqlEndpoint;
+  String url;
 
   @BeforeEach
   public void setUp() throws SQLException {
     // Use "jdbc:jena:mem:empty=true" for an empty endpoint
     URL modelPath = SparqlEndpointTest.class.getClassLoader().getResource("data.nq");
-    String url = "jdbc:jena:mem:dataset=" + modelPath;
+    url = "jdbc:jena:mem:dataset=" + modelPath;
     sparqlEndpoint = new SparqlEndpoint(url, JdbcCompatibility.LOW);
   }
 
@@ -72,4 +84,119 @@ public class SparqlEndpointTest {
       assertThat(o.getLiteralValue()).isEqualTo("John Doe");
     }
   }
+
+  @Test
+  public void objectTypesForPropertiesTest() throws SQLException {
+    Map<String, Set<String>> objectTypes = sparqlEndpoint.getObjectTypesForProperties(Arrays.asList(
+        "http://xmlns.com/foaf/0.1/name",
+        "http://xmlns.com/foaf/0.1/age",
+        "http://xmlns.com/foaf/0.1/knows",
+        "http://xmlns.com/foaf/0.1/unknown"), 10);
+
+    assertThat(objectTypes).hasSize(3);
+    assertThat(objectTypes.get("http://xmlns.com/foaf/0.1/name"))
+        .containsExactly("http://www.w3.org/2001/XMLSchema#string");
+    assertThat(objectTypes.get("http://xmlns.com/foaf/0.1/age"))
+        .containsExactly("http://www.w3.org/2001/XMLSchema#integer");
+    // IRIs have no datatype
+    assertThat(objectTypes.get("http://xmlns.com/foaf/0.1/knows")).containsExactly((String) null);
+  }
+
+  @Test
+  public void concurrentQueriesTest() throws Exception {
+    SparqlEndpoint pooledEndpoint = new SparqlEndpoint(url, JdbcCompatibility.LOW, 1, 4, 60_000, 30_000);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    String queryString = ""
+        + "SELECT ?o "
+        + "WHERE { "
+        + "  GRAPH ?g { "
+        + "    <http://www.example.com/id/johndoe> <http://xmlns.com/foaf/0.1/name> ?o "
+        + "  } "
+        + "}";
+
+    try {
+      List<Callable<String>> tasks = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        tasks.add(() -> {
+          ResultSet results = pooledEndpoint.query(queryString);
+
+          try {
+            assertThat(pooledEndpoint.getPool().getActiveCount()).isBetween(1, 4);
+            results.next();
+            return ((Node) results.getObject("o")).getLiteralLexicalForm();
+          } finally {
+            pooledEndpoint.release(results);
+          }
+        });
+      }
+
+      for (Future<String> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isEqualTo("John Doe");
+      }
+
+      // Every connection has been returned and the pool has never grown past its maximum size
+      assertThat(pooledEndpoint.getPool().getActiveCount()).isEqualTo(0);
+      assertThat(pooledEndpoint.getPool().getOpenCount()).isBetween(1, 4);
+      assertThat(pooledEndpoint.getPool().getIdleCount()).isEqualTo(pooledEndpoint.getPool().getOpenCount());
+    } finally {
+      executor.shutdown();
+      pooledEndpoint.close();
+    }
+  }
+
+  @Test
+  public void borrowTimeoutTest() throws SQLException {
+    SparqlEndpoint pooledEndpoint = new SparqlEndpoint(url, JdbcCompatibility.LOW, 0, 1, 60_000, 100);
+
+    try {
+      ResultSet results = pooledEndpoint.query("SELECT * WHERE { ?s ?p ?o } LIMIT 1");
+
+      // The only connection is in use, so the next borrow must give up after the timeout
+      assertThatThrownBy(() -> pooledEndpoint.query("SELECT * WHERE { ?s ?p ?o } LIMIT 1"))
+          .isInstanceOf(SQLException.class)
+          .hasMessageContaining("Timed out");
+
+      pooledEndpoint.release(results);
+      assertThat(pooledEndpoint.getPool().getActiveCount()).isEqualTo(0);
+    } finally {
+      pooledEndpoint.close();
+    }
+  }
+
+  @Test
+  public void queryAsyncTest() throws Exception {
+    SparqlEndpoint pooledEndpoint = new SparqlEndpoint(url, JdbcCompatibility.LOW, 1, 4, 60_000, 30_000);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    pooledEndpoint.setExecutor(executor);
+
+    try {
+      List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        futures.add(pooledEndpoint.queryAsync("SELECT ?s WHERE { GRAPH ?g { ?s a <http://xmlns.com/foaf/0.1/Person> } }")
+                                  .thenApply(results -> {
+                                    try {
+                                      int count = 0;
+                                      while (results.next()) {
+                                        count++;
+                                      }
+
+                                      pooledEndpoint.release(results);
+                                      return count;
+                                    } catch (SQLException e) {
+                                      throw new RuntimeException(e);
+                                    }
+                                  }));
+      }
+
+      for (CompletableFuture<Integer> future : futures) {
+        assertThat(future.get()).isEqualTo(2);
+      }
+
+      assertThat(pooledEndpoint.getPool().getActiveCount()).isEqualTo(0);
+    } finally {
+      executor.shutdown();
+      pooledEndpoint.close();
+    }
+  }
 }
@@ -17,17 +17,24 @@ package com.datagrafting.sql2sparql.sparql;
 
 import static com.datagrafting.sql2sparql.TestUtils.checkPlan;
 import static com.datagrafting.sql2sparql.TestUtils.checkResults;
+import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Properties;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class SparqlMappingTableTest {
   private Connection connection;
@@ -558,4 +565,128 @@ public class SparqlMappingTableTest {
         + "http://www.example.com/id/janedoe [java.lang.String] | 40 [java.lang.Long]\n"
     );
   }
+
+  @Test
+  public void testJoinFilter() throws SQLException {
+    String query = ""
+        + "SELECT p.name, q.age "
+        + "FROM Person p JOIN Person q ON p.s = q.s "
+        + "WHERE q.age > 40";
+
+    checkPlan(connection, query, ""
+        + "SparqlClassToEnumerableConverter\n"
+        + "  SparqlClassProject(name=[$1], age=[$3])\n"
+        + "    SparqlClassJoin(condition=[=($0, $2)], joinType=[inner])\n"
+        + "      SparqlClassProject(s=[$0], name=[$1])\n"
+        + "        SparqlMappingTableScan(table=[[sparql, Person]])\n"
+        + "      SparqlClassProject(s=[$0], age=[$2])\n"
+        + "        SparqlClassFilter(condition=[>($2, 40)])\n"
+        + "          SparqlMappingTableScan(table=[[sparql, Person]])\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "Person.name [java.lang.String] | Person.age [java.lang.Long]\n"
+        + "------------------------------------------------------------\n"
+        + "John Doe [java.lang.String] | 42 [java.lang.Long]\n"
+    );
+  }
+
+  @Test
+  public void testMultiValuedColumns(@TempDir Path dataDir) throws SQLException, IOException {
+    // The first item has 3 labels and 2 tags, which would give 6 rows if bound by OPTIONALs
+    Path data = Files.write(dataDir.resolve("multi.nq"), Arrays.asList(
+        "<http://www.example.com/id/item0> <http://www.example.com/code> \"A\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/label> \"one\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/label> \"two\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/label> \"three\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/tag> \"x, y+z\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item0> <http://www.example.com/tag> <http://www.example.com/tag/w> "
+            + "<http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item1> <http://www.example.com/code> \"B\" <http://www.example.com/graph/a> .",
+        "<http://www.example.com/id/item1> <http://www.example.com/label> \"four\" <http://www.example.com/graph/a> ."
+    ));
+
+    String tableMapping = ""
+        + "{"
+        + "  name: 'Item',"
+        + "  multiValued: 'array',"
+        + "  columns: ["
+        + "    {name: 'code', property: 'http://www.example.com/code', multiValued: 'single'},"
+        + "    {name: 'label', property: 'http://www.example.com/label', multiValued: 'concat'},"
+        + "    {name: 'tag', property: 'http://www.example.com/tag'}"
+        + "  ]"
+        + "}";
+
+    try (Connection multiConnection = connect(data.toString().replace("\\", "/"), tableMapping);
+         ResultSet results = multiConnection.createStatement().executeQuery(
+             "SELECT code, label, tag FROM Item ORDER BY code")) {
+      assertThat(results.getMetaData().getColumnTypeName(2)).isEqualTo("VARCHAR");
+      assertThat(results.getMetaData().getColumnTypeName(3)).isEqualTo("VARCHAR ARRAY");
+
+      // One row per subject, in which the order of the values is up to the endpoint
+      assertThat(results.next()).isTrue();
+      assertThat(results.getString(1)).isEqualTo("A");
+      assertThat(results.getString(2).split(", ")).containsExactlyInAnyOrder("one", "two", "three");
+      assertThat((Object[]) results.getArray(3).getArray())
+          .containsExactlyInAnyOrder("x, y+z", "http://www.example.com/tag/w");
+
+      assertThat(results.next()).isTrue();
+      assertThat(results.getString(1)).isEqualTo("B");
+      assertThat(results.getString(2)).isEqualTo("four");
+      assertThat(results.getArray(3)).isNull();
+
+      assertThat(results.next()).isFalse();
+    }
+  }
+
+  @Test
+  public void testNullFilter() throws SQLException {
+    // Every subject has a type, but only the group has members
+    String tableMapping = ""
+        + "{"
+        + "  name: 'Agent',"
+        + "  columns: ["
+        + "    {name: 'type', property: 'http://www.w3.org/1999/02/22-rdf-syntax-ns#type'},"
+        + "    {name: 'mem', property: 'http://xmlns.com/foaf/0.1/member'}"
+        + "  ]"
+        + "}";
+
+    try (Connection agentConnection = connect("data.nq", tableMapping)) {
+      checkResults(agentConnection, "SELECT s FROM Agent WHERE mem IS NULL ORDER BY s", true, false, ""
+          + "Agent.s [java.lang.String]\n"
+          + "--------------------------\n"
+          + "http://www.example.com/id/janedoe [java.lang.String]\n"
+          + "http://www.example.com/id/johndoe [java.lang.String]\n"
+      );
+
+      checkResults(agentConnection, "SELECT s, mem FROM Agent WHERE mem IS NOT NULL", true, false, ""
+          + "Agent.s [java.lang.String] | Agent.mem [java.lang.String]\n"
+          + "---------------------------------------------------------\n"
+          + "http://www.example.com/id/thegroup [java.lang.String] | "
+          + "http://www.example.com/id/johndoe [java.lang.String]\n"
+      );
+    }
+  }
+
+  private static Connection connect(String dataset, String tableMapping) throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    String model = ""
+        + "inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: 'jdbc:jena:mem:dataset=" + dataset + "',"
+        + "      tableMode: 'mapping',"
+        + "      tableMappings: [" + tableMapping + "]"
+        + "    }"
+        + "  }]"
+        + "}";
+
+    return DriverManager.getConnection("jdbc:calcite:model=" + model, info);
+  }
 }
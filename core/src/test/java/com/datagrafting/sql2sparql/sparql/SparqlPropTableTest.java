@@ -17,13 +17,22 @@ package com.datagrafting.sql2sparql.sparql;
 
 import static com.datagrafting.sql2sparql.TestUtils.checkPlan;
 import static com.datagrafting.sql2sparql.TestUtils.checkResults;
+import static org.assertj.core.api.Assertions.assertThat;
 
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.function.Consumer;
+
+import org.apache.calcite.runtime.Hook;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -464,4 +473,268 @@ public class SparqlPropTableTest {
         + "http://www.example.com/id/johndoe [java.lang.String] | John Doe [java.lang.String]\n"
     );
   }
+
+  @Test
+  public void testSelectFilterProjectOrderLimitOffset() throws SQLException {
+    String query = ""
+        + "SELECT o "
+        + "FROM name "
+        + "WHERE o <> 'Nobody' "
+        + "ORDER BY o "
+        + "LIMIT 1 OFFSET 1";
+
+    checkPlan(connection, query, ""
+        + "SparqlPropToEnumerableConverter\n"
+        + "  SparqlPropProject(o=[$1])\n"
+        + "    SparqlPropSort(sort0=[$1], dir0=[ASC], offset=[1], fetch=[1])\n"
+        + "      SparqlPropFilter(condition=[<>($1, 'Nobody')])\n"
+        + "        SparqlPropTableScan(table=[[sparql, name]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?o\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/name>  ?o}\n"
+        + "    FILTER ( ?o != \"Nobody\" )\n"
+        + "  }\n"
+        + "ORDER BY ASC(?o)\n"
+        + "OFFSET  1\n"
+        + "LIMIT   1\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "name.o [java.lang.String]\n"
+        + "-------------------------\n"
+        + "John Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testSelectLikeInFilter() throws SQLException {
+    String query = ""
+        + "SELECT o "
+        + "FROM name "
+        + "WHERE o LIKE 'Jo%' OR o IN ('Jane Doe', 'Nobody')";
+
+    checkPlan(connection, query, ""
+        + "SparqlPropToEnumerableConverter\n"
+        + "  SparqlPropProject(o=[$1])\n"
+        + "    SparqlPropFilter(condition=[OR(LIKE($1, 'Jo%'), SEARCH($1, Sarg['Jane Doe', 'Nobody':CHAR(8)]:CHAR(8)))])\n"
+        + "      SparqlPropTableScan(table=[[sparql, name]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?o\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/name>  ?o}\n"
+        + "    FILTER ( strstarts(str(?o), \"Jo\") || ( ?o IN (\"Jane Doe\", \"Nobody\") ) )\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "name.o [java.lang.String]\n"
+        + "-------------------------\n"
+        + "Jane Doe [java.lang.String]\n"
+        + "John Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testSelectQuotedFilter() throws SQLException {
+    // Quotes and backslashes in string literals are escaped in the generated query
+    String query = ""
+        + "SELECT o "
+        + "FROM name "
+        + "WHERE o <> 'It''s a \"quoted\" \\ name'";
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?o\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/name>  ?o}\n"
+        + "    FILTER ( ?o != \"It's a \\\"quoted\\\" \\\\ name\" )\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "name.o [java.lang.String]\n"
+        + "-------------------------\n"
+        + "Jane Doe [java.lang.String]\n"
+        + "John Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testSelectDynamicParamFilter() throws SQLException {
+    String query = ""
+          + "SELECT a.s "
+          + "FROM age a JOIN name n ON a.s = n.s "
+          + "WHERE a.o > ? AND n.o <> ? "
+          + "ORDER BY a.s";
+
+    List<String> queries = new ArrayList<>();
+    try (Hook.Closeable ignored = Hook.QUERY_PLAN.addThread((Consumer<Object>) plan -> queries.add((String) plan));
+         PreparedStatement statement = connection.prepareStatement(query)) {
+      // The parameters are bound to variables by a VALUES block, whose slots are filled at every execution
+      assertThat(queries).containsExactly(""
+          + "SELECT  ?s\n"
+          + "WHERE\n"
+          + "  { VALUES ( ?param0 ?param1 ) {\n"
+          + "      ( <urn:x-calcite-sparql:parameter:0> <urn:x-calcite-sparql:parameter:1> )\n"
+          + "    }\n"
+          + "    GRAPH ?g\n"
+          + "      { ?s  <http://xmlns.com/foaf/0.1/age>  ?o}\n"
+          + "    GRAPH ?g_1\n"
+          + "      { ?s  <http://xmlns.com/foaf/0.1/name>  ?o_1}\n"
+          + "    FILTER ( ( ?o > ?param0 ) && ( ?o_1 != ?param1 ) )\n"
+          + "  }\n"
+          + "ORDER BY ASC(?s)\n"
+      );
+
+      statement.setInt(1, 39);
+      statement.setString(2, "Jane Doe");
+      assertThat(getSubjects(statement)).containsExactly("http://www.example.com/id/johndoe");
+
+      statement.setInt(1, 41);
+      statement.setString(2, "It's \"quoted\"");
+      assertThat(getSubjects(statement)).containsExactly("http://www.example.com/id/johndoe");
+
+      statement.setInt(1, 39);
+      statement.setNull(2, Types.VARCHAR);
+      assertThat(getSubjects(statement)).isEmpty();
+    }
+  }
+
+  @Test
+  public void testJoinSubject() throws SQLException {
+    String query = ""
+        + "SELECT n.s, n.o, a.o "
+        + "FROM name n JOIN age a ON n.s = a.s "
+        + "ORDER BY n.s";
+
+    checkPlan(connection, query, ""
+        + "SparqlPropToEnumerableConverter\n"
+        + "  SparqlPropSort(sort0=[$0], dir0=[ASC])\n"
+        + "    SparqlPropProject(s=[$0], o=[$1], o0=[$3])\n"
+        + "      SparqlPropJoin(condition=[=($0, $2)], joinType=[inner])\n"
+        + "        SparqlPropTableScan(table=[[sparql, name]])\n"
+        + "        SparqlPropTableScan(table=[[sparql, age]])\n"
+    );
+
+    // Both tables are scanned by the same query, sharing the subject variable
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?s ?o ?o_1\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/name>  ?o}\n"
+        + "    GRAPH ?g_1\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/age>  ?o_1}\n"
+        + "  }\n"
+        + "ORDER BY ASC(?s)\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "name.s [java.lang.String] | name.o [java.lang.String] | age.o [java.lang.Long]\n"
+        + "------------------------------------------------------------------------------\n"
+        + "http://www.example.com/id/janedoe [java.lang.String] | Jane Doe [java.lang.String] | 40 [java.lang.Long]\n"
+        + "http://www.example.com/id/johndoe [java.lang.String] | John Doe [java.lang.String] | 42 [java.lang.Long]\n"
+    );
+  }
+
+  @Test
+  public void testJoinObjectSubject() throws SQLException {
+    String query = ""
+        + "SELECT k.s, n.o "
+        + "FROM knows k JOIN name n ON k.o = n.s";
+
+    checkPlan(connection, query, ""
+        + "SparqlPropToEnumerableConverter\n"
+        + "  SparqlPropProject(s=[$0], o=[$3])\n"
+        + "    SparqlPropJoin(condition=[=($1, $2)], joinType=[inner])\n"
+        + "      SparqlPropTableScan(table=[[sparql, knows]])\n"
+        + "      SparqlPropTableScan(table=[[sparql, name]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?s ?o_1\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/knows>  ?o}\n"
+        + "    GRAPH ?g_1\n"
+        + "      { ?o  <http://xmlns.com/foaf/0.1/name>  ?o_1}\n"
+        + "  }\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "knows.s [java.lang.String] | name.o [java.lang.String]\n"
+        + "------------------------------------------------------\n"
+        + "http://www.example.com/id/janedoe [java.lang.String] | John Doe [java.lang.String]\n"
+        + "http://www.example.com/id/johndoe [java.lang.String] | Jane Doe [java.lang.String]\n"
+    );
+  }
+
+  @Test
+  public void testGroupByHaving() throws SQLException {
+    String query = ""
+        + "SELECT n.o, COUNT(k.o) AS c "
+        + "FROM knows k JOIN name n ON k.s = n.s "
+        + "GROUP BY n.o "
+        + "HAVING COUNT(k.o) > 0 "
+        + "ORDER BY c DESC, n.o";
+
+    checkPlan(connection, query, ""
+        + "SparqlPropToEnumerableConverter\n"
+        + "  SparqlPropSort(sort0=[$1], sort1=[$0], dir0=[DESC], dir1=[ASC])\n"
+        + "    SparqlPropFilter(condition=[>($1, 0)])\n"
+        + "      SparqlPropAggregate(group=[{2}], c=[COUNT()])\n"
+        + "        SparqlPropJoin(condition=[=($0, $1)], joinType=[inner])\n"
+        + "          SparqlPropProject(s=[$0])\n"
+        + "            SparqlPropTableScan(table=[[sparql, knows]])\n"
+        + "          SparqlPropTableScan(table=[[sparql, name]])\n"
+    );
+
+    assertThat(getSparqlQueries(query)).containsExactly(""
+        + "SELECT  ?o_1 (count(*) AS ?agg)\n"
+        + "WHERE\n"
+        + "  { GRAPH ?g\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/knows>  ?o}\n"
+        + "    GRAPH ?g_1\n"
+        + "      { ?s  <http://xmlns.com/foaf/0.1/name>  ?o_1}\n"
+        + "  }\n"
+        + "GROUP BY ?o_1\n"
+        + "HAVING ( count(*) > 0 )\n"
+        + "ORDER BY DESC(count(*)) ASC(?o_1)\n"
+    );
+
+    checkResults(connection, query, true, false, ""
+        + "name.o [java.lang.String] | c [java.lang.Long]\n"
+        + "----------------------------------------------\n"
+        + "Jane Doe [java.lang.String] | 1 [java.lang.Long]\n"
+        + "John Doe [java.lang.String] | 1 [java.lang.Long]\n"
+    );
+  }
+
+  private List<String> getSparqlQueries(String query) throws SQLException {
+    List<String> queries = new ArrayList<>();
+
+    try (Hook.Closeable ignored = Hook.QUERY_PLAN.addThread((Consumer<Object>) plan -> queries.add((String) plan))) {
+      connection.createStatement().executeQuery(query).close();
+    }
+
+    return queries;
+  }
+
+  private static List<String> getSubjects(PreparedStatement statement) throws SQLException {
+    List<String> subjects = new ArrayList<>();
+
+    try (ResultSet resultSet = statement.executeQuery()) {
+      while (resultSet.next()) {
+        subjects.add(resultSet.getString(1));
+      }
+    }
+
+    return subjects;
+  }
 }
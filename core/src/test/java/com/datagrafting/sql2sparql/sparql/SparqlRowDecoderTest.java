@@ -0,0 +1,95 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.jupiter.api.Test;
+
+import com.datagrafting.sql2sparql.calcite.SparqlRowDecoder;
+
+public class SparqlRowDecoderTest {
+  @Test
+  public void typedDecodeTest() {
+    SparqlRowDecoder decoder = SparqlRowDecoder.of(Arrays.asList(
+        SqlTypeName.VARCHAR, SqlTypeName.VARCHAR, SqlTypeName.BIGINT, SqlTypeName.DOUBLE,
+        SqlTypeName.BOOLEAN, SqlTypeName.DATE, SqlTypeName.TIMESTAMP, SqlTypeName.INTEGER));
+
+    Object row = decoder.decodeRow(new Object[] {
+        NodeFactory.createURI("http://www.example.com/id/johndoe"),
+        NodeFactory.createLiteral("John Doe", "en"),
+        literal("42", XSDDatatype.XSDinteger),
+        literal("-INF", XSDDatatype.XSDdouble),
+        literal("1", XSDDatatype.XSDboolean),
+        literal("1970-01-02Z", XSDDatatype.XSDdate),
+        literal("1970-01-01T01:00:00+01:00", XSDDatatype.XSDdateTime),
+        null
+    });
+
+    assertThat((Object[]) row).containsExactly(
+        "http://www.example.com/id/johndoe", "John Doe", 42L, Double.NEGATIVE_INFINITY, true, 1, 0L, null);
+  }
+
+  @Test
+  public void mismatchedTypeDecodeTest() {
+    SparqlRowDecoder decoder = SparqlRowDecoder.of(Arrays.asList(SqlTypeName.BIGINT, SqlTypeName.VARCHAR));
+
+    // A value that does not have the type of its column is null, while a string column gets the lexical form of
+    // any literal
+    Object row = decoder.decodeRow(new Object[] {
+        NodeFactory.createLiteral("Mr"),
+        literal("40", XSDDatatype.XSDinteger)
+    });
+
+    assertThat((Object[]) row).containsExactly(null, "40");
+
+    // The same goes for an IRI in a column of literals
+    assertThat(decoder.getDecoder(0).decode(NodeFactory.createURI("http://www.example.com/id/johndoe"))).isNull();
+  }
+
+  @Test
+  public void singleColumnDecodeTest() {
+    assertThat(SparqlRowDecoder.of(Arrays.asList(SqlTypeName.BIGINT))
+                               .decodeRow(new Object[] {literal("42", XSDDatatype.XSDinteger)}))
+        .isEqualTo(42L);
+    assertThat(SparqlRowDecoder.generic(1)
+                               .decodeRow(new Object[] {literal("42", XSDDatatype.XSDinteger)}))
+        .isEqualTo(42L);
+  }
+
+  @Test
+  public void arrayDecodeTest() {
+    SparqlRowDecoder decoder = SparqlRowDecoder.of(Arrays.asList(SqlTypeName.ARRAY, SqlTypeName.ARRAY));
+
+    // The values are encoded as with ENCODE_FOR_URI, so an empty value is still a value
+    Object row = decoder.decodeRow(new Object[] {
+        NodeFactory.createLiteral("x%2C%20y%2Bz http%3A%2F%2Fwww.example.com%2Ftag%2Fw "),
+        null
+    });
+
+    assertThat((Object[]) row).containsExactly(Arrays.asList("x, y+z", "http://www.example.com/tag/w", ""), null);
+  }
+
+  private static Node literal(String lexical, XSDDatatype datatype) {
+    return NodeFactory.createLiteral(lexical, datatype);
+  }
+}
@@ -0,0 +1,614 @@
+/**
+ * Copyright 2021-2022 Nicola Vitucci
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datagrafting.sql2sparql.sparql;
+
+import static com.datagrafting.sql2sparql.TestUtils.checkResults;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.junit.jupiter.api.Test;
+
+import com.datagrafting.sql2sparql.calcite.SparqlPages;
+import com.datagrafting.sql2sparql.calcite.SparqlParallelEnumerator;
+import com.datagrafting.sql2sparql.calcite.SparqlPartitions;
+import com.datagrafting.sql2sparql.calcite.SparqlPlanCache;
+import com.datagrafting.sql2sparql.calcite.SparqlResultCache;
+import com.datagrafting.sql2sparql.calcite.SparqlSchema;
+import com.datagrafting.sql2sparql.calcite.SparqlTable;
+
+public class SparqlSchemaTest {
+  private long runQuery(Connection connection, SparqlEndpoint endpoint, String query) throws SQLException {
+    long before = endpoint.getQueryCount();
+
+    try (Statement statement = connection.createStatement();
+         ResultSet resultSet = statement.executeQuery(query)) {
+      while (resultSet.next()) {
+        // Consume all the rows
+      }
+    }
+
+    return endpoint.getQueryCount() - before;
+  }
+
+  // A class mode model with some extra options of the schema
+  private String inlineModel(String options) {
+    URL dataPath = SparqlSchemaTest.class.getClassLoader().getResource("data.nq");
+
+    return "jdbc:calcite:model=inline:{"
+        + "  version: '1.0',"
+        + "  defaultSchema: 'sparql',"
+        + "  schemas: [{"
+        + "    name: 'sparql',"
+        + "    type: 'custom',"
+        + "    factory: 'com.datagrafting.sql2sparql.calcite.SparqlSchemaFactory',"
+        + "    operand: {"
+        + "      endpoint: 'jdbc:jena:mem:dataset=" + Objects.requireNonNull(dataPath).getPath() + "',"
+        + "      tableMode: 'class',"
+        + "      " + options
+        + "    }"
+        + "  }]"
+        + "}";
+  }
+
+  @Test
+  public void testPropRowTypeIsNotProbedAgain() throws SQLException {
+    checkRowTypeIsNotProbedAgain("modelProp.json", "SELECT * FROM name");
+  }
+
+  @Test
+  public void testClassRowTypeIsNotProbedAgain() throws SQLException {
+    checkRowTypeIsNotProbedAgain("modelClass.json", "SELECT * FROM Person");
+  }
+
+  @Test
+  public void testMappingRowTypeIsNotProbedAgain() throws SQLException {
+    checkRowTypeIsNotProbedAgain("modelMapping.json", "SELECT * FROM Person");
+  }
+
+  private void checkRowTypeIsNotProbedAgain(String model, String query) throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    URL modelPath = SparqlSchemaTest.class.getClassLoader().getResource(model);
+
+    try (Connection connection = DriverManager.getConnection(
+        "jdbc:calcite:model=" + Objects.requireNonNull(modelPath).getPath(), info)) {
+      SparqlSchema schema = connection.unwrap(CalciteConnection.class)
+                                      .getRootSchema()
+                                      .getSubSchema("sparql")
+                                      .unwrap(SparqlSchema.class);
+      SparqlEndpoint endpoint = schema.getEndpoint();
+
+      // The first query discovers the tables and probes the column types
+      assertThat(runQuery(connection, endpoint, query)).isGreaterThan(1);
+
+      // Repeated queries only send the query itself
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(1);
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(1);
+
+      // A refresh drops the cached row types
+      schema.refresh();
+      assertThat(runQuery(connection, endpoint, query)).isGreaterThan(1);
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testColumnTypesAreProbedTogether() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+
+    try (Connection connection = DriverManager.getConnection(inlineModel("scanParallelism: 1"), info)) {
+      SparqlEndpoint endpoint = connection.unwrap(CalciteConnection.class)
+                                          .getRootSchema()
+                                          .getSubSchema("sparql")
+                                          .unwrap(SparqlSchema.class)
+                                          .getEndpoint();
+
+      // The first query discovers the tables and probes the column types of all of them, without a catalog too
+      assertThat(runQuery(connection, endpoint, "SELECT * FROM Person")).isGreaterThan(1);
+
+      // So the first query of another table only sends the query itself
+      assertThat(runQuery(connection, endpoint, "SELECT * FROM `Group`")).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testPlanCache() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    URL modelPath = SparqlSchemaTest.class.getClassLoader().getResource("modelClass.json");
+
+    try (Connection connection = DriverManager.getConnection(
+        "jdbc:calcite-sparql:model=" + Objects.requireNonNull(modelPath).getPath(), info)) {
+      SparqlSchema schema = connection.unwrap(CalciteConnection.class)
+                                      .getRootSchema()
+                                      .getSubSchema("sparql")
+                                      .unwrap(SparqlSchema.class);
+      SparqlEndpoint endpoint = schema.getEndpoint();
+      SparqlPlanCache planCache = schema.getPlanCache();
+
+      assertThat(runQuery(connection, endpoint, "SELECT xmlns_name FROM Person WHERE xmlns_age > 40"))
+          .isGreaterThan(1);
+      assertThat(planCache.getMisses()).isEqualTo(1);
+      assertThat(planCache.getHits()).isEqualTo(0);
+
+      // The same query, formatted differently, reuses the plan and only sends the query itself
+      assertThat(runQuery(connection, endpoint, "SELECT xmlns_name\n  FROM Person\n  WHERE xmlns_age > 40"))
+          .isEqualTo(1);
+      assertThat(planCache.getHits()).isEqualTo(1);
+
+      // A different literal is a different query
+      runQuery(connection, endpoint, "SELECT xmlns_name FROM Person WHERE xmlns_age > 41");
+      assertThat(planCache.getMisses()).isEqualTo(2);
+      assertThat(planCache.size()).isEqualTo(2);
+
+      // A refresh discards the plans
+      schema.refresh();
+      assertThat(planCache.size()).isEqualTo(0);
+      assertThat(runQuery(connection, endpoint, "SELECT xmlns_name FROM Person WHERE xmlns_age > 40"))
+          .isGreaterThan(1);
+      assertThat(planCache.getMisses()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void testResultCache() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    try (Connection connection = DriverManager.getConnection(inlineModel("resultCacheSize: 1000000"), info)) {
+      SparqlSchema schema = connection.unwrap(CalciteConnection.class)
+                                      .getRootSchema()
+                                      .getSubSchema("sparql")
+                                      .unwrap(SparqlSchema.class);
+      SparqlEndpoint endpoint = schema.getEndpoint();
+      SparqlResultCache resultCache = schema.getResultCache();
+      String query = "SELECT xmlns_name FROM Person WHERE xmlns_age > 40";
+
+      assertThat(runQuery(connection, endpoint, query)).isGreaterThan(1);
+      assertThat(resultCache.size()).isEqualTo(1);
+      assertThat(resultCache.getBytes()).isGreaterThan(0);
+
+      // The rows of the same query are read from the cache, without sending any query
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(0);
+      assertThat(resultCache.getHits()).isEqualTo(1);
+
+      // A different query is sent to the endpoint
+      assertThat(runQuery(connection, endpoint, "SELECT xmlns_name FROM Person WHERE xmlns_age > 41"))
+          .isEqualTo(1);
+      assertThat(resultCache.size()).isEqualTo(2);
+
+      // A refresh discards the results
+      schema.refresh();
+      assertThat(resultCache.size()).isEqualTo(0);
+      assertThat(runQuery(connection, endpoint, query)).isGreaterThan(1);
+    }
+  }
+
+  @Test
+  public void testResultCacheEviction() throws InterruptedException {
+    SparqlResultCache resultCache = new SparqlResultCache(450, 60_000);
+    List<SqlTypeName> columnTypes = Collections.singletonList(SqlTypeName.VARCHAR);
+
+    for (String query : Arrays.asList("q1", "q2", "q3")) {
+      Enumerator<Object> rows = resultCache.record(query, columnTypes, Linq4j.enumerator(
+          Arrays.asList(query + " row 1", query + " row 2", query + " row 3")));
+      while (rows.moveNext()) {
+        // Consume all the rows
+      }
+      rows.close();
+    }
+
+    // The least recently used results are evicted to stay within the size limit
+    assertThat(resultCache.getBytes()).isLessThanOrEqualTo(450);
+    assertThat(resultCache.get("q1", columnTypes)).isNull();
+    assertThat(resultCache.get("q3", columnTypes)).containsExactly("q3 row 1", "q3 row 2", "q3 row 3");
+
+    // Partially read results are not cached
+    Enumerator<Object> rows = resultCache.record("q4", columnTypes, Linq4j.enumerator(
+        Arrays.asList("q4 row 1", "q4 row 2")));
+    rows.moveNext();
+    rows.close();
+    assertThat(resultCache.get("q4", columnTypes)).isNull();
+
+    // Results read again after a reset are only recorded once
+    rows = resultCache.record("q5", columnTypes, Linq4j.enumerator(Arrays.asList("q5 row 1", "q5 row 2")));
+    rows.moveNext();
+    rows.reset();
+    while (rows.moveNext()) {
+      // Consume all the rows
+    }
+    rows.close();
+    assertThat(resultCache.get("q5", columnTypes)).containsExactly("q5 row 1", "q5 row 2");
+
+    // The values of array columns count towards the size limit
+    String value = String.join("", Collections.nCopies(100, "x"));
+    rows = resultCache.record("q6", columnTypes, Linq4j.enumerator(Collections.singletonList(
+        new Object[] {Arrays.asList(value, value)})));
+    while (rows.moveNext()) {
+      // Consume all the rows
+    }
+    rows.close();
+    assertThat(resultCache.get("q6", columnTypes)).isNull();
+
+    // Expired results are not returned
+    SparqlResultCache expiredCache = new SparqlResultCache(450, 1);
+    rows = expiredCache.record("q1", columnTypes, Linq4j.enumerator(Collections.singletonList("q1 row 1")));
+    while (rows.moveNext()) {
+      // Consume all the rows
+    }
+    Thread.sleep(5);
+    assertThat(expiredCache.get("q1", columnTypes)).isNull();
+    assertThat(expiredCache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMetrics() throws SQLException, JMException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    String url = inlineModel("metrics: 'jmx'").replace("jdbc:calcite:", "jdbc:calcite-sparql:");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    SparqlEndpoint endpoint;
+    ObjectName schemaName;
+    ObjectName tableName;
+
+    try (Connection connection = DriverManager.getConnection(url, info)) {
+      endpoint = connection.unwrap(CalciteConnection.class)
+                           .getRootSchema()
+                           .getSubSchema("sparql")
+                           .unwrap(SparqlSchema.class)
+                           .getEndpoint();
+      schemaName = ((SparqlJmxMetrics) endpoint.getMetrics()).getSchemaName();
+      tableName = new ObjectName(SparqlJmxMetrics.DOMAIN + ":type=Table,schema=\"sparql\",id="
+          + schemaName.getKeyProperty("id") + ",name=\"Person\"");
+      String query = "SELECT xmlns_name FROM Person";
+
+      runQuery(connection, endpoint, query);
+      assertThat(server.getAttribute(schemaName, "PlanningCount")).isEqualTo(1L);
+      assertThat(server.getAttribute(schemaName, "QueryCount")).isEqualTo(endpoint.getQueryCount());
+      assertThat(server.getAttribute(tableName, "GenerationCount")).isEqualTo(1L);
+      assertThat(server.getAttribute(tableName, "QueryCount")).isEqualTo(1L);
+      assertThat(server.getAttribute(tableName, "RowCount")).isEqualTo(2L);
+      assertThat((Double) server.getAttribute(tableName, "FetchTimeMillis"))
+          .isGreaterThan(0)
+          .isGreaterThanOrEqualTo((Double) server.getAttribute(tableName, "FirstRowTimeMillis"));
+
+      // The cached plan is neither planned nor generated again, but its query is sent again
+      runQuery(connection, endpoint, query);
+      assertThat(server.getAttribute(schemaName, "PlanningCount")).isEqualTo(1L);
+      assertThat(server.getAttribute(tableName, "GenerationCount")).isEqualTo(1L);
+      assertThat(server.getAttribute(tableName, "QueryCount")).isEqualTo(2L);
+      assertThat(server.getAttribute(tableName, "RowCount")).isEqualTo(4L);
+    }
+
+    // The MBeans are unregistered and the executor is shut down together with the connection
+    assertThat(server.isRegistered(schemaName)).isFalse();
+    assertThat(server.isRegistered(tableName)).isFalse();
+    assertThat(((ExecutorService) endpoint.getExecutor()).isShutdown()).isTrue();
+  }
+
+  @Test
+  public void testEvents() throws SQLException, IOException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+    Path dump = Files.createTempFile("calcite-sparql-", ".jfr");
+    List<RecordedEvent> events;
+
+    try (Recording recording = new Recording()) {
+      recording.enable("com.datagrafting.sql2sparql.*");
+      recording.start();
+
+      try (Connection connection = DriverManager.getConnection(inlineModel("prefetch: false"), info)) {
+        runQuery(connection, connection.unwrap(CalciteConnection.class)
+                                       .getRootSchema()
+                                       .getSubSchema("sparql")
+                                       .unwrap(SparqlSchema.class)
+                                       .getEndpoint(), "SELECT xmlns_name FROM Person");
+      }
+
+      recording.stop();
+      recording.dump(dump);
+      events = RecordingFile.readAllEvents(dump);
+    } finally {
+      Files.delete(dump);
+    }
+
+    List<RecordedEvent> tableEvents = events.stream()
+                                            .filter(event -> event.hasField("table"))
+                                            .filter(event -> "Person".equals(event.getString("table")))
+                                            .collect(Collectors.toList());
+    assertThat(tableEvents).extracting(event -> event.getEventType().getName())
+                           .containsExactlyInAnyOrder("com.datagrafting.sql2sparql.Query",
+                               "com.datagrafting.sql2sparql.FirstRow", "com.datagrafting.sql2sparql.Exhausted");
+    assertThat(tableEvents).extracting(event -> event.getString("queryHash")).containsOnly(
+        tableEvents.get(0).getString("queryHash"));
+    assertThat(tableEvents).filteredOn(event -> event.getEventType().getName().endsWith("Exhausted"))
+                           .extracting(event -> event.getLong("rows"))
+                           .containsExactly(2L);
+
+    // The classes and their columns are discovered by probes
+    assertThat(events).filteredOn(event -> event.getEventType().getName().endsWith("SchemaProbe"))
+                      .extracting(event -> event.getString("kind"))
+                      .contains("classes", "class properties");
+  }
+
+  @Test
+  public void testPagedQuery() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+
+    try (Connection connection = DriverManager.getConnection(inlineModel("pageSize: 2"), info)) {
+      SparqlEndpoint endpoint = connection.unwrap(CalciteConnection.class)
+                                          .getRootSchema()
+                                          .getSubSchema("sparql")
+                                          .unwrap(SparqlSchema.class)
+                                          .getEndpoint();
+      String query = "SELECT xmlns_name FROM Person LIMIT 3";
+
+      checkResults(connection, query, true, false, ""
+          + "Person.xmlns_name [java.lang.String]\n"
+          + "------------------------------------\n"
+          + "Jane Doe [java.lang.String]\n"
+          + "John Doe [java.lang.String]\n"
+      );
+
+      // A full page of two rows and a page of at most one row, which is empty
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(2);
+    }
+
+    try (Connection connection = DriverManager.getConnection(inlineModel("pageSize: 3, prefetch: true"), info)) {
+      SparqlEndpoint endpoint = connection.unwrap(CalciteConnection.class)
+                                          .getRootSchema()
+                                          .getSubSchema("sparql")
+                                          .unwrap(SparqlSchema.class)
+                                          .getEndpoint();
+
+      String query = "SELECT xmlns_name FROM Person";
+      // The tables are discovered by the first query
+      runQuery(connection, endpoint, query);
+
+      // The first page is not full, so the next one is not prefetched
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws SQLException, InterruptedException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+
+    try (Connection connection = DriverManager.getConnection(inlineModel("prefetch: true"), info)) {
+      SparqlSchema schema = connection.unwrap(CalciteConnection.class)
+                                      .getRootSchema()
+                                      .getSubSchema("sparql")
+                                      .unwrap(SparqlSchema.class);
+      SparqlEndpoint endpoint = schema.getEndpoint();
+      SparqlTable table = (SparqlTable) schema.getTable("Person");
+      String query = "SELECT ?s WHERE { GRAPH ?g { ?s a <http://xmlns.com/foaf/0.1/Person> } }";
+
+      // Nothing is sent until the results are opened, so an enumerable that is never enumerated holds nothing
+      long before = endpoint.getQueryCount();
+      Enumerable<Object> enumerable = table.query(query, Collections.singletonList(SqlTypeName.VARCHAR));
+      assertThat(endpoint.getQueryCount()).isEqualTo(before);
+
+      try (Enumerator<Object> enumerator = enumerable.enumerator()) {
+        assertThat(enumerator.moveNext()).isTrue();
+      }
+      assertThat(endpoint.getQueryCount()).isEqualTo(before + 1);
+      assertThat(endpoint.getPool().getActiveCount()).isZero();
+
+      // Results closed before being read go back to the pool once they arrive
+      enumerable.enumerator().close();
+      for (int i = 0; i < 100 && (endpoint.getQueryCount() == before + 1 || endpoint.getPool().getActiveCount() > 0);
+           i++) {
+        Thread.sleep(50);
+      }
+      assertThat(endpoint.getQueryCount()).isEqualTo(before + 2);
+      assertThat(endpoint.getPool().getActiveCount()).isZero();
+
+      checkResults(connection, "SELECT xmlns_name FROM Person ORDER BY xmlns_name", true, false, ""
+          + "Person.xmlns_name [java.lang.String]\n"
+          + "------------------------------------\n"
+          + "Jane Doe [java.lang.String]\n"
+          + "John Doe [java.lang.String]\n"
+      );
+    }
+  }
+
+  @Test
+  public void testPages() {
+    SparqlPages pages = SparqlPages.of(""
+        + "SELECT  ?s ?o ?o_2\n"
+        + "WHERE\n"
+        + "  { ?s  <http://xmlns.com/foaf/0.1/name>  ?o }\n"
+        + "ORDER BY DESC(?o)\n"
+        + "OFFSET  1\n"
+        + "LIMIT   5\n", 2);
+
+    // The rows are sorted by all the variables, and each page reads its own slice of them
+    assertThat(pages.getPage(2)).isEqualTo(""
+        + "SELECT  ?s ?o ?o_2\n"
+        + "WHERE\n"
+        + "  { ?s  <http://xmlns.com/foaf/0.1/name>  ?o }\n"
+        + "ORDER BY DESC(?o) ?s ?o ?o_2\n"
+        + "OFFSET  5\n"
+        + "LIMIT   1\n");
+    assertThat(pages.getPage(3)).isNull();
+    assertThat(pages.isLast(1, 2)).isFalse();
+    assertThat(pages.isLast(1, 1)).isTrue();
+    assertThat(pages.isLast(2, 1)).isTrue();
+
+    // Results that fit in a page are not paged
+    assertThat(SparqlPages.of("SELECT  ?s\nWHERE\n  { ?s  ?p  ?o }\nLIMIT   2\n", 2)).isNull();
+    assertThat(SparqlPages.of("SELECT  ?s\nWHERE\n  { ?s  ?p  ?o }\n", 0)).isNull();
+  }
+
+  @Test
+  public void testParallelScan() throws SQLException {
+    Properties info = new Properties();
+    info.setProperty("lex", "JAVA");
+
+    try (Connection connection = DriverManager.getConnection(inlineModel("scanParallelism: 4"), info)) {
+      SparqlEndpoint endpoint = connection.unwrap(CalciteConnection.class)
+                                          .getRootSchema()
+                                          .getSubSchema("sparql")
+                                          .unwrap(SparqlSchema.class)
+                                          .getEndpoint();
+      String query = "SELECT xmlns_name FROM Person";
+      List<String> names = new ArrayList<>();
+
+      try (Statement statement = connection.createStatement();
+           ResultSet resultSet = statement.executeQuery(query)) {
+        while (resultSet.next()) {
+          names.add(resultSet.getString(1));
+        }
+      }
+
+      assertThat(names).containsExactlyInAnyOrder("John Doe", "Jane Doe");
+
+      // One query per partition
+      assertThat(runQuery(connection, endpoint, query)).isEqualTo(4);
+
+      // Sorted results are not partitioned
+      assertThat(runQuery(connection, endpoint, query + " ORDER BY xmlns_name")).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testParallelEnumeratorSkipsPartitionsOnceClosed() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    AtomicInteger opened = new AtomicInteger();
+    List<Supplier<Enumerator<Object>>> partitions = Collections.nCopies(4, () -> {
+      opened.incrementAndGet();
+      return Linq4j.enumerator(Arrays.<Object>asList(1, 2));
+    });
+
+    try {
+      // The partitions run one at a time, so only the first one has started when the first row is read
+      try (Enumerator<Object> enumerator = new SparqlParallelEnumerator(partitions, executor, 1)) {
+        assertThat(enumerator.moveNext()).isTrue();
+      }
+
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(opened.get()).isEqualTo(1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testPartitions() {
+    List<String> partitions = SparqlPartitions.of("SELECT  ?s\nWHERE\n  { ?s  ?p  ?o }\n", 3);
+
+    // Each partition has its own hash prefixes, and the first one also has the rows without an IRI subject
+    assertThat(partitions).containsExactly(""
+        + "SELECT  ?s\n"
+        + "WHERE\n"
+        + "  { ?s  ?p  ?o\n"
+        + "    FILTER ( ( ( ! bound(?s) ) || ( ! isIRI(?s) ) ) "
+        + "|| ( substr(MD5(str(?s)), 1, 1) IN (\"0\", \"3\", \"6\", \"9\", \"c\", \"f\") ) )\n"
+        + "  }\n",
+        ""
+        + "SELECT  ?s\n"
+        + "WHERE\n"
+        + "  { ?s  ?p  ?o\n"
+        + "    FILTER ( isIRI(?s) && ( substr(MD5(str(?s)), 1, 1) IN (\"1\", \"4\", \"7\", \"a\", \"d\") ) )\n"
+        + "  }\n",
+        ""
+        + "SELECT  ?s\n"
+        + "WHERE\n"
+        + "  { ?s  ?p  ?o\n"
+        + "    FILTER ( isIRI(?s) && ( substr(MD5(str(?s)), 1, 1) IN (\"2\", \"5\", \"8\", \"b\", \"e\") ) )\n"
+        + "  }\n"
+    );
+    assertThat(SparqlPartitions.of("SELECT  ?s\nWHERE\n  { ?s  ?p  ?o }\n", 1)).isNull();
+    assertThat(SparqlPartitions.of("SELECT  ?s\nWHERE\n  { ?s  ?p  ?o }\nLIMIT   2\n", 3)).isNull();
+    assertThat(SparqlPartitions.of("SELECT  ?o\nWHERE\n  { ?x  ?p  ?o }\n", 3)).isNull();
+  }
+
+  @Test
+  public void testPartitionsOfBlankNodes() {
+    Model model = ModelFactory.createDefaultModel();
+    Property property = model.createProperty("http://www.example.com/p");
+    model.createResource().addProperty(property, "blank");
+    for (int i = 0; i < 10; i++) {
+      model.createResource("http://www.example.com/s" + i).addProperty(property, "iri" + i);
+    }
+
+    // Each row is in a single partition, and the blank nodes are all in the first one
+    List<List<String>> rows = new ArrayList<>();
+    for (String partition : SparqlPartitions.of("SELECT  ?o\nWHERE\n  { ?s  ?p  ?o }\n", 3)) {
+      List<String> partitionRows = new ArrayList<>();
+      try (QueryExecution execution = QueryExecutionFactory.create(partition, model)) {
+        execution.execSelect().forEachRemaining(row -> partitionRows.add(row.getLiteral("o").getString()));
+      }
+      rows.add(partitionRows);
+    }
+
+    assertThat(rows.get(0)).contains("blank");
+    assertThat(rows).flatExtracting(partitionRows -> partitionRows)
+                    .hasSize(11)
+                    .doesNotHaveDuplicates();
+  }
+
+  @Test
+  public void testNormalizeSql() {
+    assertThat(SparqlPlanCache.normalize("  SELECT *\n\tFROM  Person WHERE xmlns_name = 'John  Doe' "))
+        .isEqualTo("SELECT * FROM Person WHERE xmlns_name = 'John  Doe'");
+    assertThat(SparqlPlanCache.normalize("SELECT \"a  b\"  FROM t WHERE c = 'it''s  here'"))
+        .isEqualTo("SELECT \"a  b\" FROM t WHERE c = 'it''s  here'");
+  }
+}